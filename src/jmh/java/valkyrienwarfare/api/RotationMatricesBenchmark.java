@@ -0,0 +1,106 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package valkyrienwarfare.api;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the allocating RotationMatrices methods against their destination
+ * overloads, for the calls CoordTransformObject makes every time a ship moves.
+ * Run with -prof gc to see the allocation rates as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotationMatricesBenchmark {
+
+	private double pitch, yaw, roll;
+	private Vector localOrigin;
+	private double[] transform;
+	private double[] otherTransform;
+	private final double[] dest = new double[16];
+	private final double[] secondDest = new double[16];
+
+	@Setup
+	public void setup() {
+		pitch = 12.5D;
+		yaw = -73.0D;
+		roll = 41.25D;
+		localOrigin = new Vector(8.5D, 64.5D, -3.5D);
+		transform = RotationMatrices.rotateAndTranslate(RotationMatrices.getTranslationMatrix(120D, 70D, -45D), pitch,
+				yaw, roll, localOrigin);
+		otherTransform = RotationMatrices.inverse(RotationMatrices.rotateAndTranslate(
+				RotationMatrices.getTranslationMatrix(-30D, 90D, 15D), -pitch, roll, yaw, localOrigin));
+	}
+
+	@Benchmark
+	public double[] rotationMatrixAllocating() {
+		return RotationMatrices.getRotationMatrix(pitch, yaw, roll);
+	}
+
+	@Benchmark
+	public double[] rotationMatrixDest() {
+		return RotationMatrices.getRotationMatrix(pitch, yaw, roll, dest);
+	}
+
+	@Benchmark
+	public double[] rotateAndTranslateAllocating() {
+		return RotationMatrices.rotateAndTranslate(RotationMatrices.getTranslationMatrix(120D, 70D, -45D), pitch, yaw,
+				roll, localOrigin);
+	}
+
+	@Benchmark
+	public double[] rotateAndTranslateDest() {
+		RotationMatrices.getTranslationMatrix(120D, 70D, -45D, secondDest);
+		return RotationMatrices.rotateAndTranslate(secondDest, pitch, yaw, roll, localOrigin, dest);
+	}
+
+	@Benchmark
+	public double[] matrixProductAllocating() {
+		return RotationMatrices.getMatrixProduct(otherTransform, transform);
+	}
+
+	@Benchmark
+	public double[] matrixProductDest() {
+		return RotationMatrices.getMatrixProduct(otherTransform, transform, dest);
+	}
+
+	@Benchmark
+	public double[] inverseAllocating() {
+		return RotationMatrices.inverse(transform);
+	}
+
+	@Benchmark
+	public double[] inverseDest() {
+		return RotationMatrices.inverse(transform, dest);
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package valkyrienwarfare.mod.physmanagement.chunk;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import net.minecraft.util.math.ChunkPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The lookup WorldPhysObjectManager.getManagingObjectForChunkPosition does for
+ * the world and entity mixins, by grid slot against the old ChunkPos map. A
+ * World can't be made outside of the game, so this calls the same
+ * PhysicsChunkManager.getChunkSetSlotOwner on an array of ChunkSets instead of
+ * ships.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkSetSlotBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({"8", "128"})
+    public int shipCount;
+
+    // How many of the queried chunks belong to a ship, the rest are normal world chunks
+    @Param({"0.5"})
+    public double shipChunkFraction;
+
+    private ChunkSet[] chunkSetsBySlot;
+    private Map<ChunkPos, ChunkSet> chunkSetsByPos;
+    private int[] queryX;
+    private int[] queryZ;
+    private int queryIndex;
+
+    @Setup
+    public void setup() {
+        int increment = PhysicsChunkManager.getChunkSetIncrement();
+        chunkSetsBySlot = new ChunkSet[shipCount];
+        chunkSetsByPos = new HashMap<ChunkPos, ChunkSet>();
+        for (int slot = 0; slot < shipCount; slot++) {
+            ChunkSet chunkSet = new ChunkSet(PhysicsChunkManager.xChunkStartingPos + slot * increment,
+                    PhysicsChunkManager.zChunkStartingPos, 3);
+            chunkSetsBySlot[slot] = chunkSet;
+            for (int x = chunkSet.minX; x <= chunkSet.maxX; x++) {
+                for (int z = chunkSet.minZ; z <= chunkSet.maxZ; z++) {
+                    chunkSetsByPos.put(new ChunkPos(x, z), chunkSet);
+                }
+            }
+        }
+
+        Random random = new Random(42);
+        queryX = new int[QUERIES];
+        queryZ = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            if (random.nextDouble() < shipChunkFraction) {
+                ChunkSet chunkSet = chunkSetsBySlot[random.nextInt(shipCount)];
+                queryX[i] = chunkSet.minX + random.nextInt(chunkSet.maxX - chunkSet.minX + 1);
+                queryZ[i] = chunkSet.minZ + random.nextInt(chunkSet.maxZ - chunkSet.minZ + 1);
+            } else {
+                queryX[i] = random.nextInt(2000) - 1000;
+                queryZ[i] = random.nextInt(2000) - 1000;
+            }
+        }
+    }
+
+    @Benchmark
+    public ChunkSet lookupBySlot() {
+        int i = queryIndex++ & (QUERIES - 1);
+        return PhysicsChunkManager.getChunkSetSlotOwner(chunkSetsBySlot, Function.identity(), queryX[i], queryZ[i]);
+    }
+
+    @Benchmark
+    public ChunkSet lookupByChunkPos() {
+        int i = queryIndex++ & (QUERIES - 1);
+        return chunkSetsByPos.get(new ChunkPos(queryX[i], queryZ[i]));
+    }
+}
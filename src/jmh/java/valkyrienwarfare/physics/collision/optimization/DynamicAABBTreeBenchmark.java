@@ -0,0 +1,122 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package valkyrienwarfare.physics.collision.optimization;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.minecraft.util.math.AxisAlignedBB;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The ship lookup WorldPhysObjectManager.getNearbyPhysObjects does on the
+ * server, through the DynamicAABBTree against the linear scan over every ship
+ * it used before. Ships can't be made outside of the game, so these are just
+ * their bounding boxes, spread out so the number of ships per area stays the
+ * same for every ship count.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DynamicAABBTreeBenchmark {
+
+    private static final int QUERIES = 1024;
+    // The area every ship gets, in blocks along each horizontal axis
+    private static final double SPACE_PER_SHIP = 64D;
+
+    @Param({"1", "10", "100", "1000"})
+    public int shipCount;
+
+    private List<Ship> ships;
+    private DynamicAABBTree<Ship> shipAABBTree;
+    private AxisAlignedBB[] queries;
+    private int queryIndex;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        double worldSize = Math.sqrt(shipCount) * SPACE_PER_SHIP;
+        ships = new ArrayList<Ship>();
+        shipAABBTree = new DynamicAABBTree<Ship>();
+        for (int i = 0; i < shipCount; i++) {
+            double x = random.nextDouble() * worldSize;
+            double y = 64D + random.nextDouble() * 64D;
+            double z = random.nextDouble() * worldSize;
+            double size = 8D + random.nextDouble() * 40D;
+            Ship ship = new Ship(new AxisAlignedBB(x, y, z, x + size, y + size / 2D, z + size));
+            ships.add(ship);
+            shipAABBTree.insert(ship, ship.collisionBB);
+        }
+
+        queries = new AxisAlignedBB[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            double x = random.nextDouble() * worldSize;
+            double y = 64D + random.nextDouble() * 64D;
+            double z = random.nextDouble() * worldSize;
+            // About the size of a player's reach, grown the same way getNearbyPhysObjects does
+            queries[i] = new AxisAlignedBB(x, y, z, x + 5D, y + 5D, z + 5D).expand(6, 6, 6);
+        }
+    }
+
+    @Benchmark
+    public List<Ship> queryTree() {
+        AxisAlignedBB toCheck = queries[queryIndex++ & (QUERIES - 1)];
+        return filterIntersecting(shipAABBTree.query(toCheck), toCheck);
+    }
+
+    @Benchmark
+    public List<Ship> queryLinear() {
+        AxisAlignedBB toCheck = queries[queryIndex++ & (QUERIES - 1)];
+        return filterIntersecting(ships, toCheck);
+    }
+
+    // The exact check getNearbyPhysObjects does on the candidates
+    private static List<Ship> filterIntersecting(List<Ship> candidates, AxisAlignedBB toCheck) {
+        List<Ship> nearby = new ArrayList<Ship>();
+        for (Ship ship : candidates) {
+            if (ship.collisionBB.intersects(toCheck)) {
+                nearby.add(ship);
+            }
+        }
+        return nearby;
+    }
+
+    private static class Ship {
+        final AxisAlignedBB collisionBB;
+
+        Ship(AxisAlignedBB collisionBB) {
+            this.collisionBB = collisionBB;
+        }
+    }
+
+}
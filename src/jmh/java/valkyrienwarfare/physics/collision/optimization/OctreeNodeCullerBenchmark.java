@@ -0,0 +1,137 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package valkyrienwarfare.physics.collision.optimization;
+
+import java.util.concurrent.TimeUnit;
+
+import net.minecraft.util.math.AxisAlignedBB;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import valkyrienwarfare.api.Vector;
+
+/**
+ * The octree walk WorldPhysicsCollider does over the world sections under a
+ * ship, with the node culling against the same walk without it, which visits
+ * every child of every set node like USE_OCTREE_NODE_CULLING = false does.
+ * The ship is a 64x64 hull, 4 blocks thick, hovering just above flat terrain.
+ * Every block the walk visits is moved into local coordinates, which is where
+ * the collider's per block check starts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OctreeNodeCullerBenchmark {
+
+    private static final int SHIP_SIZE = 64;
+    private static final int SHIP_THICKNESS = 4;
+    // The terrain is solid below this height
+    private static final int GROUND_HEIGHT = 62;
+    // How many sections the swept bounding box of the ship covers along x and z
+    private static final int SECTIONS_ACROSS = 6;
+    private static final int SECTIONS_UP = 5;
+
+    private IBitOctree[] sectionOctrees;
+    private double[] wToLTransform;
+    private OctreeNodeCuller culler;
+    private OctreeNodeCuller noCuller;
+    private double localSum;
+
+    @Setup
+    public void setup() {
+        // Everything up to the top section of the ground is uniform, like the
+        // sections the game gives the shared solid octree
+        IBitOctree groundTop = new MortonBitOctree();
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < GROUND_HEIGHT - 48; y++) {
+                for (int z = 0; z < 16; z++) {
+                    groundTop.set(x, y, z, true);
+                }
+            }
+        }
+        sectionOctrees = new IBitOctree[SECTIONS_UP];
+        for (int storageY = 0; storageY < SECTIONS_UP; storageY++) {
+            if (storageY < 3) {
+                sectionOctrees[storageY] = UniformBitOctree.SOLID;
+            } else if (storageY == 3) {
+                sectionOctrees[storageY] = groundTop;
+            } else {
+                sectionOctrees[storageY] = UniformBitOctree.EMPTY;
+            }
+        }
+
+        // The ship sits in the middle of the sections, half a block above the
+        // ground, and isn't rotated
+        double shipX = (SECTIONS_ACROSS * 16 - SHIP_SIZE) / 2D;
+        double shipY = GROUND_HEIGHT + .5D;
+        double shipZ = shipX;
+        wToLTransform = new double[] {1, 0, 0, -shipX, 0, 1, 0, -shipY, 0, 0, 1, -shipZ, 0, 0, 0, 1};
+        AxisAlignedBB blockBBInLocal = new AxisAlignedBB(0, 0, 0, SHIP_SIZE, SHIP_THICKNESS, SHIP_SIZE);
+        Vector centerCoord = new Vector(SHIP_SIZE / 2D, SHIP_THICKNESS / 2D, SHIP_SIZE / 2D);
+
+        culler = new OctreeNodeCuller();
+        culler.update(wToLTransform, blockBBInLocal, centerCoord, 5D, .1D, .05D);
+        noCuller = new OctreeNodeCuller();
+        noCuller.update(wToLTransform, null, centerCoord, 5D, .1D, .05D);
+    }
+
+    @Benchmark
+    public double walkWithNodeCulling() {
+        return walkSections(culler);
+    }
+
+    @Benchmark
+    public double walkWithoutNodeCulling() {
+        return walkSections(noCuller);
+    }
+
+    private double walkSections(OctreeNodeCuller nodeCuller) {
+        localSum = 0;
+        IBitOctree.BlockConsumer toLocal = this::moveToLocal;
+        for (int chunkX = 0; chunkX < SECTIONS_ACROSS; chunkX++) {
+            for (int chunkZ = 0; chunkZ < SECTIONS_ACROSS; chunkZ++) {
+                for (int storageY = 0; storageY < SECTIONS_UP; storageY++) {
+                    nodeCuller.forEachBlockThatCanCollide(sectionOctrees[storageY], chunkX << 4, storageY << 4,
+                            chunkZ << 4, 1.8D, toLocal);
+                }
+            }
+        }
+        return localSum;
+    }
+
+    private void moveToLocal(int x, int y, int z) {
+        final double[] M = wToLTransform;
+        double centerX = x + .5D;
+        double centerY = y + .5D;
+        double centerZ = z + .5D;
+        localSum += centerX * M[0] + centerY * M[1] + centerZ * M[2] + M[3];
+        localSum += centerX * M[4] + centerY * M[5] + centerZ * M[6] + M[7];
+        localSum += centerX * M[8] + centerY * M[9] + centerZ * M[10] + M[11];
+    }
+
+}
@@ -78,6 +78,8 @@ import valkyrienwarfare.mod.network.PlayerShipRefrenceMessage;
 import valkyrienwarfare.mod.physmanagement.chunk.DimensionPhysicsChunkManager;
 import valkyrienwarfare.mod.proxy.CommonProxy;
 import valkyrienwarfare.mod.proxy.ServerProxy;
+import valkyrienwarfare.physics.data.BlockForce;
+import valkyrienwarfare.physics.data.BlockMass;
 import valkyrienwarfare.physics.management.DimensionPhysObjectManager;
 import valkyrienwarfare.physics.management.PhysicsWrapperEntity;
 import valkyrienwarfare.util.PhysicsSettings;
@@ -97,6 +99,7 @@ import java.util.Map;
 import java.util.Scanner;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -115,6 +118,8 @@ public class ValkyrienWarfareMod {
     public static ExecutorService PHYSICS_THREADS = null;
     // This service is directly responsible for running collision tasks.
     public static ExecutorService PHYSICS_THREADS_EXECUTOR = null;
+    // Steps independent groups of ships in parallel when parallelShipPhysics is on.
+    public static ForkJoinPool PHYSICS_ISLAND_POOL = null;
 	@SidedProxy(clientSide = "valkyrienwarfare.mod.proxy.ClientProxy", serverSide = "valkyrienwarfare.mod.proxy.ServerProxy")
 	public static CommonProxy proxy;
 	public static File configFile;
@@ -143,6 +148,10 @@ public class ValkyrienWarfareMod {
 	public static int threadCount = -1;
 	public static double shipmobs_spawnrate = .01D;
 	public static boolean singleBitOctrees = false;
+	public static boolean mortonBitOctrees = true;
+	public static boolean parallelShipPhysics = true;
+	public static double physicsTickBudgetMs = 40D;
+	public static boolean decoupledPhysics = false;
 	public static Logger VWLogger;
 	private static boolean hasAddonRegistrationEnded = false;
 	public DataTag tag = null;
@@ -167,6 +176,10 @@ public class ValkyrienWarfareMod {
 		runAirshipPermissions = config.get(Configuration.CATEGORY_GENERAL, "Enable airship permissions", false, "Enables the airship permissions system").getBoolean();
 		shipmobs_spawnrate = config.get(Configuration.CATEGORY_GENERAL, "The spawn rate for ship mobs", .01D, "The spawn rate for ship mobs").getDouble();
 		singleBitOctrees = config.get(Configuration.CATEGORY_GENERAL, "Single Bit octrees", true, "If true, octrees will use 1-bit entries. If false, they'll use 32-bit entries.\nSetting this to false gives a big memory boost, but is much slower.").getBoolean();
+		mortonBitOctrees = config.get(Configuration.CATEGORY_GENERAL, "Morton ordered octrees", true, "If true, octrees pack each 4x4x4 group of blocks into one 64-bit word, so empty space is skipped a word at a time.\nIf false, the older octrees configured by 'Single Bit octrees' are used.").getBoolean();
+		parallelShipPhysics = config.get(Configuration.CATEGORY_GENERAL, "Parallel ship physics", true, "If true, ships that can't touch each other are simulated on separate physics threads.\nIf false, every ship in a world is simulated one after another.").getBoolean();
+		decoupledPhysics = config.get(Configuration.CATEGORY_GENERAL, "Decoupled physics thread", false, "If true, each world runs its ship physics on its own thread at a steady 20 ticks per second, instead of inside the game tick.\nShips keep moving smoothly through short server lag spikes, and slow physics no longer holds up the game tick.").getBoolean();
+		physicsTickBudgetMs = config.get(Configuration.CATEGORY_GENERAL, "Physics tick budget", 40D, "Most milliseconds the physics of one world should take per tick. When it goes over, ships nobody is on get fewer physics steps, and then skip ticks.\nSet to 0 to disable.").getDouble();
 
 		{
 			threadCount = config.get(Configuration.CATEGORY_GENERAL, "Physics thread count", -1,
@@ -175,6 +188,7 @@ public class ValkyrienWarfareMod {
 			if (PHYSICS_THREADS_EXECUTOR == null) {
 				PHYSICS_THREADS_EXECUTOR = Executors.newFixedThreadPool(threadCount <= 0 ? Runtime.getRuntime().availableProcessors() : threadCount);
 				PHYSICS_THREADS = Executors.newFixedThreadPool(threadCount <= 0 ? Runtime.getRuntime().availableProcessors() : threadCount);
+				PHYSICS_ISLAND_POOL = new ForkJoinPool(threadCount <= 0 ? Runtime.getRuntime().availableProcessors() : threadCount);
 			}
 		}
 
@@ -402,6 +416,10 @@ public class ValkyrienWarfareMod {
 		}
 
 		addons.forEach(m -> m.doPostInit(event));
+
+		// Blocks registered after this still get added to the tables
+		BlockMass.basicMass.bakeStateMasses();
+		BlockForce.basicForces.bakeStateForces();
 	}
 
 	@EventHandler
@@ -477,6 +495,7 @@ public class ValkyrienWarfareMod {
 			tag.setInteger("physicsIterations", 10);
 			tag.setDouble("physicsSpeed", 0.05);
 			tag.setBoolean("doEtheriumLifting", true);
+			tag.setBoolean("doShipCollision", true);
 			tag.save();
 		} else {
 			tag = new DataTag(file);
@@ -492,6 +511,8 @@ public class ValkyrienWarfareMod {
 		ValkyrienWarfareMod.gravity = new Vector(tag.getDouble("gravityVecX", 0.0), tag.getDouble("gravityVecY", -9.8),
 				tag.getDouble("gravityVecZ", 0.0));
 		PhysicsSettings.doEtheriumLifting = tag.getBoolean("doEtheriumLifting", true);
+		PhysicsSettings.doShipCollision = tag.getBoolean("doShipCollision", true);
+		PhysicsSettings.doAdaptiveSubsteps = tag.getBoolean("doAdaptiveSubsteps", true);
 
 		// save the tag in case new fields are added, this way they are saved right away
 		tag.save();
@@ -502,6 +523,8 @@ public class ValkyrienWarfareMod {
 		tag.setBoolean("doPhysicsBlocks", PhysicsSettings.doPhysicsBlocks);
 		tag.setBoolean("doAirshipRotation", PhysicsSettings.doAirshipRotation);
 		tag.setBoolean("doAirshipMovement", PhysicsSettings.doAirshipMovement);
+		tag.setBoolean("doShipCollision", PhysicsSettings.doShipCollision);
+		tag.setBoolean("doAdaptiveSubsteps", PhysicsSettings.doAdaptiveSubsteps);
 		tag.setInteger("maxShipSize", ValkyrienWarfareMod.maxShipSize);
 		tag.setDouble("gravityVecX", ValkyrienWarfareMod.gravity.X);
 		tag.setDouble("gravityVecY", ValkyrienWarfareMod.gravity.Y);
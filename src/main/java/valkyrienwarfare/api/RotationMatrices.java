@@ -33,11 +33,18 @@ import valkyrienwarfare.math.VWMath;
 public class RotationMatrices {
 
 	public static double[] getTranslationMatrix(double x, double y, double z) {
-		double[] matrix = getDoubleIdentity();
-		matrix[3] = x;
-		matrix[7] = y;
-		matrix[11] = z;
-		return matrix;
+		return getTranslationMatrix(x, y, z, new double[16]);
+	}
+
+	/**
+	 * Fills dest with a translation matrix and returns it
+	 */
+	public static double[] getTranslationMatrix(double x, double y, double z, double[] dest) {
+		setIdentity(dest);
+		dest[3] = x;
+		dest[7] = y;
+		dest[11] = z;
+		return dest;
 	}
 
 	public static double[] rotateAndTranslate(double[] input, double pitch, double yaw, double roll, Vector localOrigin) {
@@ -48,6 +55,31 @@ public class RotationMatrices {
 		return input;
 	}
 
+	/**
+	 * Same as rotateAndTranslate, but writes the result into dest instead of
+	 * allocating the intermediate matrices. dest must not be the same array as
+	 * input.
+	 */
+	public static double[] rotateAndTranslate(double[] input, double pitch, double yaw, double roll, Vector localOrigin, double[] dest) {
+		double[] rotation = getRotationMatrix(pitch, yaw, roll, dest);
+		double r0 = rotation[0], r1 = rotation[1], r2 = rotation[2];
+		double r4 = rotation[4], r5 = rotation[5], r6 = rotation[6];
+		double r8 = rotation[8], r9 = rotation[9], r10 = rotation[10];
+		// The rotation doesn't touch the 4th column, so the translation by
+		// -localOrigin can be folded straight into it
+		double t0 = -(r0 * localOrigin.X + r1 * localOrigin.Y + r2 * localOrigin.Z);
+		double t1 = -(r4 * localOrigin.X + r5 * localOrigin.Y + r6 * localOrigin.Z);
+		double t2 = -(r8 * localOrigin.X + r9 * localOrigin.Y + r10 * localOrigin.Z);
+		for (int row = 0; row < 16; row += 4) {
+			double i0 = input[row], i1 = input[row + 1], i2 = input[row + 2], i3 = input[row + 3];
+			dest[row] = i0 * r0 + i1 * r4 + i2 * r8;
+			dest[row + 1] = i0 * r1 + i1 * r5 + i2 * r9;
+			dest[row + 2] = i0 * r2 + i1 * r6 + i2 * r10;
+			dest[row + 3] = i0 * t0 + i1 * t1 + i2 * t2 + i3;
+		}
+		return dest;
+	}
+
 	public static double[] rotateOnly(double[] input, double pitch, double yaw, double roll) {
 		input = RotationMatrices.getMatrixProduct(input, RotationMatrices.getRotationMatrix(1.0D, 0.0D, 0.0D, Math.toRadians(pitch)));
 		input = RotationMatrices.getMatrixProduct(input, RotationMatrices.getRotationMatrix(0.0D, 1.0D, 0.0D, Math.toRadians(yaw)));
@@ -62,6 +94,36 @@ public class RotationMatrices {
 		return input;
 	}
 
+	/**
+	 * Fills dest with the same rotation as getRotationMatrix(pitch, yaw, roll),
+	 * worked out directly from the sines and cosines, and returns it
+	 */
+	public static double[] getRotationMatrix(double pitch, double yaw, double roll, double[] dest) {
+		double pitchRadians = Math.toRadians(pitch);
+		double yawRadians = Math.toRadians(yaw);
+		double rollRadians = Math.toRadians(roll);
+		double sx = Math.sin(pitchRadians), cx = Math.cos(pitchRadians);
+		double sy = Math.sin(yawRadians), cy = Math.cos(yawRadians);
+		double sz = Math.sin(rollRadians), cz = Math.cos(rollRadians);
+		dest[0] = cy * cz;
+		dest[1] = -cy * sz;
+		dest[2] = sy;
+		dest[3] = 0;
+		dest[4] = sx * sy * cz + cx * sz;
+		dest[5] = cx * cz - sx * sy * sz;
+		dest[6] = -sx * cy;
+		dest[7] = 0;
+		dest[8] = sx * sz - cx * sy * cz;
+		dest[9] = cx * sy * sz + sx * cz;
+		dest[10] = cx * cy;
+		dest[11] = 0;
+		dest[12] = 0;
+		dest[13] = 0;
+		dest[14] = 0;
+		dest[15] = 1.0D;
+		return dest;
+	}
+
 	public static double[] getRotationMatrix(double ux, double uy, double uz, double angle) {
 		if ((ux == 0.0D) && (uy == 0.0D) && (uz == 0.0D)) {
 			return getDoubleIdentity();
@@ -90,12 +152,25 @@ public class RotationMatrices {
 		return new double[] { 1.0D, 0, 0, 0, 0, 1.0D, 0, 0, 0, 0, 1.0D, 0, 0, 0, 0, 1.0D };
 	}
 
+	public static void setIdentity(double[] matrix) {
+		for (int i = 0; i < 16; i++) {
+			matrix[i] = (i % 5 == 0) ? 1.0D : 0;
+		}
+	}
+
 	public static double[] getZeroMatrix(int size) {
 		return new double[size * size];
 	}
 
 	public static double[] getMatrixProduct(double[] M1, double[] M2) {
-		double[] product = new double[16];
+		return getMatrixProduct(M1, M2, new double[16]);
+	}
+
+	/**
+	 * Writes M1 * M2 into product and returns it. product must not be the same
+	 * array as M1 or M2.
+	 */
+	public static double[] getMatrixProduct(double[] M1, double[] M2, double[] product) {
 		product[0] = (M1[0] * M2[0] + M1[1] * M2[4] + M1[2] * M2[8] + M1[3] * M2[12]);
 		product[1] = (M1[0] * M2[1] + M1[1] * M2[5] + M1[2] * M2[9] + M1[3] * M2[13]);
 		product[2] = (M1[0] * M2[2] + M1[1] * M2[6] + M1[2] * M2[10] + M1[3] * M2[14]);
@@ -225,19 +300,48 @@ public class RotationMatrices {
 	}
 
 	public static Vector get3by3TransformedVec(double[] M, Vector v) {
-		Vector vec = new Vector(v);
-		applyTransform3by3(M, vec);
-		return vec;
+		return get3by3TransformedVec(M, v, new Vector());
+	}
+
+	/**
+	 * Writes M * v into dest and returns it; dest can be v itself
+	 */
+	public static Vector get3by3TransformedVec(double[] M, Vector v, Vector dest) {
+		double xx = v.X;
+		double yy = v.Y;
+		double zz = v.Z;
+		dest.X = (xx * M[0] + yy * M[1] + zz * M[2]);
+		dest.Y = (xx * M[3] + yy * M[4] + zz * M[5]);
+		dest.Z = (xx * M[6] + yy * M[7] + zz * M[8]);
+		return dest;
 	}
 
 	public static Vector getTransformedVec(double[] M, Vector v) {
-		Vector vec = new Vector(v);
-		applyTransform(M, vec);
-		return vec;
+		return getTransformedVec(M, v, new Vector());
+	}
+
+	/**
+	 * Writes the transformed v into dest and returns it; dest can be v itself
+	 */
+	public static Vector getTransformedVec(double[] M, Vector v, Vector dest) {
+		double x = v.X;
+		double y = v.Y;
+		double z = v.Z;
+		dest.X = x * M[0] + y * M[1] + z * M[2] + M[3];
+		dest.Y = x * M[4] + y * M[5] + z * M[6] + M[7];
+		dest.Z = x * M[8] + y * M[9] + z * M[10] + M[11];
+		return dest;
 	}
 
 	public static double[] inverse3by3(double[] matrix) {
-		double[] inverse = new double[9];
+		return inverse3by3(matrix, new double[9]);
+	}
+
+	/**
+	 * Writes the inverse of the 3x3 matrix into inverse, which must not be the
+	 * same array as matrix. Returns inverse.
+	 */
+	public static double[] inverse3by3(double[] matrix, double[] inverse) {
 		inverse[0] = (matrix[4] * matrix[8] - matrix[5] * matrix[7]);
 		inverse[3] = (matrix[5] * matrix[6] - matrix[3] * matrix[8]);
 		inverse[6] = (matrix[3] * matrix[7] - matrix[4] * matrix[6]);
@@ -255,7 +359,14 @@ public class RotationMatrices {
 	}
 
 	public static double[] inverse(double[] matrix) {
-		double[] inverse = new double[16];
+		return inverse(matrix, new double[16]);
+	}
+
+	/**
+	 * Writes the inverse of the rigid transform matrix into inverse and returns
+	 * it. inverse must not be the same array as matrix.
+	 */
+	public static double[] inverse(double[] matrix, double[] inverse) {
 		for (int i = 0; i < 3; i++) {
 			for (int j = 0; j < 3; j++) {
 				inverse[(i * 4 + j)] = matrix[(i + j * 4)];
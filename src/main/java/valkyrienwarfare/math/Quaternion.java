@@ -47,6 +47,46 @@ public class Quaternion {
         return q;
     }
 
+    /**
+     * The inverse of QuaternionFromMatrix; returns the 4x4 rotation matrix this
+     * Quaternion stands for without going through Euler angles
+     */
+    public double[] toRotationMatrix() {
+        return toRotationMatrix(new double[16]);
+    }
+
+    /**
+     * Fills matrix with the rotation this Quaternion represents and returns it
+     */
+    public double[] toRotationMatrix(double[] matrix) {
+        double xx = x * x;
+        double yy = y * y;
+        double zz = z * z;
+        double xy = x * y;
+        double xz = x * z;
+        double yz = y * z;
+        double xw = x * w;
+        double yw = y * w;
+        double zw = z * w;
+        matrix[0] = 1D - 2D * (yy + zz);
+        matrix[1] = 2D * (xy + zw);
+        matrix[2] = 2D * (xz - yw);
+        matrix[4] = 2D * (xy - zw);
+        matrix[5] = 1D - 2D * (xx + zz);
+        matrix[6] = 2D * (yz + xw);
+        matrix[8] = 2D * (xz + yw);
+        matrix[9] = 2D * (yz - xw);
+        matrix[10] = 1D - 2D * (xx + yy);
+        matrix[3] = 0;
+        matrix[7] = 0;
+        matrix[11] = 0;
+        matrix[12] = 0;
+        matrix[13] = 0;
+        matrix[14] = 0;
+        matrix[15] = 1D;
+        return matrix;
+    }
+
     public static Quaternion getBetweenQuat(Quaternion old, Quaternion newOne, double timeStep) {
         double dotProduct = dotProduct(old, newOne);
         boolean makeNegative = dotProduct < 0;
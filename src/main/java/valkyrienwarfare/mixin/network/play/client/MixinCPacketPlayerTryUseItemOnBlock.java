@@ -30,6 +30,7 @@ import valkyrienwarfare.ValkyrienWarfareMod;
 import valkyrienwarfare.api.RotationMatrices;
 import valkyrienwarfare.mod.physmanagement.interaction.INHPServerVW;
 import valkyrienwarfare.mod.physmanagement.interaction.PlayerDataBackup;
+import valkyrienwarfare.physics.data.ShipTransformSnapshot;
 import valkyrienwarfare.physics.management.PhysicsWrapperEntity;
 
 @Mixin(CPacketPlayerTryUseItemOnBlock.class)
@@ -51,7 +52,9 @@ public abstract class MixinCPacketPlayerTryUseItemOnBlock {
 			player.interactionManager.setBlockReachDistance(vw.dummyBlockReachDist());
 		}
 		if (wrapper != null && wrapper.wrapping.coordTransform != null) {
-			RotationMatrices.applyTransform(wrapper.wrapping.coordTransform.wToLTransform, wrapper.wrapping.coordTransform.wToLRotation, player);
+			// Matches the live matrices during the server tick, and stays safe outside of it
+			ShipTransformSnapshot transform = wrapper.wrapping.coordTransform.getLatestSnapshot();
+			RotationMatrices.applyTransform(transform.wToLTransform, transform.wToLRotation, player);
 			if (player.getHeldItem(packetIn.getHand()) != null && player.getHeldItem(packetIn.getHand()).getItem() instanceof ItemBucket) {
 				player.interactionManager.setBlockReachDistance(vw.lastGoodBlockReachDist());
 			}
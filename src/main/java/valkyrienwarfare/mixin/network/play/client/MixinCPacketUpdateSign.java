@@ -28,6 +28,7 @@ import valkyrienwarfare.ValkyrienWarfareMod;
 import valkyrienwarfare.api.RotationMatrices;
 import valkyrienwarfare.mod.physmanagement.interaction.INHPServerVW;
 import valkyrienwarfare.mod.physmanagement.interaction.PlayerDataBackup;
+import valkyrienwarfare.physics.data.ShipTransformSnapshot;
 import valkyrienwarfare.physics.management.PhysicsWrapperEntity;
 
 @Mixin(CPacketUpdateSign.class)
@@ -50,9 +51,11 @@ public abstract class MixinCPacketUpdateSign {
         }
 
         if (wrapper != null && wrapper.wrapping.coordTransform != null) {
-            RotationMatrices.applyTransform(wrapper.wrapping.coordTransform.wToLTransform, wrapper.wrapping.coordTransform.wToLRotation, player);
+            // Matches the live matrices during the server tick, and stays safe outside of it
+            ShipTransformSnapshot transform = wrapper.wrapping.coordTransform.getLatestSnapshot();
+            RotationMatrices.applyTransform(transform.wToLTransform, transform.wToLRotation, player);
             server.processUpdateSign(packetIn);
-            RotationMatrices.applyTransform(wrapper.wrapping.coordTransform.lToWTransform, wrapper.wrapping.coordTransform.lToWRotation, player);
+            RotationMatrices.applyTransform(transform.lToWTransform, transform.lToWRotation, player);
             playerBackup.restorePlayerToBackup();
         } else {
             server.processUpdateSign(packetIn);
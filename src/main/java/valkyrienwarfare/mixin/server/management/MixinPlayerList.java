@@ -30,6 +30,7 @@ import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Overwrite;
 import org.spongepowered.asm.mixin.Shadow;
 import valkyrienwarfare.ValkyrienWarfareMod;
+import valkyrienwarfare.api.RotationMatrices;
 import valkyrienwarfare.api.Vector;
 import valkyrienwarfare.physics.management.PhysicsWrapperEntity;
 
@@ -60,7 +61,9 @@ public abstract class MixinPlayerList {
         PhysicsWrapperEntity wrapper = ValkyrienWarfareMod.physicsManager.getObjectManagingPos(worldIn, pos);
         Vector packetPosition = new Vector(x, y, z);
         if (wrapper != null && wrapper.wrapping.coordTransform != null) {
-            wrapper.wrapping.coordTransform.fromLocalToGlobal(packetPosition);
+            // Can be called outside of the server tick, while the physics thread is moving the ship
+            RotationMatrices.applyTransform(wrapper.wrapping.coordTransform.getLatestSnapshot().lToWTransform,
+                    packetPosition);
 
             if (packetIn instanceof SPacketSoundEffect) {
                 SPacketSoundEffect soundEffect = (SPacketSoundEffect) packetIn;
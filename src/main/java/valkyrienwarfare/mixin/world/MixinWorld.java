@@ -42,6 +42,7 @@ import valkyrienwarfare.api.Vector;
 import valkyrienwarfare.fixes.WorldChunkloadingCrashFix;
 import valkyrienwarfare.mod.physmanagement.interaction.IWorldVW;
 import valkyrienwarfare.physics.collision.Polygon;
+import valkyrienwarfare.physics.collision.optimization.ShipOctreeRayTracer;
 import valkyrienwarfare.physics.management.PhysicsWrapperEntity;
 import valkyrienwarfare.physics.management.WorldPhysObjectManager;
 
@@ -260,6 +261,8 @@ public abstract class MixinWorld implements IWorldVW {
         PhysicsWrapperEntity wrapper = ValkyrienWarfareMod.physicsManager.getObjectManagingPos(World.class.cast(this), pos);
         if (wrapper != null) {
             wrapper.wrapping.onSetBlockState(oldState, newState, pos);
+        } else if (!thisClassAsWorld.isRemote) {
+            ValkyrienWarfareMod.physicsManager.getManagerForWorld(thisClassAsWorld).onWorldBlockChange(pos);
         }
     }
 
@@ -391,7 +394,16 @@ public abstract class MixinWorld implements IWorldVW {
             playerEyesPos = RotationMatrices.applyTransform(wrapper.wrapping.coordTransform.RwToLTransform, playerEyesPos);
             playerReachVector = RotationMatrices.applyTransform(wrapper.wrapping.coordTransform.RwToLRotation, playerReachVector);
             Vec3d playerEyesReachAdded = playerEyesPos.addVector(playerReachVector.x * reachDistance, playerReachVector.y * reachDistance, playerReachVector.z * reachDistance);
-            RayTraceResult resultInShip = thisClassAsWorld.rayTraceBlocks(playerEyesPos, playerEyesReachAdded, stopOnLiquid, ignoreBlockWithoutBoundingBox, returnLastUncollidableBlock);
+            RayTraceResult resultInShip;
+            ShipOctreeRayTracer octreeRayTracer = null;
+            if (!thisClassAsWorld.isRemote && !returnLastUncollidableBlock) {
+                octreeRayTracer = new ShipOctreeRayTracer(wrapper.wrapping, playerEyesPos, playerEyesReachAdded);
+            }
+            if (octreeRayTracer != null && octreeRayTracer.canUseOctree()) {
+                resultInShip = octreeRayTracer.rayTraceBlocks(thisClassAsWorld, stopOnLiquid, ignoreBlockWithoutBoundingBox);
+            } else {
+                resultInShip = thisClassAsWorld.rayTraceBlocks(playerEyesPos, playerEyesReachAdded, stopOnLiquid, ignoreBlockWithoutBoundingBox, returnLastUncollidableBlock);
+            }
             if (resultInShip != null && resultInShip.hitVec != null && resultInShip.typeOfHit == RayTraceResult.Type.BLOCK) {
                 double shipResultDistFromPlayer = resultInShip.hitVec.distanceTo(playerEyesPos);
                 if (shipResultDistFromPlayer < worldResultDistFromPlayer) {
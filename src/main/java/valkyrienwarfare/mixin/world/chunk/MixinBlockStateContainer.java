@@ -16,6 +16,7 @@
 
 package valkyrienwarfare.mixin.world.chunk;
 
+import net.minecraft.block.material.Material;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.util.BitArray;
 import net.minecraft.world.chunk.BlockStateContainer;
@@ -24,14 +25,21 @@ import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Overwrite;
 import org.spongepowered.asm.mixin.Shadow;
+import valkyrienwarfare.physics.collision.optimization.BitOctreeMemoryStats;
 import valkyrienwarfare.physics.collision.optimization.IBitOctree;
 import valkyrienwarfare.physics.collision.optimization.IBitOctreeProvider;
-import valkyrienwarfare.physics.collision.optimization.SimpleBitOctree;
+import valkyrienwarfare.physics.collision.optimization.UniformBitOctree;
+
+import javax.annotation.Nullable;
 
 @Mixin(BlockStateContainer.class)
 public class MixinBlockStateContainer implements IBitOctreeProvider {
 
-    private final IBitOctree bitOctree = new SimpleBitOctree();
+    // Starts out as a shared sentinel, and only gets a real octree once the
+    // section has both solid and non solid blocks
+    private volatile IBitOctree bitOctree = UniformBitOctree.EMPTY;
+    private int solidBlockCount = 0;
+    private volatile int nonSolidBlockCount = 0;
     @Shadow
     IBlockStatePalette palette;
     @Shadow
@@ -49,6 +57,7 @@ public class MixinBlockStateContainer implements IBitOctreeProvider {
         if (state == null) {
             state = AIR_BLOCK_STATE;
         }
+        IBlockState oldState = this.palette.getBlockState(this.storage.getAt(index));
         int i = this.palette.idFor(state);
         this.storage.setAt(index, i);
         // VW code starts here:
@@ -56,11 +65,37 @@ public class MixinBlockStateContainer implements IBitOctreeProvider {
         int z = (index & 0xF0) >> 4;
         int y = (index & 0xF00) >> 8;
         boolean isStateSolid = state.getMaterial().isSolid();
-        bitOctree.set(x & 15, y & 15, z & 15, isStateSolid);
+        int nonSolidChange = (isNonSolidBlock(state) ? 1 : 0) - (isNonSolidBlock(oldState) ? 1 : 0);
+        if (nonSolidChange != 0) {
+            nonSolidBlockCount += nonSolidChange;
+        }
+        IBitOctree octree = bitOctree;
+        if (octree.get(x, y, z) != isStateSolid) {
+            if (octree instanceof UniformBitOctree) {
+                octree = ((UniformBitOctree) octree).materialize();
+                BitOctreeMemoryStats.onOctreeMaterialized(octree);
+            }
+            octree.set(x, y, z, isStateSolid);
+            solidBlockCount += isStateSolid ? 1 : -1;
+            if (solidBlockCount == 0 || solidBlockCount == IBitOctree.BLOCKS_TOTAL) {
+                BitOctreeMemoryStats.onOctreeReleased(octree);
+                octree = solidBlockCount == 0 ? UniformBitOctree.EMPTY : UniformBitOctree.SOLID;
+            }
+            bitOctree = octree;
+        }
     }
 
     @Override
     public IBitOctree getBitOctree() {
         return bitOctree;
     }
+
+    @Override
+    public int getNonSolidBlockCount() {
+        return nonSolidBlockCount;
+    }
+
+    private static boolean isNonSolidBlock(@Nullable IBlockState state) {
+        return state != null && state.getMaterial() != Material.AIR && !state.getMaterial().isSolid();
+    }
 }
\ No newline at end of file
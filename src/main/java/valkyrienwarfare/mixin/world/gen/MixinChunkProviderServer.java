@@ -0,0 +1,60 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package valkyrienwarfare.mixin.world.gen;
+
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.gen.ChunkProviderServer;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import valkyrienwarfare.ValkyrienWarfareMod;
+import valkyrienwarfare.mod.physmanagement.chunk.PhysicsChunkManager;
+import valkyrienwarfare.physics.management.PhysicsWrapperEntity;
+import valkyrienwarfare.physics.management.WorldPhysObjectManager;
+
+/**
+ * Ships only keep the chunks that have blocks in them, so anything asking for one
+ * of the other chunks in a ship's area gets the shared empty chunk instead of a
+ * freshly generated piece of terrain. The ship makes a real chunk once a block
+ * gets placed there.
+ */
+@Mixin(ChunkProviderServer.class)
+public abstract class MixinChunkProviderServer {
+
+    @Shadow
+    @Final
+    public WorldServer world;
+
+    @Shadow
+    public abstract Chunk getLoadedChunk(int x, int z);
+
+    @Inject(method = "provideChunk(II)Lnet/minecraft/world/chunk/Chunk;", at = @At("HEAD"), cancellable = true)
+    public void preProvideChunk(int x, int z, CallbackInfoReturnable<Chunk> callbackInfo) {
+        if (PhysicsChunkManager.isLikelyShipChunk(x, z) && getLoadedChunk(x, z) == null) {
+            WorldPhysObjectManager manager = ValkyrienWarfareMod.physicsManager.getManagerForWorld(world);
+            PhysicsWrapperEntity wrapper = manager.getManagingObjectForChunkPosition(x, z);
+            // Chunks with blocks that aren't loaded yet get loaded from the disk like normal
+            if (wrapper != null && wrapper.wrapping.isChunkWithoutBlocks(x, z)) {
+                callbackInfo.setReturnValue(manager.getEmptyShipChunk());
+            }
+        }
+    }
+}
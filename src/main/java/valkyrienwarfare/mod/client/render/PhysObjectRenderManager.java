@@ -74,8 +74,11 @@ public class PhysObjectRenderManager {
                 return;
             }
             renderChunks = new PhysRenderChunk[parent.claimedChunks.length][parent.claimedChunks[0].length];
-            for (int xChunk = 0; xChunk < parent.claimedChunks.length; xChunk++) {
-                for (int zChunk = 0; zChunk < parent.claimedChunks.length; zChunk++) {
+        }
+        // Ships only have some of their chunks, and more can show up later on
+        for (int xChunk = 0; xChunk < renderChunks.length; xChunk++) {
+            for (int zChunk = 0; zChunk < renderChunks[xChunk].length; zChunk++) {
+                if (renderChunks[xChunk][zChunk] == null && parent.claimedChunks[xChunk][zChunk] != null) {
                     renderChunks[xChunk][zChunk] = new PhysRenderChunk(parent, parent.claimedChunks[xChunk][zChunk]);
                 }
             }
@@ -94,7 +97,9 @@ public class PhysObjectRenderManager {
         setupTranslation(partialTicks);
         for (PhysRenderChunk[] chunkArray : renderChunks) {
             for (PhysRenderChunk renderChunk : chunkArray) {
-                renderChunk.renderBlockLayer(layerToRender, partialTicks, pass);
+                if (renderChunk != null) {
+                    renderChunk.renderBlockLayer(layerToRender, partialTicks, pass);
+                }
             }
         }
 
@@ -106,7 +111,9 @@ public class PhysObjectRenderManager {
         if (renderChunks != null) {
             for (PhysRenderChunk[] chunks : renderChunks) {
                 for (PhysRenderChunk chunk : chunks) {
-                    chunk.killRenderChunk();
+                    if (chunk != null) {
+                        chunk.killRenderChunk();
+                    }
                 }
             }
         }
@@ -140,7 +147,9 @@ public class PhysObjectRenderManager {
                             && chunkZ - parent.ownedChunks.minZ < renderChunks[0].length) {
                         PhysRenderChunk renderChunk = renderChunks[chunkX - parent.ownedChunks.minX][chunkZ
                                 - parent.ownedChunks.minZ];
-                        renderChunk.updateLayers(minBlockArrayY, maxBlockArrayY);
+                        if (renderChunk != null) {
+                            renderChunk.updateLayers(minBlockArrayY, maxBlockArrayY);
+                        }
                     } else {
                         // ValkyrienWarfareMod.VWLogger.info("updateRange Just attempted to update
                         // blocks outside of a Ship's block Range. ANY ERRORS PAST THIS ARE LIKELY
@@ -224,14 +233,11 @@ public class PhysObjectRenderManager {
 
     public Quaternion getSmoothRotationQuat(double partialTick) {
         PhysicsWrapperEntity entity = parent.wrapper;
-        double[] oldRotation = RotationMatrices.getDoubleIdentity();
-        oldRotation = RotationMatrices.rotateAndTranslate(oldRotation, entity.prevPitch, entity.prevYaw,
-                entity.prevRoll, new Vector());
-        Quaternion oneTickBefore = Quaternion.QuaternionFromMatrix(oldRotation);
-        double[] newRotation = RotationMatrices.getDoubleIdentity();
-        newRotation = RotationMatrices.rotateAndTranslate(newRotation, entity.pitch, entity.yaw, entity.roll,
-                new Vector());
-        Quaternion nextQuat = Quaternion.QuaternionFromMatrix(newRotation);
+        double[] rotation = new double[16];
+        RotationMatrices.getRotationMatrix(entity.prevPitch, entity.prevYaw, entity.prevRoll, rotation);
+        Quaternion oneTickBefore = Quaternion.QuaternionFromMatrix(rotation);
+        RotationMatrices.getRotationMatrix(entity.pitch, entity.yaw, entity.roll, rotation);
+        Quaternion nextQuat = Quaternion.QuaternionFromMatrix(rotation);
         return Quaternion.getBetweenQuat(oneTickBefore, nextQuat, partialTick);
     }
 
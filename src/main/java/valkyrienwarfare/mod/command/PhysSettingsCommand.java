@@ -30,8 +30,15 @@ import net.minecraft.command.ICommandSender;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.text.TextComponentString;
+import net.minecraft.world.WorldServer;
 import valkyrienwarfare.ValkyrienWarfareMod;
 import valkyrienwarfare.api.Vector;
+import valkyrienwarfare.mod.physmanagement.chunk.ChunkKeysWorldData;
+import valkyrienwarfare.mod.physmanagement.chunk.PhysicsChunkManager;
+import valkyrienwarfare.physics.collision.optimization.BitOctreeMemoryStats;
+import valkyrienwarfare.physics.management.PhysicsSubstepScheduler;
+import valkyrienwarfare.physics.management.PhysicsTickBudget;
+import valkyrienwarfare.physics.management.WorldPhysObjectManager;
 import valkyrienwarfare.util.PhysicsSettings;
 
 public class PhysSettingsCommand extends CommandBase {
@@ -49,6 +56,13 @@ public class PhysSettingsCommand extends CommandBase {
         COMPLETED_OPTIONS.add("doairshipmovement");
         COMPLETED_OPTIONS.add("save");
         COMPLETED_OPTIONS.add("doetheriumlifting");
+        COMPLETED_OPTIONS.add("doshipcollision");
+        COMPLETED_OPTIONS.add("octreememory");
+        COMPLETED_OPTIONS.add("doadaptivesubsteps");
+        COMPLETED_OPTIONS.add("substepmetrics");
+        COMPLETED_OPTIONS.add("physicsbudget");
+        COMPLETED_OPTIONS.add("physicsstatus");
+        COMPLETED_OPTIONS.add("chunkslots");
     }
 
     @Override
@@ -186,6 +200,117 @@ public class PhysSettingsCommand extends CommandBase {
                 sender.sendMessage(new TextComponentString("Set doetheriumlifting to " + (PhysicsSettings.doEtheriumLifting ? "enabled" : "disabled")));
                 return;
             }
+        } else if (key.equals("doshipcollision")) {
+            if (args.length == 1) {
+                sender.sendMessage(new TextComponentString("doshipcollision=" + PhysicsSettings.doShipCollision + " (Default: true)"));
+                return;
+            } else if (args.length == 2) {
+                boolean value = Boolean.parseBoolean(args[1]);
+                PhysicsSettings.doShipCollision = value;
+                sender.sendMessage(new TextComponentString("Set doshipcollision to " + (PhysicsSettings.doShipCollision ? "enabled" : "disabled")));
+                return;
+            }
+        } else if (key.equals("octreememory")) {
+            long uniformSections = 0;
+            long materializedSections = 0;
+            long materializedBytes = 0;
+            for (WorldServer world : server.worlds) {
+                long[] counts = BitOctreeMemoryStats.countLoadedOctrees(world);
+                uniformSections += counts[0];
+                materializedSections += counts[1];
+                materializedBytes += counts[2];
+            }
+            sender.sendMessage(new TextComponentString("Loaded sections: " + materializedSections + " octrees using ~"
+                    + (materializedBytes / 1024) + " KB, " + uniformSections + " all empty or all solid"));
+            sender.sendMessage(new TextComponentString("Since startup: " + BitOctreeMemoryStats.getMaterializedOctrees()
+                    + " octrees created (~" + (BitOctreeMemoryStats.getMaterializedBytes() / 1024) + " KB), "
+                    + BitOctreeMemoryStats.getReleasedOctrees() + " released (~"
+                    + (BitOctreeMemoryStats.getReleasedBytes() / 1024) + " KB)"));
+            return;
+        } else if (key.equals("doadaptivesubsteps")) {
+            if (args.length == 1) {
+                sender.sendMessage(new TextComponentString("doadaptivesubsteps=" + PhysicsSettings.doAdaptiveSubsteps + " (Default: true)"));
+                return;
+            } else if (args.length == 2) {
+                boolean value = Boolean.parseBoolean(args[1]);
+                PhysicsSettings.doAdaptiveSubsteps = value;
+                sender.sendMessage(new TextComponentString("Set doadaptivesubsteps to " + (PhysicsSettings.doAdaptiveSubsteps ? "enabled" : "disabled")));
+                return;
+            }
+        } else if (key.equals("substepmetrics")) {
+            if (args.length == 2 && args[1].equals("reset")) {
+                PhysicsSubstepScheduler.resetMetrics();
+                sender.sendMessage(new TextComponentString("Reset the sub-step metrics"));
+                return;
+            }
+            long shipTicks = PhysicsSubstepScheduler.getShipTicks();
+            long spent = PhysicsSubstepScheduler.getSubstepsSpent();
+            long available = PhysicsSubstepScheduler.getSubstepsAvailable();
+            if (shipTicks == 0) {
+                sender.sendMessage(new TextComponentString("No ships have been simulated yet"));
+                return;
+            }
+            sender.sendMessage(new TextComponentString("Ships averaged " + String.format("%.2f", (double) spent / shipTicks)
+                    + " of " + String.format("%.2f", (double) available / shipTicks) + " sub-steps per tick over "
+                    + shipTicks + " ship ticks"));
+            sender.sendMessage(new TextComponentString("Sub-steps spent: " + spent + " of " + available + " ("
+                    + String.format("%.1f", 100D * spent / Math.max(available, 1)) + "%), "
+                    + PhysicsSubstepScheduler.getFullDetailShipTicks() + " ship ticks at full detail"));
+            return;
+        } else if (key.equals("physicsbudget")) {
+            if (args.length == 1) {
+                sender.sendMessage(new TextComponentString("physicsbudget=" + ValkyrienWarfareMod.physicsTickBudgetMs + "ms (Default: 40ms, 0 disables it)"));
+                return;
+            } else if (args.length == 2) {
+                double value = Double.parseDouble(args[1].replace("ms", ""));
+                if (value < 0 || value > 1000) {
+                    sender.sendMessage(new TextComponentString("Please enter a value between 0 and 1000"));
+                    return;
+                }
+                ValkyrienWarfareMod.physicsTickBudgetMs = value;
+                sender.sendMessage(new TextComponentString("Set physicsbudget to " + value + "ms"));
+                return;
+            }
+        } else if (key.equals("physicsstatus")) {
+            sender.sendMessage(new TextComponentString("Physics budget: " + (ValkyrienWarfareMod.physicsTickBudgetMs > 0 ? ValkyrienWarfareMod.physicsTickBudgetMs + "ms per world" : "disabled")));
+            for (WorldServer world : server.worlds) {
+                WorldPhysObjectManager manager = ValkyrienWarfareMod.physicsManager.getManagerForWorld(world);
+                if (manager.physicsEntities.isEmpty()) {
+                    continue;
+                }
+                PhysicsTickBudget budget = manager.getTickBudget();
+                sender.sendMessage(new TextComponentString("Dimension " + world.provider.getDimension() + ": "
+                        + manager.physicsEntities.size() + " ships, policy " + budget.getPolicy() + ", last tick took "
+                        + String.format("%.2f", budget.getLastPhysicsMillis()) + "ms for " + budget.getPlannedSubsteps()
+                        + " sub-steps (~" + String.format("%.1f", budget.getNanosPerSubstep() / 1000D) + "us each), "
+                        + budget.getReducedShips() + " ships reduced, " + budget.getDeferredShips() + " deferred"));
+            }
+            return;
+        } else if (key.equals("chunkslots")) {
+            boolean compact = args.length == 2 && args[1].equals("compact");
+            for (WorldServer world : server.worlds) {
+                PhysicsChunkManager chunkManager = ValkyrienWarfareMod.chunkManager.getManagerForWorld(world);
+                ChunkKeysWorldData data = chunkManager.data;
+                if (data.getSlotsUsed() == 0) {
+                    continue;
+                }
+                if (compact) {
+                    sender.sendMessage(new TextComponentString("Dimension " + world.provider.getDimension()
+                            + ": gave back " + data.trimFreeSlots() + " slots from the end of the ship grid, deleted "
+                            + chunkManager.deleteUnusedRegionFiles() + " region files only used by free slots"));
+                }
+                int slotsUsed = data.getSlotsUsed();
+                int freeSlots = data.getFreeSlotCount();
+                sender.sendMessage(new TextComponentString("Dimension " + world.provider.getDimension() + ": "
+                        + (slotsUsed - freeSlots) + " ship slots taken out of " + slotsUsed + " (" + freeSlots
+                        + " free, " + String.format("%.1f", 100D * freeSlots / slotsUsed) + "% fragmented), "
+                        + data.getTrailingFreeSlots() + " free at the end, " + data.getSlotsReused() + " reused so far"));
+            }
+            if (!compact) {
+                sender.sendMessage(new TextComponentString("Use /physsettings chunkslots compact to give back the free slots at the end of the grid, and delete the region files only used by free slots"));
+            }
+            sender.sendMessage(new TextComponentString("Ships are never moved to lower slots, so a free slot between two ships stays on disk until a new ship takes it"));
+            return;
         } else if (key.equals("save")) {
             ValkyrienWarfareMod.INSTANCE.saveConfig();
             sender.sendMessage(new TextComponentString("Saved phyisics settings"));
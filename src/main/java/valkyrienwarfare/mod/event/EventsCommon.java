@@ -49,6 +49,7 @@ import net.minecraftforge.event.entity.player.PlayerInteractEvent.RightClickBloc
 import net.minecraftforge.event.entity.player.PlayerSleepInBedEvent;
 import net.minecraftforge.event.world.BlockEvent;
 import net.minecraftforge.event.world.BlockEvent.PlaceEvent;
+import net.minecraftforge.event.world.ChunkWatchEvent;
 import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.eventhandler.Event.Result;
 import net.minecraftforge.fml.common.eventhandler.EventPriority;
@@ -58,6 +59,7 @@ import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerLoggedOutEvent;
 import net.minecraftforge.fml.common.gameevent.TickEvent;
 import net.minecraftforge.fml.common.gameevent.TickEvent.Phase;
 import net.minecraftforge.fml.common.gameevent.TickEvent.PlayerTickEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent.ServerTickEvent;
 import net.minecraftforge.fml.common.gameevent.TickEvent.WorldTickEvent;
 import valkyrienwarfare.ValkyrienWarfareMod;
 import valkyrienwarfare.addon.combat.entity.EntityMountingWeaponBase;
@@ -141,6 +143,12 @@ public class EventsCommon {
                     PhysicsTickHandler.onWorldTickEnd(worldFor);
                 }
             }
+        } else if (event instanceof ServerTickEvent) {
+            if (event.phase == Phase.START) {
+                PhysicsTickHandler.onServerTickStart();
+            } else if (event.phase == Phase.END) {
+                PhysicsTickHandler.onServerTickEnd();
+            }
         }
     }
 
@@ -187,6 +195,18 @@ public class EventsCommon {
         ValkyrienWarfareMod.physicsManager.removeWorld(event.getWorld());
     }
 
+    @SubscribeEvent
+    public void onChunkWatch(ChunkWatchEvent.Watch event) {
+        ValkyrienWarfareMod.physicsManager.getManagerForWorld(event.getPlayer().world)
+                .onChunkWatchChanged(event.getChunk());
+    }
+
+    @SubscribeEvent
+    public void onChunkUnwatch(ChunkWatchEvent.UnWatch event) {
+        ValkyrienWarfareMod.physicsManager.getManagerForWorld(event.getPlayer().world)
+                .onChunkWatchChanged(event.getChunk());
+    }
+
     @SubscribeEvent(priority = EventPriority.HIGHEST)
     public void onEntityUntrack(PlayerEvent.StopTracking event) {
         if (!event.getEntityPlayer().world.isRemote) {
@@ -17,27 +17,90 @@
 package valkyrienwarfare.mod.network;
 
 import io.netty.buffer.ByteBuf;
+import net.minecraftforge.fml.common.network.ByteBufUtils;
 import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
+import valkyrienwarfare.api.RotationMatrices;
 import valkyrienwarfare.api.Vector;
+import valkyrienwarfare.math.Quaternion;
 import valkyrienwarfare.physics.management.PhysicsObject;
-import valkyrienwarfare.physics.management.PhysicsWrapperEntity;
 
+/**
+ * Sends where a ship is every tick. To keep these small the position is only
+ * sent in full with a keyframe; the messages in between send how far the ship
+ * is from that keyframe in fixed point. The rotation is sent as a quantized
+ * Quaternion, and the center of mass is only sent when it changes.
+ */
 public class PhysWrapperPositionMessage implements IMessage {
 
-    public PhysicsWrapperEntity toSpawn;
+    // Deltas are sent in 1/4096ths of a block
+    public static final double POSITION_SCALE = 4096D;
+    // Anything further from the keyframe than this needs a new keyframe
+    public static final double MAX_POSITION_DELTA = 65536D;
+
+    private static final int FLAG_KEYFRAME = 1;
+    private static final int FLAG_CENTER_OF_MASS = 2;
+    // Each of the 3 smallest Quaternion components gets this many bits
+    private static final int ROTATION_BITS = 15;
+    private static final int ROTATION_MAX = (1 << ROTATION_BITS) - 1;
+    private static final double SQRT_HALF = Math.sqrt(.5D);
 
     public int entityID;
     public double posX, posY, posZ;
     public double pitch, yaw, roll;
+    // Null when the center of mass didn't change since the last message
     public Vector centerOfMass;
     public int relativeTick;
 
+    private boolean keyframe;
+    private int keyframeID;
+    private int deltaX, deltaY, deltaZ;
+    private long packedRotation;
+    // Set once posX, posY and posZ hold the real position
+    private boolean resolved;
+
     public PhysWrapperPositionMessage() {
     }
 
-    public PhysWrapperPositionMessage(PhysicsWrapperEntity toSend) {
-        toSpawn = toSend;
-        relativeTick = toSend.ticksExisted;
+    private PhysWrapperPositionMessage(int entityID, int relativeTick, int keyframeID, double pitch, double yaw,
+            double roll, Vector centerOfMass) {
+        this.entityID = entityID;
+        this.relativeTick = relativeTick;
+        this.keyframeID = keyframeID & 255;
+        this.pitch = pitch;
+        this.yaw = yaw;
+        this.roll = roll;
+        this.centerOfMass = centerOfMass;
+        this.packedRotation = packRotation(
+                Quaternion.QuaternionFromMatrix(RotationMatrices.getRotationMatrix(pitch, yaw, roll)));
+    }
+
+    /**
+     * Makes a keyframe, the position and center of mass get sent as they are.
+     */
+    public static PhysWrapperPositionMessage createKeyframe(int entityID, int relativeTick, int keyframeID,
+            double posX, double posY, double posZ, double pitch, double yaw, double roll, Vector centerOfMass) {
+        PhysWrapperPositionMessage message = new PhysWrapperPositionMessage(entityID, relativeTick, keyframeID, pitch,
+                yaw, roll, centerOfMass);
+        message.keyframe = true;
+        message.posX = posX;
+        message.posY = posY;
+        message.posZ = posZ;
+        message.resolved = true;
+        return message;
+    }
+
+    /**
+     * Makes a message that only sends how far the ship is from the keyframe,
+     * centerOfMass should be null if it didn't change.
+     */
+    public static PhysWrapperPositionMessage createDelta(int entityID, int relativeTick, int keyframeID,
+            double deltaX, double deltaY, double deltaZ, double pitch, double yaw, double roll, Vector centerOfMass) {
+        PhysWrapperPositionMessage message = new PhysWrapperPositionMessage(entityID, relativeTick, keyframeID, pitch,
+                yaw, roll, centerOfMass);
+        message.deltaX = (int) Math.round(deltaX * POSITION_SCALE);
+        message.deltaY = (int) Math.round(deltaY * POSITION_SCALE);
+        message.deltaZ = (int) Math.round(deltaZ * POSITION_SCALE);
+        return message;
     }
 
     public PhysWrapperPositionMessage(PhysicsObject toRunLocally) {
@@ -50,40 +113,152 @@ public class PhysWrapperPositionMessage implements IMessage {
         roll = toRunLocally.wrapper.roll;
 
         centerOfMass = toRunLocally.centerCoord;
+        resolved = true;
+    }
+
+    public boolean isKeyframe() {
+        return keyframe;
+    }
+
+    public int getKeyframeID() {
+        return keyframeID;
+    }
+
+    /**
+     * Whether the position is known, messages that were made locally or are
+     * keyframes don't need to be resolved.
+     */
+    public boolean isResolved() {
+        return resolved;
+    }
+
+    /**
+     * Turns the deltas into a position using the keyframe this message was sent
+     * against.
+     */
+    public void resolve(double keyframeX, double keyframeY, double keyframeZ) {
+        posX = keyframeX + deltaX / POSITION_SCALE;
+        posY = keyframeY + deltaY / POSITION_SCALE;
+        posZ = keyframeZ + deltaZ / POSITION_SCALE;
+        resolved = true;
     }
 
     @Override
     public void fromBytes(ByteBuf buf) {
-        entityID = buf.readInt();
-        relativeTick = buf.readInt();
+        int flags = buf.readUnsignedByte();
+        keyframe = (flags & FLAG_KEYFRAME) != 0;
+        entityID = ByteBufUtils.readVarInt(buf, 5);
+        relativeTick = ByteBufUtils.readVarInt(buf, 5);
+        keyframeID = buf.readUnsignedByte();
 
-        posX = buf.readDouble();
-        posY = buf.readDouble();
-        posZ = buf.readDouble();
+        if (keyframe) {
+            posX = buf.readDouble();
+            posY = buf.readDouble();
+            posZ = buf.readDouble();
+            resolved = true;
+        } else {
+            deltaX = readZigZag(buf);
+            deltaY = readZigZag(buf);
+            deltaZ = readZigZag(buf);
+        }
 
-        pitch = buf.readDouble();
-        yaw = buf.readDouble();
-        roll = buf.readDouble();
+        packedRotation = ((long) buf.readUnsignedShort() << 32) | buf.readUnsignedInt();
+        double[] radians = unpackRotation(packedRotation).toRadians();
+        pitch = Double.isNaN(radians[0]) ? 0 : Math.toDegrees(radians[0]);
+        yaw = Double.isNaN(radians[1]) ? 0 : Math.toDegrees(radians[1]);
+        roll = Double.isNaN(radians[2]) ? 0 : Math.toDegrees(radians[2]);
 
-        centerOfMass = new Vector(buf.readDouble(), buf.readDouble(), buf.readDouble());
+        if ((flags & FLAG_CENTER_OF_MASS) != 0) {
+            centerOfMass = new Vector(buf.readDouble(), buf.readDouble(), buf.readDouble());
+        }
     }
 
     @Override
     public void toBytes(ByteBuf buf) {
-        buf.writeInt(toSpawn.getEntityId());
-        buf.writeInt(relativeTick);
+        int flags = 0;
+        if (keyframe) {
+            flags |= FLAG_KEYFRAME;
+        }
+        if (centerOfMass != null) {
+            flags |= FLAG_CENTER_OF_MASS;
+        }
+        buf.writeByte(flags);
+        ByteBufUtils.writeVarInt(buf, entityID, 5);
+        ByteBufUtils.writeVarInt(buf, relativeTick, 5);
+        buf.writeByte(keyframeID);
 
-        buf.writeDouble(toSpawn.posX);
-        buf.writeDouble(toSpawn.posY);
-        buf.writeDouble(toSpawn.posZ);
+        if (keyframe) {
+            buf.writeDouble(posX);
+            buf.writeDouble(posY);
+            buf.writeDouble(posZ);
+        } else {
+            writeZigZag(buf, deltaX);
+            writeZigZag(buf, deltaY);
+            writeZigZag(buf, deltaZ);
+        }
+
+        buf.writeShort((int) (packedRotation >>> 32));
+        buf.writeInt((int) packedRotation);
+
+        if (centerOfMass != null) {
+            buf.writeDouble(centerOfMass.X);
+            buf.writeDouble(centerOfMass.Y);
+            buf.writeDouble(centerOfMass.Z);
+        }
+    }
 
-        buf.writeDouble(toSpawn.pitch);
-        buf.writeDouble(toSpawn.yaw);
-        buf.writeDouble(toSpawn.roll);
+    // Small negative numbers would take 5 bytes as a plain VarInt
+    private static void writeZigZag(ByteBuf buf, int value) {
+        ByteBufUtils.writeVarInt(buf, (value << 1) ^ (value >> 31), 5);
+    }
+
+    private static int readZigZag(ByteBuf buf) {
+        int value = ByteBufUtils.readVarInt(buf, 5);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Packs a unit Quaternion into 47 bits. The largest component is left out since
+     * it can be worked out from the other 3, which means those are all between
+     * -sqrt(.5) and sqrt(.5) and can be stored as 15 bit fixed point numbers.
+     */
+    public static long packRotation(Quaternion rotation) {
+        double[] components = {rotation.x, rotation.y, rotation.z, rotation.w};
+        int largest = 0;
+        for (int i = 1; i < 4; i++) {
+            if (Math.abs(components[i]) > Math.abs(components[largest])) {
+                largest = i;
+            }
+        }
+        // q and -q are the same rotation, so the left out component is always positive
+        double sign = components[largest] < 0 ? -1D : 1D;
+        long packed = largest;
+        for (int i = 0; i < 4; i++) {
+            if (i != largest) {
+                double normalized = (components[i] * sign / SQRT_HALF + 1D) / 2D;
+                long quantized = Math.round(normalized * ROTATION_MAX);
+                packed = (packed << ROTATION_BITS) | Math.max(0, Math.min(ROTATION_MAX, quantized));
+            }
+        }
+        return packed;
+    }
 
-        buf.writeDouble(toSpawn.wrapping.centerCoord.X);
-        buf.writeDouble(toSpawn.wrapping.centerCoord.Y);
-        buf.writeDouble(toSpawn.wrapping.centerCoord.Z);
+    public static Quaternion unpackRotation(long packed) {
+        double[] components = new double[4];
+        int largest = (int) (packed >>> (ROTATION_BITS * 3)) & 3;
+        double sumOfSquares = 0;
+        for (int i = 3; i >= 0; i--) {
+            if (i != largest) {
+                double normalized = (double) (packed & ROTATION_MAX) / ROTATION_MAX;
+                components[i] = (normalized * 2D - 1D) * SQRT_HALF;
+                sumOfSquares += components[i] * components[i];
+                packed >>>= ROTATION_BITS;
+            }
+        }
+        components[largest] = Math.sqrt(Math.max(0, 1D - sumOfSquares));
+        double length = Math.sqrt(sumOfSquares + components[largest] * components[largest]);
+        return new Quaternion(components[0] / length, components[1] / length, components[2] / length,
+                components[3] / length);
     }
 
-}
\ No newline at end of file
+}
@@ -21,13 +21,25 @@ import net.minecraft.world.World;
 import net.minecraft.world.storage.MapStorage;
 import net.minecraft.world.storage.WorldSavedData;
 
-import java.util.ArrayList;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
+/**
+ * Keeps track of which slots of the PhysicsChunkManager grid are in use. Slots
+ * freed by destroyed ships go into a free list, bucketed by the radius of the
+ * ship that used them, and get handed out again lowest slot first so ships stay
+ * packed near the start of the grid.
+ */
 public class ChunkKeysWorldData extends WorldSavedData {
 
     private static final String key = "ChunkKeys";
-    public ArrayList<Integer> avalibleChunkKeys = new ArrayList<Integer>();
+    // The chunk X offset of the next slot that has never been used, always a multiple of chunkSetIncrement
     public int chunkKey;
+    // Free slots by the radius of the ChunkSet that last used them
+    private final TreeMap<Integer, TreeSet<Integer>> freeSlotsByRadius = new TreeMap<Integer, TreeSet<Integer>>();
+    private int freeSlotCount;
+    private int slotsReused;
 
     public ChunkKeysWorldData() {
         super(key);
@@ -47,23 +59,139 @@ public class ChunkKeysWorldData extends WorldSavedData {
         return data;
     }
 
+    /**
+     * Returns the lowest free slot, preferring ones last used by a ChunkSet at
+     * least as big so the chunks there were already generated once. Only takes a
+     * new slot off the end of the grid when the free list is empty.
+     */
+    public int allocateSlot(int radius) {
+        Entry<Integer, TreeSet<Integer>> bucket = null;
+        for (Entry<Integer, TreeSet<Integer>> entry : freeSlotsByRadius.tailMap(radius, true).entrySet()) {
+            if (bucket == null || entry.getValue().first() < bucket.getValue().first()) {
+                bucket = entry;
+            }
+        }
+        if (bucket == null && !freeSlotsByRadius.isEmpty()) {
+            bucket = freeSlotsByRadius.lastEntry();
+        }
+
+        int slot;
+        if (bucket != null) {
+            slot = bucket.getValue().pollFirst();
+            if (bucket.getValue().isEmpty()) {
+                freeSlotsByRadius.remove(bucket.getKey());
+            }
+            freeSlotCount--;
+            slotsReused++;
+        } else {
+            slot = getSlotsUsed();
+            chunkKey += PhysicsChunkManager.getChunkSetIncrement();
+        }
+        markDirty();
+        return slot;
+    }
+
+    public void freeSlot(int slot, int radius) {
+        if (slot < 0 || slot >= getSlotsUsed() || isSlotFree(slot)) {
+            return;
+        }
+        TreeSet<Integer> bucket = freeSlotsByRadius.get(radius);
+        if (bucket == null) {
+            bucket = new TreeSet<Integer>();
+            freeSlotsByRadius.put(radius, bucket);
+        }
+        bucket.add(slot);
+        freeSlotCount++;
+        markDirty();
+    }
+
+    public boolean isSlotFree(int slot) {
+        for (TreeSet<Integer> bucket : freeSlotsByRadius.values()) {
+            if (bucket.contains(slot)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gives the free slots at the very end of the grid back, so the next new slot
+     * comes from there instead of further out.
+     *
+     * @return how many slots were given back
+     */
+    public int trimFreeSlots() {
+        int trimmed = 0;
+        while (getSlotsUsed() > 0 && isSlotFree(getSlotsUsed() - 1)) {
+            int slot = getSlotsUsed() - 1;
+            for (TreeSet<Integer> bucket : freeSlotsByRadius.values()) {
+                bucket.remove(slot);
+            }
+            freeSlotCount--;
+            chunkKey -= PhysicsChunkManager.getChunkSetIncrement();
+            trimmed++;
+        }
+        freeSlotsByRadius.values().removeIf(TreeSet::isEmpty);
+        if (trimmed > 0) {
+            markDirty();
+        }
+        return trimmed;
+    }
+
+    // How many slots have been handed out, counting the free ones
+    public int getSlotsUsed() {
+        return chunkKey / PhysicsChunkManager.getChunkSetIncrement();
+    }
+
+    public int getFreeSlotCount() {
+        return freeSlotCount;
+    }
+
+    public int getSlotsReused() {
+        return slotsReused;
+    }
+
+    // How many free slots sit at the very end of the grid, and could be trimmed
+    public int getTrailingFreeSlots() {
+        int trailing = 0;
+        while (trailing < getSlotsUsed() && isSlotFree(getSlotsUsed() - 1 - trailing)) {
+            trailing++;
+        }
+        return trailing;
+    }
+
     @Override
     public void readFromNBT(NBTTagCompound nbt) {
         chunkKey = nbt.getInteger("chunkKey");
-        int[] array = nbt.getIntArray("avalibleChunkKeys");
-        for (int i : array) {
-            avalibleChunkKeys.add(i);
+        int[] slots = nbt.getIntArray("freeChunkSlots");
+        int[] radii = nbt.getIntArray("freeChunkSlotRadii");
+        for (int i = 0; i < slots.length && i < radii.length; i++) {
+            freeSlot(slots[i], radii[i]);
+        }
+        // Worlds from before the free list stored the center X of the freed ChunkSets
+        for (int centerX : nbt.getIntArray("avalibleChunkKeys")) {
+            freeSlot(PhysicsChunkManager.getChunkSetSlot(centerX, PhysicsChunkManager.zChunkStartingPos),
+                    PhysicsChunkManager.maxChunkRadius);
         }
+        slotsReused = nbt.getInteger("slotsReused");
     }
 
     @Override
     public NBTTagCompound writeToNBT(NBTTagCompound nbt) {
         nbt.setInteger("chunkKey", chunkKey);
-        int[] array = new int[avalibleChunkKeys.size()];
-        for (int i = 0; i < avalibleChunkKeys.size(); i++) {
-            array[i] = avalibleChunkKeys.get(i);
+        int[] slots = new int[freeSlotCount];
+        int[] radii = new int[freeSlotCount];
+        int i = 0;
+        for (Entry<Integer, TreeSet<Integer>> bucket : freeSlotsByRadius.entrySet()) {
+            for (int slot : bucket.getValue()) {
+                slots[i] = slot;
+                radii[i] = bucket.getKey();
+                i++;
+            }
         }
-        nbt.setIntArray("avalibleChunkKeys", array);
+        nbt.setIntArray("freeChunkSlots", slots);
+        nbt.setIntArray("freeChunkSlotRadii", radii);
+        nbt.setInteger("slotsReused", slotsReused);
         return nbt;
     }
 
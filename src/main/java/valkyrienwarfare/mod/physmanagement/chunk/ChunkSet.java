@@ -26,6 +26,10 @@ import net.minecraft.world.World;
  */
 public class ChunkSet {
 
+    // Light updates need everything within 17 blocks loaded, so chunks this close to
+    // one with blocks in it have to exist as well
+    public static final int EMPTY_CHUNK_MARGIN = 2;
+
     public World world;
     public int centerX, centerZ;
     public int radius;
@@ -65,6 +69,22 @@ public class ChunkSet {
         return inX && inZ;
     }
 
+    /**
+     * Whether the chunk at this position relative to minX and minZ has blocks in
+     * it, or is close enough to one that it has to exist
+     */
+    public boolean isChunkNeededInLocal(int localX, int localZ) {
+        int maxLocal = chunkOccupiedInLocal.length - 1;
+        for (int x = Math.max(0, localX - EMPTY_CHUNK_MARGIN); x <= Math.min(maxLocal, localX + EMPTY_CHUNK_MARGIN); x++) {
+            for (int z = Math.max(0, localZ - EMPTY_CHUNK_MARGIN); z <= Math.min(maxLocal, localZ + EMPTY_CHUNK_MARGIN); z++) {
+                if (chunkOccupiedInLocal[x][z]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     @Override
     public String toString() {
         return centerX + ":" + centerZ + ":" + radius;
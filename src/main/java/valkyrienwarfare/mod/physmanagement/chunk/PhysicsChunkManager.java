@@ -17,6 +17,14 @@
 package valkyrienwarfare.mod.physmanagement.chunk;
 
 import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.storage.RegionFileCache;
+import net.minecraft.world.storage.ThreadedFileIOBase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
 
 /**
  * This class is responsible for finding/allocating the Chunks for PhysicsObjects; also ensures the custom chunk-loading system in place
@@ -30,16 +38,15 @@ public class PhysicsChunkManager {
     // public int chunkRadius = 3;
     public static int maxChunkRadius = 12;
     public World worldObj;
-    public int nextChunkSetKey;
     public int chunkSetIncrement;
     // Currently at 3 to be safe, this is important because Ships could start affecting
     // each other remotely if this value is too small (ex. 0)
-    public int distanceBetweenSets = 1;
+    public static int distanceBetweenSets = 1;
     public ChunkKeysWorldData data;
 
     public PhysicsChunkManager(World worldFor) {
         worldObj = worldFor;
-        chunkSetIncrement = (maxChunkRadius * 2) + distanceBetweenSets;
+        chunkSetIncrement = getChunkSetIncrement();
         loadDataFromWorld();
     }
 
@@ -51,24 +58,159 @@ public class PhysicsChunkManager {
         return false;
     }
 
+    public static int getChunkSetIncrement() {
+        return (maxChunkRadius * 2) + distanceBetweenSets;
+    }
+
+    /**
+     * Works out which slot of the ship grid the given chunk is in, without looking
+     * anything up; slot n is the ChunkSet centered at xChunkStartingPos + n * chunkSetIncrement.
+     * Returns -1 for chunks that aren't in any slot.
+     */
+    public static int getChunkSetSlot(int chunkX, int chunkZ) {
+        if (chunkZ < zChunkStartingPos - maxChunkRadius || chunkZ > zChunkStartingPos + maxChunkRadius) {
+            return -1;
+        }
+        int offsetX = chunkX - xChunkStartingPos + maxChunkRadius;
+        if (offsetX < 0) {
+            return -1;
+        }
+        int chunkSetIncrement = getChunkSetIncrement();
+        // In the gap between two slots
+        if (offsetX % chunkSetIncrement > maxChunkRadius * 2) {
+            return -1;
+        }
+        return offsetX / chunkSetIncrement;
+    }
+
+    /**
+     * The grid slot the whole ChunkSet is in, or -1 if it doesn't fit in a single one
+     */
+    public static int getChunkSetSlot(ChunkSet chunkSet) {
+        int slot = getChunkSetSlot(chunkSet.minX, chunkSet.minZ);
+        if (slot != getChunkSetSlot(chunkSet.maxX, chunkSet.maxZ)) {
+            return -1;
+        }
+        return slot;
+    }
+
+    /**
+     * Looks up what owns the given chunk in an array indexed by grid slot, like the
+     * ships kept by WorldPhysObjectManager.
+     *
+     * @param bySlot     The owner of each slot, entries may be null
+     * @param toChunkSet Gets the ChunkSet of an owner
+     * @return The owner of the slot the chunk is in if its ChunkSet encloses the
+     *         chunk, otherwise null
+     */
+    public static <T> T getChunkSetSlotOwner(T[] bySlot, Function<T, ChunkSet> toChunkSet, int chunkX, int chunkZ) {
+        int slot = getChunkSetSlot(chunkX, chunkZ);
+        if (slot != -1 && slot < bySlot.length) {
+            T owner = bySlot[slot];
+            if (owner != null && toChunkSet.apply(owner).isChunkEnclosedInSet(chunkX, chunkZ)) {
+                return owner;
+            }
+        }
+        return null;
+    }
+
     /**
-     * This finds the next empty chunkSet for use, currently only increases the xPos to get new positions
+     * This finds the next empty chunkSet for use; reuses the lowest slot freed by a destroyed ship if there is one
      *
      * @return
      */
     public ChunkSet getNextAvaliableChunkSet(int chunkRadius) {
-
-        int chunkX = xChunkStartingPos + nextChunkSetKey;
+        int slot = data.allocateSlot(chunkRadius);
+        int chunkX = xChunkStartingPos + (slot * chunkSetIncrement);
         int chunkZ = zChunkStartingPos;
+        return new ChunkSet(chunkX, chunkZ, chunkRadius);
+    }
 
-        if (data.avalibleChunkKeys.size() < 0) {
-            chunkX = data.avalibleChunkKeys.remove(0);
-        } else {
-            nextChunkSetKey += chunkSetIncrement;
-            data.chunkKey = nextChunkSetKey;
+    /**
+     * Lets the slot of a destroyed ship be used again
+     */
+    public void freeChunkSet(ChunkSet chunkSet) {
+        int slot = getChunkSetSlot(chunkSet);
+        if (slot != -1) {
+            data.freeSlot(slot, chunkSet.radius);
         }
-        data.markDirty();
-        return new ChunkSet(chunkX, chunkZ, chunkRadius);
+    }
+
+    /**
+     * Deletes the region files of the ship grid that only hold chunks of free
+     * slots, or of slots past the end of the grid. Nothing reads those chunks
+     * again, a ship that reuses a slot starts out with new empty chunks. Regions
+     * that also hold part of a slot in use, or that have a loaded chunk, are kept.
+     * The chunks next to the grid in the same regions are too far out for the
+     * world to ever use them.
+     *
+     * @return how many region files were deleted
+     */
+    public int deleteUnusedRegionFiles() {
+        if (!(worldObj instanceof WorldServer)) {
+            return 0;
+        }
+        File[] regionFiles = new File(((WorldServer) worldObj).getChunkSaveLocation(), "region").listFiles();
+        if (regionFiles == null) {
+            return 0;
+        }
+        // Regions further left would also hold chunks in front of the first slot
+        int minRegionX = (xChunkStartingPos - maxChunkRadius + 31) >> 5;
+        int minRegionZ = (zChunkStartingPos - maxChunkRadius) >> 5;
+        int maxRegionZ = (zChunkStartingPos + maxChunkRadius) >> 5;
+        List<File> unusedRegionFiles = new ArrayList<File>();
+        for (File regionFile : regionFiles) {
+            String[] nameParts = regionFile.getName().split("\\.");
+            if (nameParts.length != 4 || !nameParts[0].equals("r") || !nameParts[3].equals("mca")) {
+                continue;
+            }
+            int regionX, regionZ;
+            try {
+                regionX = Integer.parseInt(nameParts[1]);
+                regionZ = Integer.parseInt(nameParts[2]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (regionX >= minRegionX && regionZ >= minRegionZ && regionZ <= maxRegionZ
+                    && isRegionUnused(regionX, regionZ)) {
+                unusedRegionFiles.add(regionFile);
+            }
+        }
+        if (unusedRegionFiles.isEmpty()) {
+            return 0;
+        }
+
+        // Chunks still waiting to be written could reopen a region file, and the
+        // open region files have to be closed before they can be deleted
+        try {
+            ThreadedFileIOBase.getThreadedIOInstance().waitForFinish();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        RegionFileCache.clearRegionFileReferences();
+        int deleted = 0;
+        for (File regionFile : unusedRegionFiles) {
+            if (regionFile.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private boolean isRegionUnused(int regionX, int regionZ) {
+        for (int chunkX = regionX << 5; chunkX < (regionX + 1) << 5; chunkX++) {
+            int slot = getChunkSetSlot(chunkX, zChunkStartingPos);
+            if (slot != -1 && slot < data.getSlotsUsed() && !data.isSlotFree(slot)) {
+                return false;
+            }
+            for (int chunkZ = regionZ << 5; chunkZ < (regionZ + 1) << 5; chunkZ++) {
+                if (worldObj.getChunkProvider().getLoadedChunk(chunkX, chunkZ) != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 
     /**
@@ -76,7 +218,6 @@ public class PhysicsChunkManager {
      */
     public void loadDataFromWorld() {
         data = ChunkKeysWorldData.get(worldObj);
-        nextChunkSetKey = data.chunkKey;
     }
 
 }
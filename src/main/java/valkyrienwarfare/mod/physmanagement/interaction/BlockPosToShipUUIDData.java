@@ -17,15 +17,17 @@
 package valkyrienwarfare.mod.physmanagement.interaction;
 
 import net.minecraft.nbt.NBTTagCompound;
-import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.World;
 import net.minecraft.world.storage.MapStorage;
 import net.minecraft.world.storage.WorldSavedData;
 import valkyrienwarfare.util.NBTUtils;
 import valkyrienwarfare.mod.physmanagement.chunk.ChunkSet;
+import valkyrienwarfare.mod.physmanagement.chunk.PhysicsChunkManager;
 import valkyrienwarfare.physics.management.PhysicsWrapperEntity;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -34,8 +36,11 @@ import java.util.UUID;
 public class BlockPosToShipUUIDData extends WorldSavedData {
 
     private static final String key = "BlockPosToShipUUIDData";
-    //Not the persistent map, used for performance reasons
-    private HashMap<Long, UUID> chunkposToShipUUID = new HashMap<Long, UUID>();
+    //Not the persistent map, used for performance reasons. Indexed by the PhysicsChunkManager grid slot
+    private UUID[] shipUUIDBySlot = new UUID[16];
+    private ChunkSet[] chunkSetBySlot = new ChunkSet[16];
+    //The few ChunkSets that don't fit in a single grid slot, these just get searched
+    private ArrayList<UUID> offGridShipUUIDs = new ArrayList<UUID>();
     private HashMap<UUID, ChunkSet> UUIDToChunkSet = new HashMap<UUID, ChunkSet>();
 
     public BlockPosToShipUUIDData(String name) {
@@ -57,41 +62,66 @@ public class BlockPosToShipUUIDData extends WorldSavedData {
     }
 
     public UUID getShipUUIDFromPos(int chunkX, int ChunkZ) {
-        long chunkPos = ChunkPos.asLong(chunkX, ChunkZ);
-
-        return chunkposToShipUUID.get(chunkPos);
+        int slot = PhysicsChunkManager.getChunkSetSlot(chunkX, ChunkZ);
+        if (slot != -1 && slot < chunkSetBySlot.length) {
+            ChunkSet set = chunkSetBySlot[slot];
+            if (set != null && set.isChunkEnclosedInSet(chunkX, ChunkZ)) {
+                return shipUUIDBySlot[slot];
+            }
+        }
+        for (UUID shipID : offGridShipUUIDs) {
+            if (UUIDToChunkSet.get(shipID).isChunkEnclosedInSet(chunkX, ChunkZ)) {
+                return shipID;
+            }
+        }
+        return null;
     }
 
     public void addShipToPersistantMap(PhysicsWrapperEntity toAdd) {
-        UUID shipID = toAdd.getPersistentID();
+        addChunkSet(toAdd.getPersistentID(), toAdd.wrapping.ownedChunks);
+        markDirty();
+    }
 
-        int centerX = toAdd.wrapping.ownedChunks.centerX;
-        int centerZ = toAdd.wrapping.ownedChunks.centerZ;
-        int radius = toAdd.wrapping.ownedChunks.radius;
+    public void removeShipFromPersistantMap(PhysicsWrapperEntity toRemove) {
+        UUID shipID = toRemove.getPersistentID();
+        ChunkSet set = UUIDToChunkSet.remove(shipID);
+        if (set != null) {
+            removeChunkSetIndex(shipID, set);
+        }
+        markDirty();
+    }
 
-        for (int x = centerX - radius; x <= centerX + radius; x++) {
-            for (int z = centerZ - radius; z <= centerZ + radius; z++) {
-                long chunkPos = ChunkPos.asLong(x, z);
-                chunkposToShipUUID.put(chunkPos, shipID);
+    private void addChunkSet(UUID shipID, ChunkSet set) {
+        ChunkSet oldSet = UUIDToChunkSet.put(shipID, set);
+        if (oldSet != null) {
+            // The ship could have moved to another slot, or off the grid
+            removeChunkSetIndex(shipID, oldSet);
+        }
+        int slot = PhysicsChunkManager.getChunkSetSlot(set);
+        if (slot != -1) {
+            if (slot >= shipUUIDBySlot.length) {
+                int newLength = Math.max(slot + 1, shipUUIDBySlot.length * 2);
+                shipUUIDBySlot = Arrays.copyOf(shipUUIDBySlot, newLength);
+                chunkSetBySlot = Arrays.copyOf(chunkSetBySlot, newLength);
             }
+            shipUUIDBySlot[slot] = shipID;
+            chunkSetBySlot[slot] = set;
+        } else {
+            offGridShipUUIDs.add(shipID);
         }
-        UUIDToChunkSet.put(toAdd.getPersistentID(), toAdd.wrapping.ownedChunks);
-        markDirty();
     }
 
-    public void removeShipFromPersistantMap(PhysicsWrapperEntity toRemove) {
-        int centerX = toRemove.wrapping.ownedChunks.centerX;
-        int centerZ = toRemove.wrapping.ownedChunks.centerZ;
-        int radius = toRemove.wrapping.ownedChunks.radius;
-
-        for (int x = centerX - radius; x <= centerX + radius; x++) {
-            for (int z = centerZ - radius; z <= centerZ + radius; z++) {
-                long chunkPos = ChunkPos.asLong(x, z);
-                chunkposToShipUUID.remove(chunkPos);
+    //Takes the ship out of the slot or off grid list the given ChunkSet put it in
+    private void removeChunkSetIndex(UUID shipID, ChunkSet set) {
+        int slot = PhysicsChunkManager.getChunkSetSlot(set);
+        if (slot != -1) {
+            if (slot < shipUUIDBySlot.length && shipID.equals(shipUUIDBySlot[slot])) {
+                shipUUIDBySlot[slot] = null;
+                chunkSetBySlot[slot] = null;
             }
+        } else {
+            offGridShipUUIDs.remove(shipID);
         }
-        UUIDToChunkSet.remove(toRemove.getPersistentID());
-        markDirty();
     }
 
     @Override
@@ -112,13 +142,7 @@ public class BlockPosToShipUUIDData extends WorldSavedData {
             UUID persistantID = new UUID(mostBits, leastBits);
             ChunkSet set = new ChunkSet(centerX, centerZ, radius);
 
-            UUIDToChunkSet.put(persistantID, set);
-
-            for (int x = centerX - radius; x <= centerX + radius; x++) {
-                for (int z = centerZ - radius; z <= centerZ + radius; z++) {
-                    chunkposToShipUUID.put(ChunkPos.asLong(x, z), persistantID);
-                }
-            }
+            addChunkSet(persistantID, set);
         }
     }
 
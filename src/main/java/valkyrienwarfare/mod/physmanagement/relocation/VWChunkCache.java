@@ -57,12 +57,16 @@ public class VWChunkCache {
 		}
 	}
 
-	public VWChunkCache(World world, Chunk[][] toCache) {
+	/**
+	 * The arrays in toCache are shared, not copied; ships fill in their chunks as
+	 * they get made so the chunks they don't have yet are null.
+	 */
+	public VWChunkCache(World world, int mnX, int mnZ, Chunk[][] toCache) {
 		worldFor = world;
-		minChunkX = toCache[0][0].x;
-		minChunkZ = toCache[0][0].z;
-		maxChunkX = toCache[toCache.length - 1][toCache[0].length - 1].x;
-		maxChunkZ = toCache[toCache.length - 1][toCache[0].length - 1].z;
+		minChunkX = mnX;
+		minChunkZ = mnZ;
+		maxChunkX = mnX + toCache.length - 1;
+		maxChunkZ = mnZ + toCache[0].length - 1;
 		isChunkLoaded = new boolean[maxChunkX - minChunkX + 1][maxChunkZ - minChunkZ + 1];
 		cachedChunks = toCache.clone();
 	}
@@ -90,6 +94,9 @@ public class VWChunkCache {
 
 	public IBlockState getBlockState(BlockPos pos) {
 		Chunk chunkForPos = cachedChunks[(pos.getX() >> 4) - minChunkX][(pos.getZ() >> 4) - minChunkZ];
+		if (chunkForPos == null) {
+			return Blocks.AIR.getDefaultState();
+		}
 		return chunkForPos.getBlockState(pos);
 	}
 
@@ -98,6 +105,9 @@ public class VWChunkCache {
 	        return Blocks.AIR.getDefaultState();
 	    }
 		Chunk chunkForPos = cachedChunks[(x >> 4) - minChunkX][(z >> 4) - minChunkZ];
+		if (chunkForPos == null) {
+			return Blocks.AIR.getDefaultState();
+		}
 		return chunkForPos.getBlockState(x, y, z);
 	}
 
@@ -0,0 +1,152 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package valkyrienwarfare.physics.calculations;
+
+import java.util.Arrays;
+import java.util.List;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import valkyrienwarfare.api.IBlockForceProvider;
+import valkyrienwarfare.api.Vector;
+import valkyrienwarfare.mod.physmanagement.relocation.VWChunkCache;
+import valkyrienwarfare.physics.data.BlockForce;
+
+/**
+ * Every block in a ship that applies a force, stored as a struct of arrays so
+ * the forces can be added up in a tight loop every physics tick. Blocks with a
+ * fixed force keep it here, blocks implementing IBlockForceProvider keep their
+ * state and are asked for their force every tick. The table only gets rebuilt
+ * after markDirty() is called.
+ */
+public class ForceEmitterTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Position of the block in local coordinates
+    int[] posX, posY, posZ;
+    // Force per second of blocks with a fixed force
+    double[] forceX, forceY, forceZ;
+    // True if the fixed force is in local coordinates
+    boolean[] isForceLocal;
+    // Not null for blocks that calculate their own force
+    IBlockForceProvider[] providers;
+    IBlockState[] providerStates;
+    BlockPos[] providerPositions;
+    private int size;
+    private volatile boolean isDirty;
+
+    public ForceEmitterTable() {
+        allocate(INITIAL_CAPACITY);
+        isDirty = true;
+    }
+
+    public void markDirty() {
+        isDirty = true;
+    }
+
+    public boolean isDirty() {
+        return isDirty;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Fills the table from the given list of force positions, reading their block
+     * states from the cache. The list is copied while synchronized on it, so
+     * other threads can change it as long as they synchronize on it as well and
+     * call markDirty() afterwards.
+     */
+    public void rebuild(List<BlockPos> forcePositions, VWChunkCache chunkCache, World world) {
+        // Cleared before the copy, so a change made after the copy marks the table
+        // dirty again
+        isDirty = false;
+        BlockPos[] positions;
+        synchronized (forcePositions) {
+            positions = forcePositions.toArray(new BlockPos[forcePositions.size()]);
+        }
+        clear();
+        Vector force = new Vector();
+        for (BlockPos pos : positions) {
+            IBlockState state = chunkCache.getBlockState(pos);
+            Block block = state.getBlock();
+            if (block instanceof IBlockForceProvider) {
+                addEmitter(pos, 0, 0, 0, false, (IBlockForceProvider) block, state);
+            } else if (BlockForce.basicForces.isBlockProvidingForce(state, pos, world)) {
+                BlockForce.basicForces.getForcePerSecond(state, force);
+                addEmitter(pos, force.X, force.Y, force.Z, BlockForce.basicForces.isForceInLocal(state), null, null);
+            }
+        }
+    }
+
+    private void addEmitter(BlockPos pos, double x, double y, double z, boolean isLocal,
+            IBlockForceProvider provider, IBlockState state) {
+        if (size == posX.length) {
+            grow(size * 2);
+        }
+        posX[size] = pos.getX();
+        posY[size] = pos.getY();
+        posZ[size] = pos.getZ();
+        forceX[size] = x;
+        forceY[size] = y;
+        forceZ[size] = z;
+        isForceLocal[size] = isLocal;
+        providers[size] = provider;
+        providerStates[size] = state;
+        providerPositions[size] = provider != null ? pos : null;
+        size++;
+    }
+
+    private void clear() {
+        // Don't hold onto blocks that were removed
+        Arrays.fill(providers, 0, size, null);
+        Arrays.fill(providerStates, 0, size, null);
+        Arrays.fill(providerPositions, 0, size, null);
+        size = 0;
+    }
+
+    private void allocate(int capacity) {
+        posX = new int[capacity];
+        posY = new int[capacity];
+        posZ = new int[capacity];
+        forceX = new double[capacity];
+        forceY = new double[capacity];
+        forceZ = new double[capacity];
+        isForceLocal = new boolean[capacity];
+        providers = new IBlockForceProvider[capacity];
+        providerStates = new IBlockState[capacity];
+        providerPositions = new BlockPos[capacity];
+    }
+
+    private void grow(int capacity) {
+        posX = Arrays.copyOf(posX, capacity);
+        posY = Arrays.copyOf(posY, capacity);
+        posZ = Arrays.copyOf(posZ, capacity);
+        forceX = Arrays.copyOf(forceX, capacity);
+        forceY = Arrays.copyOf(forceY, capacity);
+        forceZ = Arrays.copyOf(forceZ, capacity);
+        isForceLocal = Arrays.copyOf(isForceLocal, capacity);
+        providers = Arrays.copyOf(providers, capacity);
+        providerStates = Arrays.copyOf(providerStates, capacity);
+        providerPositions = Arrays.copyOf(providerPositions, capacity);
+    }
+}
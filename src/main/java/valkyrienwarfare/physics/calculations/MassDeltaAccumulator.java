@@ -0,0 +1,197 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package valkyrienwarfare.physics.calculations;
+
+import valkyrienwarfare.api.Vector;
+
+/**
+ * Collects the mass changes from blocks being set in a ship, so that they can
+ * be added to the mass, center of mass and inertia tensor all at once. The
+ * changes are stored as the total mass, first moment and second moment about a
+ * reference point near the ship, which is all the parallel axis theorem needs
+ * to merge them in one go. Can be added to from any thread.
+ */
+public class MassDeltaAccumulator {
+
+    private boolean isEmpty;
+    // Everything is relative to this point to keep the sums small
+    private double refX, refY, refZ;
+    private double totalMass;
+    private double firstX, firstY, firstZ;
+    private double secondXX, secondYY, secondZZ, secondXY, secondXZ, secondYZ;
+
+    public MassDeltaAccumulator() {
+        isEmpty = true;
+    }
+
+    /**
+     * Adds the mass of a block centered at x/y/z. The mass is split between the
+     * center and the 8 points PhysicsCalculations.INERTIA_OFFSET away from it
+     * along each axis, which gives blocks some inertia of their own.
+     */
+    public synchronized void addBlockMass(double x, double y, double z, double blockMass) {
+        addPointMass(x, y, z, blockMass);
+        // The corner offsets cancel out of everything but the diagonal of the
+        // second moment, where each of the 8 corners adds offset^2
+        double offset = PhysicsCalculations.INERTIA_OFFSET;
+        double cornerSpread = blockMass * 8D / 9D * offset * offset;
+        secondXX += cornerSpread;
+        secondYY += cornerSpread;
+        secondZZ += cornerSpread;
+    }
+
+    public synchronized void addPointMass(double x, double y, double z, double pointMass) {
+        if (isEmpty) {
+            refX = x;
+            refY = y;
+            refZ = z;
+            isEmpty = false;
+        }
+        double rx = x - refX;
+        double ry = y - refY;
+        double rz = z - refZ;
+        totalMass += pointMass;
+        firstX += rx * pointMass;
+        firstY += ry * pointMass;
+        firstZ += rz * pointMass;
+        secondXX += rx * rx * pointMass;
+        secondYY += ry * ry * pointMass;
+        secondZZ += rz * rz * pointMass;
+        secondXY += rx * ry * pointMass;
+        secondXZ += rx * rz * pointMass;
+        secondYZ += ry * rz * pointMass;
+    }
+
+    /**
+     * Adds every change from another accumulator to this one, leaving the other
+     * one unchanged. The other accumulator must not be modified while this runs.
+     */
+    public synchronized void addAll(MassDeltaAccumulator other) {
+        if (other.isEmpty) {
+            return;
+        }
+        if (isEmpty) {
+            refX = other.refX;
+            refY = other.refY;
+            refZ = other.refZ;
+            isEmpty = false;
+        }
+        // Moves the sums of the other accumulator over to this reference point
+        double ox = other.refX - refX;
+        double oy = other.refY - refY;
+        double oz = other.refZ - refZ;
+        double otherMass = other.totalMass;
+        secondXX += other.secondXX + 2D * ox * other.firstX + ox * ox * otherMass;
+        secondYY += other.secondYY + 2D * oy * other.firstY + oy * oy * otherMass;
+        secondZZ += other.secondZZ + 2D * oz * other.firstZ + oz * oz * otherMass;
+        secondXY += other.secondXY + ox * other.firstY + oy * other.firstX + ox * oy * otherMass;
+        secondXZ += other.secondXZ + ox * other.firstZ + oz * other.firstX + ox * oz * otherMass;
+        secondYZ += other.secondYZ + oy * other.firstZ + oz * other.firstY + oy * oz * otherMass;
+        firstX += other.firstX + ox * otherMass;
+        firstY += other.firstY + oy * otherMass;
+        firstZ += other.firstZ + oz * otherMass;
+        totalMass += otherMass;
+    }
+
+    public synchronized boolean isEmpty() {
+        return isEmpty;
+    }
+
+    /**
+     * Merges every change added since the last call into the given mass
+     * properties, and then clears this accumulator.
+     *
+     * @param mass
+     *            The current mass
+     * @param centerOfMass
+     *            The current center of mass, gets moved to the new one
+     * @param MoITensor
+     *            The current 3x3 inertia tensor about the center of mass, gets
+     *            replaced with the new one
+     * @return The new mass
+     */
+    public synchronized double applyTo(double mass, Vector centerOfMass, double[] MoITensor) {
+        if (isEmpty) {
+            return mass;
+        }
+        double oldMass = mass;
+        if (oldMass <= .0001D) {
+            // Nothing worth keeping, start over from the new mass
+            oldMass = 0;
+            centerOfMass.X = refX;
+            centerOfMass.Y = refY;
+            centerOfMass.Z = refZ;
+            for (int i = 0; i < 9; i++) {
+                MoITensor[i] = 0;
+            }
+        }
+        double newMass = oldMass + totalMass;
+
+        // Offset of the old center of mass from the reference point
+        double dx = centerOfMass.X - refX;
+        double dy = centerOfMass.Y - refY;
+        double dz = centerOfMass.Z - refZ;
+
+        // Offset of the new center of mass from the reference point
+        double ex = dx;
+        double ey = dy;
+        double ez = dz;
+        if (newMass > .0001D) {
+            ex = (oldMass * dx + firstX) / newMass;
+            ey = (oldMass * dy + firstY) / newMass;
+            ez = (oldMass * dz + firstZ) / newMass;
+        }
+
+        // Move the old tensor to the reference point, add the new mass, and then
+        // move the sum to the new center of mass
+        double xx = MoITensor[0] + oldMass * (dy * dy + dz * dz) + (secondYY + secondZZ)
+                - newMass * (ey * ey + ez * ez);
+        double yy = MoITensor[4] + oldMass * (dx * dx + dz * dz) + (secondXX + secondZZ)
+                - newMass * (ex * ex + ez * ez);
+        double zz = MoITensor[8] + oldMass * (dx * dx + dy * dy) + (secondXX + secondYY)
+                - newMass * (ex * ex + ey * ey);
+        double xy = MoITensor[1] - oldMass * dx * dy - secondXY + newMass * ex * ey;
+        double xz = MoITensor[2] - oldMass * dx * dz - secondXZ + newMass * ex * ez;
+        double yz = MoITensor[5] - oldMass * dy * dz - secondYZ + newMass * ey * ez;
+
+        MoITensor[0] = xx;
+        MoITensor[1] = xy;
+        MoITensor[2] = xz;
+        MoITensor[3] = xy;
+        MoITensor[4] = yy;
+        MoITensor[5] = yz;
+        MoITensor[6] = xz;
+        MoITensor[7] = yz;
+        MoITensor[8] = zz;
+
+        centerOfMass.X = refX + ex;
+        centerOfMass.Y = refY + ey;
+        centerOfMass.Z = refZ + ez;
+
+        double result = mass + totalMass;
+        clear();
+        return result;
+    }
+
+    private void clear() {
+        isEmpty = true;
+        totalMass = 0;
+        firstX = firstY = firstZ = 0;
+        secondXX = secondYY = secondZZ = secondXY = secondXZ = secondYZ = 0;
+    }
+}
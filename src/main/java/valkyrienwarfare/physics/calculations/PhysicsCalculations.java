@@ -17,33 +17,37 @@
 package valkyrienwarfare.physics.calculations;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
 
-import javax.vecmath.Matrix3d;
-
-import net.minecraft.block.Block;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.init.Blocks;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.BlockPos.MutableBlockPos;
 import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import valkyrienwarfare.ValkyrienWarfareMod;
 import valkyrienwarfare.addon.control.nodenetwork.INodePhysicsProcessor;
 import valkyrienwarfare.addon.control.nodenetwork.Node;
 import valkyrienwarfare.api.IBlockForceProvider;
+import valkyrienwarfare.api.IBlockMassProvider;
 import valkyrienwarfare.api.RotationMatrices;
 import valkyrienwarfare.api.Vector;
 import valkyrienwarfare.math.Quaternion;
-import valkyrienwarfare.math.VWMath;
+import valkyrienwarfare.physics.collision.ShipPhysicsCollider;
 import valkyrienwarfare.physics.collision.WorldPhysicsCollider;
 import valkyrienwarfare.physics.data.BlockForce;
 import valkyrienwarfare.physics.data.BlockMass;
 import valkyrienwarfare.physics.data.PhysicsQueuedForce;
-import valkyrienwarfare.physics.management.CoordTransformObject;
 import valkyrienwarfare.physics.management.PhysicsObject;
 import valkyrienwarfare.physics.management.PhysicsWrapperEntity;
 import valkyrienwarfare.util.NBTUtils;
@@ -55,11 +59,19 @@ public class PhysicsCalculations {
     public static final double DRAG_CONSTANT = .99D;
     public static final double INERTIA_OFFSET = .4D;
     public static final double EPSILON = 0xE - 8;
+    // Ships moving slower than these speeds are considered to be at rest
+    public static final double SLEEP_LINEAR_VELOCITY_THRESHOLD = .15D;
+    public static final double SLEEP_ANGULAR_VELOCITY_THRESHOLD = .05D;
+    // Number of game ticks a ship has to stay at rest before it goes to sleep
+    public static final double TICKS_AT_REST_BEFORE_SLEEP = 40D;
+    // Forces accelerating a sleeping ship faster than this wake it up
+    public static final double WAKE_ACCELERATION_THRESHOLD = 1D;
 
     public final PhysicsObject parent;
     public final PhysicsWrapperEntity wrapperEnt;
     public final World worldObj;
     public final WorldPhysicsCollider worldCollision;
+    public final ShipPhysicsCollider shipCollision;
 
     public Vector centerOfMass;
     public Vector linearMomentum;
@@ -72,22 +84,58 @@ public class PhysicsCalculations {
     // Number of iterations the solver runs on each game tick
     private int iterations;
 
+    // Changed on the game thread and copied by the physics thread, synchronize on it
     private final List<BlockPos> activeForcePositions;
+    // Built from activeForcePositions whenever a force block changes
+    private final ForceEmitterTable forceEmitters;
     private final SortedSet<INodePhysicsProcessor> physicsTasks;
+    // Block mass changes that haven't been added to the mass and inertia yet
+    private final MassDeltaAccumulator queuedMassChanges;
     public double[] MoITensor, invMoITensor;
     public double[] framedMOI, invFramedMOI;
+    // The rotation and inertia framedMOI was last calculated from, it doesn't need
+    // to be recalculated until one of them changes
+    private final double[] framedMOIRotation;
+    private final double[] framedMOIInertia;
+    private final double[] framedMOIScratch;
     public boolean actAsArchimedes = false;
+    // Sleeping ships skip force calculations, world collision and position
+    // updates until something wakes them up
+    private boolean isSleeping;
+    private double ticksAtRest;
+    private boolean sentSleepingPosition;
+    // Can be set from any thread, the physics thread wakes the ship on its next step
+    private volatile boolean wakeUpRequested;
+    // The orientation is integrated as a Quaternion; the wrapper pitch/yaw/roll are
+    // only derived from it once per tick by updateEulerAngles()
+    private Quaternion orientation;
+    // The Euler angles the orientation was last synced with, used to tell when
+    // something else has rotated the ship
+    private double syncedPitch, syncedYaw, syncedRoll;
+    private boolean eulerAnglesOutdated;
+    // Picked by PhysicsSubstepScheduler at the start of every tick
+    private int substepsThisTick;
+    // Set whenever a collision impulse gets applied to this ship
+    private boolean hadContact;
+    // Used by PhysicsTickBudget to pick which ships to cut back first
+    private int tickPriority;
+    private int ticksDeferred;
 
     public PhysicsCalculations(PhysicsObject toProcess) {
         parent = toProcess;
         wrapperEnt = parent.wrapper;
         worldObj = toProcess.worldObj;
         worldCollision = new WorldPhysicsCollider(this);
+        shipCollision = new ShipPhysicsCollider(this);
 
         MoITensor = RotationMatrices.getZeroMatrix(3);
         invMoITensor = RotationMatrices.getZeroMatrix(3);
         framedMOI = RotationMatrices.getZeroMatrix(3);
         invFramedMOI = RotationMatrices.getZeroMatrix(3);
+        framedMOIRotation = new double[9];
+        framedMOIInertia = new double[9];
+        framedMOIScratch = new double[9];
+        Arrays.fill(framedMOIRotation, Double.NaN);
 
         centerOfMass = new Vector(toProcess.centerCoord);
         linearMomentum = new Vector();
@@ -96,7 +144,11 @@ public class PhysicsCalculations {
         iterations = 5;
 
         activeForcePositions = new ArrayList<BlockPos>();
+        forceEmitters = new ForceEmitterTable();
         physicsTasks = new TreeSet<INodePhysicsProcessor>();
+        queuedMassChanges = new MassDeltaAccumulator();
+        orientation = new Quaternion(0, 0, 0, 1);
+        syncedPitch = syncedYaw = syncedRoll = Double.NaN;
     }
 
     public PhysicsCalculations(PhysicsCalculations toCopy) {
@@ -104,6 +156,7 @@ public class PhysicsCalculations {
         wrapperEnt = toCopy.wrapperEnt;
         worldObj = toCopy.worldObj;
         worldCollision = toCopy.worldCollision;
+        shipCollision = toCopy.shipCollision;
         centerOfMass = toCopy.centerOfMass;
         linearMomentum = toCopy.linearMomentum;
         angularVelocity = toCopy.angularVelocity;
@@ -112,33 +165,57 @@ public class PhysicsCalculations {
         physRawSpeed = toCopy.physRawSpeed;
         iterations = toCopy.iterations;
         activeForcePositions = toCopy.activeForcePositions;
+        forceEmitters = toCopy.forceEmitters;
         MoITensor = toCopy.MoITensor;
         invMoITensor = toCopy.invMoITensor;
         framedMOI = toCopy.framedMOI;
         invFramedMOI = toCopy.invFramedMOI;
+        framedMOIRotation = toCopy.framedMOIRotation;
+        framedMOIInertia = toCopy.framedMOIInertia;
+        framedMOIScratch = toCopy.framedMOIScratch;
         actAsArchimedes = toCopy.actAsArchimedes;
         physicsTasks = toCopy.physicsTasks;
+        queuedMassChanges = toCopy.queuedMassChanges;
+        orientation = toCopy.orientation;
+        syncedPitch = toCopy.syncedPitch;
+        syncedYaw = toCopy.syncedYaw;
+        syncedRoll = toCopy.syncedRoll;
+        eulerAnglesOutdated = toCopy.eulerAnglesOutdated;
+        substepsThisTick = toCopy.substepsThisTick;
+        hadContact = toCopy.hadContact;
+        tickPriority = toCopy.tickPriority;
+        ticksDeferred = toCopy.ticksDeferred;
     }
 
     public void onSetBlockState(IBlockState oldState, IBlockState newState, BlockPos pos) {
         if (!newState.equals(oldState)) {
-            if (oldState.getBlock() == Blocks.AIR) {
-                if (BlockForce.basicForces.isBlockProvidingForce(newState, pos, worldObj)) {
-                    activeForcePositions.add(pos);
-                }
-            } else {
-                if (activeForcePositions.contains(pos)) {
-                    if (!BlockForce.basicForces.isBlockProvidingForce(newState, pos, worldObj)) {
-                        activeForcePositions.remove(pos);
-                    }
-                } else {
+            requestWakeUp();
+            synchronized (activeForcePositions) {
+                if (oldState.getBlock() == Blocks.AIR) {
                     if (BlockForce.basicForces.isBlockProvidingForce(newState, pos, worldObj)) {
                         activeForcePositions.add(pos);
                     }
+                } else {
+                    if (activeForcePositions.contains(pos)) {
+                        if (!BlockForce.basicForces.isBlockProvidingForce(newState, pos, worldObj)) {
+                            activeForcePositions.remove(pos);
+                        }
+                    } else {
+                        if (BlockForce.basicForces.isBlockProvidingForce(newState, pos, worldObj)) {
+                            activeForcePositions.add(pos);
+                        }
+                    }
+                }
+                if (newState.getBlock() == Blocks.AIR) {
+                    activeForcePositions.remove(pos);
                 }
             }
-            if (newState.getBlock() == Blocks.AIR) {
-                activeForcePositions.remove(pos);
+            // Only after activeForcePositions has been updated, otherwise the physics
+            // thread could rebuild the table from the old positions and then clear
+            // the dirty flag
+            if (BlockForce.basicForces.isBlockProvidingForce(oldState, pos, worldObj)
+                    || BlockForce.basicForces.isBlockProvidingForce(newState, pos, worldObj)) {
+                forceEmitters.markDirty();
             }
 
             double oldMass = BlockMass.basicMass.getMassFromState(oldState, pos, worldObj);
@@ -146,61 +223,31 @@ public class PhysicsCalculations {
             double deltaMass = newMass - oldMass;
             // Don't change anything if the mass is the same
             if (Math.abs(deltaMass) > EPSILON) {
-                double x = pos.getX() + .5D;
-                double y = pos.getY() + .5D;
-                double z = pos.getZ() + .5D;
-
-                deltaMass /= 9D;
-                addMassAt(x, y, z, deltaMass);
-                addMassAt(x + INERTIA_OFFSET, y + INERTIA_OFFSET, z + INERTIA_OFFSET, deltaMass);
-                addMassAt(x + INERTIA_OFFSET, y + INERTIA_OFFSET, z - INERTIA_OFFSET, deltaMass);
-                addMassAt(x + INERTIA_OFFSET, y - INERTIA_OFFSET, z + INERTIA_OFFSET, deltaMass);
-                addMassAt(x + INERTIA_OFFSET, y - INERTIA_OFFSET, z - INERTIA_OFFSET, deltaMass);
-                addMassAt(x - INERTIA_OFFSET, y + INERTIA_OFFSET, z + INERTIA_OFFSET, deltaMass);
-                addMassAt(x - INERTIA_OFFSET, y + INERTIA_OFFSET, z - INERTIA_OFFSET, deltaMass);
-                addMassAt(x - INERTIA_OFFSET, y - INERTIA_OFFSET, z + INERTIA_OFFSET, deltaMass);
-                addMassAt(x - INERTIA_OFFSET, y - INERTIA_OFFSET, z - INERTIA_OFFSET, deltaMass);
+                // Added to the mass and inertia before the next physics tick, so
+                // that many blocks changing at once only cost one matrix inversion
+                queuedMassChanges.addBlockMass(pos.getX() + .5D, pos.getY() + .5D, pos.getZ() + .5D, deltaMass);
             }
         }
     }
 
-    private void addMassAt(double x, double y, double z, double addedMass) {
-        Vector prevCenterOfMass = new Vector(centerOfMass);
-        if (mass > .0001D) {
-            centerOfMass.multiply(mass);
-            centerOfMass.add(new Vector(x, y, z).getProduct(addedMass));
-            centerOfMass.multiply(1.0D / (mass + addedMass));
-        } else {
-            centerOfMass = new Vector(x, y, z);
-            MoITensor = RotationMatrices.getZeroMatrix(3);
+    /**
+     * Adds every queued block mass change to the mass, center of mass and moment
+     * of inertia, and updates the inverse moment of inertia.
+     */
+    public void applyQueuedMassChanges() {
+        if (!queuedMassChanges.isEmpty()) {
+            mass = queuedMassChanges.applyTo(mass, centerOfMass, MoITensor);
+            invMoITensor = RotationMatrices.inverse3by3(MoITensor);
         }
-        double cmShiftX = prevCenterOfMass.X - centerOfMass.X;
-        double cmShiftY = prevCenterOfMass.Y - centerOfMass.Y;
-        double cmShiftZ = prevCenterOfMass.Z - centerOfMass.Z;
-        double rx = x - centerOfMass.X;
-        double ry = y - centerOfMass.Y;
-        double rz = z - centerOfMass.Z;
-
-        MoITensor[0] = MoITensor[0] + (cmShiftY * cmShiftY + cmShiftZ * cmShiftZ) * mass
-                + (ry * ry + rz * rz) * addedMass;
-        MoITensor[1] = MoITensor[1] - cmShiftX * cmShiftY * mass - rx * ry * addedMass;
-        MoITensor[2] = MoITensor[2] - cmShiftX * cmShiftZ * mass - rx * rz * addedMass;
-        MoITensor[3] = MoITensor[1];
-        MoITensor[4] = MoITensor[4] + (cmShiftX * cmShiftX + cmShiftZ * cmShiftZ) * mass
-                + (rx * rx + rz * rz) * addedMass;
-        MoITensor[5] = MoITensor[5] - cmShiftY * cmShiftZ * mass - ry * rz * addedMass;
-        MoITensor[6] = MoITensor[2];
-        MoITensor[7] = MoITensor[5];
-        MoITensor[8] = MoITensor[8] + (cmShiftX * cmShiftX + cmShiftY * cmShiftY) * mass
-                + (rx * rx + ry * ry) * addedMass;
-
-        mass += addedMass;
-        invMoITensor = RotationMatrices.inverse3by3(MoITensor);
     }
 
     public void rawPhysTickPreCol(double newPhysSpeed, int iters) {
+        applyQueuedMassChanges();
         if (parent.doPhysics) {
             updatePhysSpeedAndIters(newPhysSpeed, iters);
+            if (isSleeping && (wakeUpRequested || !parent.queuedPhysForces.isEmpty())) {
+                wakeUp();
+            }
             updateParentCenterOfMass();
             calculateFramedMOITensor();
             if (!actAsArchimedes) {
@@ -208,6 +255,9 @@ public class PhysicsCalculations {
             } else {
                 calculateForcesArchimedes();
             }
+            if (isSleeping) {
+                checkForcesOnSleepingShip();
+            }
         }
     }
 
@@ -218,7 +268,7 @@ public class PhysicsCalculations {
     }
 
     public void rawPhysTickPostCol() {
-        if (parent.doPhysics) {
+        if (parent.doPhysics && !isSleeping) {
             if (!isPhysicsBroken()) {
                 if (PhysicsSettings.doAirshipRotation) {
                     applyAngularVelocity();
@@ -226,6 +276,7 @@ public class PhysicsCalculations {
                 if (PhysicsSettings.doAirshipMovement) {
                     applyLinearVelocity();
                 }
+                updateSleepState();
             } else {
                 parent.doPhysics = false;
                 linearMomentum.zero();
@@ -234,6 +285,133 @@ public class PhysicsCalculations {
         }
     }
 
+    // Puts the ship to sleep once it has stayed at rest for long enough
+    private void updateSleepState() {
+        if (!canSleep()) {
+            return;
+        }
+        double invMass = getInvMass();
+        double linearSpeedSq = linearMomentum.lengthSq() * invMass * invMass;
+        if (linearSpeedSq < SLEEP_LINEAR_VELOCITY_THRESHOLD * SLEEP_LINEAR_VELOCITY_THRESHOLD
+                && angularVelocity.lengthSq() < SLEEP_ANGULAR_VELOCITY_THRESHOLD * SLEEP_ANGULAR_VELOCITY_THRESHOLD) {
+            // Multiply by 20 to convert seconds into ticks
+            ticksAtRest += 20D * getPhysicsTimeDeltaPerPhysTick();
+            if (ticksAtRest > TICKS_AT_REST_BEFORE_SLEEP) {
+                isSleeping = true;
+                sentSleepingPosition = false;
+                linearMomentum.zero();
+                angularVelocity.zero();
+            }
+        } else {
+            ticksAtRest = 0;
+        }
+    }
+
+    // A sleeping ship starts with no momentum every step, so whatever momentum it
+    // has now came from the forces of this step. Gravity alone doesn't wake the
+    // ship since it was resting on something when it fell asleep.
+    private void checkForcesOnSleepingShip() {
+        double accelerationScale = getInvMass() / getPhysicsTimeDeltaPerPhysTick();
+        Vector netAcceleration = linearMomentum.getProduct(accelerationScale);
+        Vector nonGravityAcceleration = new Vector(netAcceleration);
+        if (PhysicsSettings.doGravity) {
+            nonGravityAcceleration.subtract(ValkyrienWarfareMod.gravity.getProduct(BLOCKS_TO_METERS));
+        }
+        double wakeAccelerationSq = WAKE_ACCELERATION_THRESHOLD * WAKE_ACCELERATION_THRESHOLD;
+        double angularAccelerationSq = angularVelocity.lengthSq() / (getPhysicsTimeDeltaPerPhysTick() * getPhysicsTimeDeltaPerPhysTick());
+        if ((netAcceleration.lengthSq() > wakeAccelerationSq && nonGravityAcceleration.lengthSq() > wakeAccelerationSq)
+                || angularAccelerationSq > wakeAccelerationSq) {
+            wakeUp();
+        } else {
+            linearMomentum.zero();
+            angularVelocity.zero();
+        }
+    }
+
+    /**
+     * Thread safe way to wake this ship up, the ship wakes at the start of its
+     * next physics step.
+     */
+    public void requestWakeUp() {
+        wakeUpRequested = true;
+    }
+
+    public void wakeUp() {
+        isSleeping = false;
+        wakeUpRequested = false;
+        ticksAtRest = 0;
+    }
+
+    public boolean isSleeping() {
+        return isSleeping;
+    }
+
+    public boolean isWakeUpRequested() {
+        return wakeUpRequested;
+    }
+
+    public int getSubstepsThisTick() {
+        return substepsThisTick;
+    }
+
+    public void setSubstepsThisTick(int substeps) {
+        substepsThisTick = substeps;
+    }
+
+    public int getTickPriority() {
+        return tickPriority;
+    }
+
+    public void setTickPriority(int priority) {
+        tickPriority = priority;
+    }
+
+    // Number of ticks in a row this ship has been left out of the physics tick
+    public int getTicksDeferred() {
+        return ticksDeferred;
+    }
+
+    public void setTicksDeferred(int ticks) {
+        ticksDeferred = ticks;
+    }
+
+    /**
+     * Called by the colliders whenever they push this ship out of something
+     */
+    public void markContact() {
+        hadContact = true;
+    }
+
+    /**
+     * Returns true if this ship collided with anything since the last call
+     */
+    public boolean pollContact() {
+        boolean contact = hadContact;
+        hadContact = false;
+        return contact;
+    }
+
+    // Ships with scripted movement don't follow their momentum, so they can't be
+    // put to sleep based on it
+    protected boolean canSleep() {
+        return true;
+    }
+
+    /**
+     * Called once per tick before sending this ship's position to players. Sleeping
+     * ships only send their final resting position once.
+     */
+    public boolean shouldSendPositionUpdate() {
+        if (!isSleeping) {
+            return true;
+        }
+        if (!sentSleepingPosition) {
+            sentSleepingPosition = true;
+            return true;
+        }
+        return false;
+    }
+
     // If the ship is moving at these speeds, its likely something in the physics
     // broke. This method helps detect that.
     private boolean isPhysicsBroken() {
@@ -264,31 +442,51 @@ public class PhysicsCalculations {
     // Applies the rotation transform onto the Moment of Inertia to generate the
     // REAL MOI at that given instant
     private void calculateFramedMOITensor() {
-        framedMOI = RotationMatrices.getZeroMatrix(3);
-        Matrix3d pitch = new Matrix3d();
-        Matrix3d yaw = new Matrix3d();
-        Matrix3d roll = new Matrix3d();
-        pitch.rotX(Math.toRadians(parent.wrapper.pitch));
-        yaw.rotY(Math.toRadians(parent.wrapper.yaw));
-        roll.rotZ(Math.toRadians(parent.wrapper.roll));
-        pitch.mul(yaw);
-        pitch.mul(roll);
-        pitch.normalize();
-        Matrix3d inertiaBodyFrame = new Matrix3d(MoITensor);
-        Matrix3d multipled = new Matrix3d();
-        multipled.mul(pitch, inertiaBodyFrame);
-        pitch.transpose();
-        multipled.mul(pitch);
-        framedMOI[0] = multipled.m00;
-        framedMOI[1] = multipled.m01;
-        framedMOI[2] = multipled.m02;
-        framedMOI[3] = multipled.m10;
-        framedMOI[4] = multipled.m11;
-        framedMOI[5] = multipled.m12;
-        framedMOI[6] = multipled.m20;
-        framedMOI[7] = multipled.m21;
-        framedMOI[8] = multipled.m22;
-        invFramedMOI = RotationMatrices.inverse3by3(framedMOI);
+        // The Euler angles can be behind the integrated orientation, so the rotation
+        // is taken from the transform instead
+        double[] rotation = parent.coordTransform.lToWRotation;
+        if (!updateFramedMOIInputs(rotation)) {
+            // Nothing has rotated or changed mass since the last time
+            return;
+        }
+        double[] rotated = framedMOIScratch;
+        for (int row = 0; row < 3; row++) {
+            for (int column = 0; column < 3; column++) {
+                rotated[row * 3 + column] = rotation[row * 4] * MoITensor[column]
+                        + rotation[row * 4 + 1] * MoITensor[3 + column]
+                        + rotation[row * 4 + 2] * MoITensor[6 + column];
+            }
+        }
+        for (int row = 0; row < 3; row++) {
+            for (int column = 0; column < 3; column++) {
+                framedMOI[row * 3 + column] = rotated[row * 3] * rotation[column * 4]
+                        + rotated[row * 3 + 1] * rotation[column * 4 + 1]
+                        + rotated[row * 3 + 2] * rotation[column * 4 + 2];
+            }
+        }
+        RotationMatrices.inverse3by3(framedMOI, invFramedMOI);
+    }
+
+    // Copies the rotation and inertia into the cached inputs, returns false if
+    // they were already the same
+    private boolean updateFramedMOIInputs(double[] rotation) {
+        boolean changed = false;
+        for (int row = 0; row < 3; row++) {
+            for (int column = 0; column < 3; column++) {
+                double value = rotation[row * 4 + column];
+                if (framedMOIRotation[row * 3 + column] != value) {
+                    framedMOIRotation[row * 3 + column] = value;
+                    changed = true;
+                }
+            }
+        }
+        for (int i = 0; i < 9; i++) {
+            if (framedMOIInertia[i] != MoITensor[i]) {
+                framedMOIInertia[i] = MoITensor[i];
+                changed = true;
+            }
+        }
+        return changed;
     }
 
     protected void calculateForces() {
@@ -296,12 +494,6 @@ public class PhysicsCalculations {
         applyGravity();
         addQueuedForces();
 
-        Collections.shuffle(activeForcePositions);
-
-        Vector blockForce = new Vector();
-        Vector inBodyWO = new Vector();
-        Vector crossVector = new Vector();
-
         if (PhysicsSettings.doPhysicsBlocks) {
 
             physicsTasks.clear();
@@ -319,31 +511,87 @@ public class PhysicsCalculations {
                 physicsProcessorNode.onPhysicsTick(parent, this, physRawSpeed);
             }
 
-            for (BlockPos pos : activeForcePositions) {
-                IBlockState state = parent.VKChunkCache.getBlockState(pos);
-                Block blockAt = state.getBlock();
-                VWMath.getBodyPosWithOrientation(pos, centerOfMass, parent.coordTransform.lToWRotation, inBodyWO);
-
-                BlockForce.basicForces.getForceFromState(state, pos, worldObj, getPhysicsTimeDeltaPerPhysTick(), parent,
-                        blockForce);
-
-                if (blockForce != null) {
-                    if (blockAt instanceof IBlockForceProvider) {
-                        Vector otherPosition = ((IBlockForceProvider) blockAt).getCustomBlockForcePosition(worldObj,
-                                pos, state, parent.wrapper, getPhysicsTimeDeltaPerPhysTick());
-                        if (otherPosition != null) {
-                            VWMath.getBodyPosWithOrientation(otherPosition, centerOfMass,
-                                    parent.coordTransform.lToWRotation, inBodyWO);
-                        }
-                    }
-                    addForceAtPoint(inBodyWO, blockForce, crossVector);
-                }
+            if (forceEmitters.isDirty()) {
+                forceEmitters.rebuild(activeForcePositions, parent.VKChunkCache, worldObj);
             }
+            applyForceEmitters();
         }
 
         convertTorqueToVelocity();
     }
 
+    // Adds up the force and torque of every force block, and then applies the sum
+    // all at once
+    private void applyForceEmitters() {
+        final ForceEmitterTable emitters = forceEmitters;
+        final double[] R = parent.coordTransform.lToWRotation;
+        final double secondsToApply = getPhysicsTimeDeltaPerPhysTick();
+        double totalForceX = 0, totalForceY = 0, totalForceZ = 0;
+        double totalTorqueX = 0, totalTorqueY = 0, totalTorqueZ = 0;
+
+        for (int i = 0; i < emitters.size(); i++) {
+            double forceX, forceY, forceZ;
+            double pointX = emitters.posX[i] + .5D - centerOfMass.X;
+            double pointY = emitters.posY[i] + .5D - centerOfMass.Y;
+            double pointZ = emitters.posZ[i] + .5D - centerOfMass.Z;
+
+            IBlockForceProvider provider = emitters.providers[i];
+            if (provider == null) {
+                forceX = emitters.forceX[i] * secondsToApply;
+                forceY = emitters.forceY[i] * secondsToApply;
+                forceZ = emitters.forceZ[i] * secondsToApply;
+                if (emitters.isForceLocal[i]) {
+                    double localX = forceX;
+                    double localY = forceY;
+                    double localZ = forceZ;
+                    forceX = localX * R[0] + localY * R[1] + localZ * R[2];
+                    forceY = localX * R[4] + localY * R[5] + localZ * R[6];
+                    forceZ = localX * R[8] + localY * R[9] + localZ * R[10];
+                }
+            } else {
+                BlockPos pos = emitters.providerPositions[i];
+                IBlockState state = emitters.providerStates[i];
+                Vector providedForce = provider.getBlockForceInWorldSpace(worldObj, pos, state, parent.wrapper,
+                        secondsToApply);
+                if (providedForce == null) {
+                    continue;
+                }
+                forceX = providedForce.X;
+                forceY = providedForce.Y;
+                forceZ = providedForce.Z;
+                Vector otherPosition = provider.getCustomBlockForcePosition(worldObj, pos, state, parent.wrapper,
+                        secondsToApply);
+                if (otherPosition != null) {
+                    pointX = otherPosition.X - centerOfMass.X;
+                    pointY = otherPosition.Y - centerOfMass.Y;
+                    pointZ = otherPosition.Z - centerOfMass.Z;
+                }
+            }
+
+            // Same as VWMath.getBodyPosWithOrientation() and addForceAtPoint()
+            double inBodyX = pointX * R[0] + pointY * R[1] + pointZ * R[2];
+            double inBodyY = pointX * R[4] + pointY * R[5] + pointZ * R[6];
+            double inBodyZ = pointX * R[8] + pointY * R[9] + pointZ * R[10];
+            forceX *= BLOCKS_TO_METERS;
+            forceY *= BLOCKS_TO_METERS;
+            forceZ *= BLOCKS_TO_METERS;
+
+            totalForceX += forceX;
+            totalForceY += forceY;
+            totalForceZ += forceZ;
+            totalTorqueX += inBodyY * forceZ - inBodyZ * forceY;
+            totalTorqueY += inBodyZ * forceX - inBodyX * forceZ;
+            totalTorqueZ += inBodyX * forceY - inBodyY * forceX;
+        }
+
+        linearMomentum.X += totalForceX;
+        linearMomentum.Y += totalForceY;
+        linearMomentum.Z += totalForceZ;
+        torque.X += totalTorqueX;
+        torque.Y += totalTorqueY;
+        torque.Z += totalTorqueZ;
+    }
+
     public void applyGravity() {
         if (PhysicsSettings.doGravity) {
             addForceAtPoint(new Vector(0, 0, 0),
@@ -379,7 +627,8 @@ public class PhysicsCalculations {
 
     public void convertTorqueToVelocity() {
         if (!torque.isZero()) {
-            angularVelocity.add(RotationMatrices.get3by3TransformedVec(invFramedMOI, torque));
+            // The torque gets cleared right after, so it can hold the result
+            angularVelocity.add(RotationMatrices.get3by3TransformedVec(invFramedMOI, torque, torque));
             torque.zero();
         }
     }
@@ -403,18 +652,58 @@ public class PhysicsCalculations {
     }
 
     public void applyAngularVelocity() {
-        CoordTransformObject coordTrans = parent.coordTransform;
+        if (wasRotatedExternally()) {
+            // Something other than the integrator set the Euler angles, so start over from them
+            orientation = Quaternion.QuaternionFromMatrix(
+                    RotationMatrices.getRotationMatrix(wrapperEnt.pitch, wrapperEnt.yaw, wrapperEnt.roll));
+            syncedPitch = wrapperEnt.pitch;
+            syncedYaw = wrapperEnt.yaw;
+            syncedRoll = wrapperEnt.roll;
+        }
+
+        // The angular velocity is in world space, so the change gets applied before the
+        // current orientation
+        double rotationAngle = angularVelocity.length() * getPhysicsTimeDeltaPerPhysTick();
+        if (rotationAngle > 0) {
+            orientation.multiply(Quaternion.fromAxisAngle(angularVelocity.X, angularVelocity.Y, angularVelocity.Z,
+                    -rotationAngle));
+        }
+        eulerAnglesOutdated = true;
+        parent.coordTransform.updateAllTransforms();
+    }
+
+    /**
+     * Writes the integrated orientation back into the wrapper pitch, yaw and roll.
+     * Has to be called before anything outside of the physics step reads them,
+     * like the position packets and the save data.
+     */
+    public void updateEulerAngles() {
+        if (hasPendingOrientation()) {
+            double[] radians = orientation.toRadians();
+            wrapperEnt.pitch = Double.isNaN(radians[0]) ? 0.0f : (float) Math.toDegrees(radians[0]);
+            wrapperEnt.yaw = Double.isNaN(radians[1]) ? 0.0f : (float) Math.toDegrees(radians[1]);
+            wrapperEnt.roll = Double.isNaN(radians[2]) ? 0.0f : (float) Math.toDegrees(radians[2]);
+            syncedPitch = wrapperEnt.pitch;
+            syncedYaw = wrapperEnt.yaw;
+            syncedRoll = wrapperEnt.roll;
+        }
+        eulerAnglesOutdated = false;
+    }
 
-        double[] rotationChange = RotationMatrices.getRotationMatrix(angularVelocity.X, angularVelocity.Y,
-                angularVelocity.Z, angularVelocity.length() * getPhysicsTimeDeltaPerPhysTick());
-        Quaternion finalTransform = Quaternion
-                .QuaternionFromMatrix(RotationMatrices.getMatrixProduct(rotationChange, coordTrans.lToWRotation));
+    /**
+     * Returns true if the orientation has moved on since the Euler angles were last
+     * written, in which case the transforms should be built from getOrientation()
+     */
+    public boolean hasPendingOrientation() {
+        return eulerAnglesOutdated && !wasRotatedExternally();
+    }
 
-        double[] radians = finalTransform.toRadians();
-        wrapperEnt.pitch = Double.isNaN(radians[0]) ? 0.0f : (float) Math.toDegrees(radians[0]);
-        wrapperEnt.yaw = Double.isNaN(radians[1]) ? 0.0f : (float) Math.toDegrees(radians[1]);
-        wrapperEnt.roll = Double.isNaN(radians[2]) ? 0.0f : (float) Math.toDegrees(radians[2]);
-        coordTrans.updateAllTransforms();
+    public Quaternion getOrientation() {
+        return orientation;
+    }
+
+    private boolean wasRotatedExternally() {
+        return wrapperEnt.pitch != syncedPitch || wrapperEnt.yaw != syncedYaw || wrapperEnt.roll != syncedRoll;
     }
 
     public void applyLinearVelocity() {
@@ -444,6 +733,7 @@ public class PhysicsCalculations {
     }
 
     public void writeToNBTTag(NBTTagCompound compound) {
+        applyQueuedMassChanges();
         compound.setDouble("mass", mass);
 
         NBTUtils.writeVectorToNBT("linear", linearMomentum, compound);
@@ -468,9 +758,75 @@ public class PhysicsCalculations {
     // Called upon a Ship being created from the World, and generates the physics
     // data for it
     public void processInitialPhysicsData() {
-        IBlockState air = Blocks.AIR.getDefaultState();
-        for (BlockPos pos : parent.blockPositions) {
-            onSetBlockState(air, parent.VKChunkCache.getBlockState(pos), pos);
+        requestWakeUp();
+        synchronized (activeForcePositions) {
+            for (BlockPos pos : parent.blockPositions) {
+                if (BlockForce.basicForces.isBlockProvidingForce(parent.VKChunkCache.getBlockState(pos), pos, worldObj)) {
+                    activeForcePositions.add(pos);
+                }
+            }
+        }
+        forceEmitters.markDirty();
+        addInitialBlockMasses();
+        applyQueuedMassChanges();
+    }
+
+    // Adds up the mass of every block in the ship as a parallel reduction, each
+    // section gets its own partial sums which are merged at the end. Blocks that
+    // provide their own mass might look at the world, so those are done on this
+    // thread afterwards.
+    private void addInitialBlockMasses() {
+        final Chunk[][] claimedChunks = parent.claimedChunks;
+        final int chunksZ = claimedChunks[0].length;
+        final Queue<BlockPos> massProviderPositions = new ConcurrentLinkedQueue<BlockPos>();
+
+        MassDeltaAccumulator blockMasses = IntStream.range(0, claimedChunks.length * chunksZ * 16).parallel()
+                .collect(MassDeltaAccumulator::new, (sectionMasses, sectionIndex) -> {
+                    int chunkX = sectionIndex / (chunksZ * 16);
+                    int chunkZ = (sectionIndex / 16) % chunksZ;
+                    Chunk chunk = claimedChunks[chunkX][chunkZ];
+                    if (chunk != null && parent.ownedChunks.chunkOccupiedInLocal[chunkX][chunkZ]) {
+                        addSectionMass(chunk, sectionIndex % 16, sectionMasses, massProviderPositions);
+                    }
+                }, MassDeltaAccumulator::addAll);
+        queuedMassChanges.addAll(blockMasses);
+
+        for (BlockPos pos : massProviderPositions) {
+            double blockMass = BlockMass.basicMass.getMassFromState(parent.VKChunkCache.getBlockState(pos), pos,
+                    worldObj);
+            queuedMassChanges.addBlockMass(pos.getX() + .5D, pos.getY() + .5D, pos.getZ() + .5D, blockMass);
+        }
+    }
+
+    // Uses the same test for air as PhysicsObject.detectBlockPositions()
+    private void addSectionMass(Chunk chunk, int storageY, MassDeltaAccumulator sectionMasses,
+            Queue<BlockPos> massProviderPositions) {
+        ExtendedBlockStorage storage = chunk.getBlockStorageArray()[storageY];
+        if (storage == null) {
+            return;
+        }
+        MutableBlockPos pos = new MutableBlockPos();
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                for (int z = 0; z < 16; z++) {
+                    if (storage.data.storage.getAt(y << 8 | z << 4 | x) != ValkyrienWarfareMod.airStateIndex) {
+                        IBlockState state = storage.get(x, y, z);
+                        if (state.getBlock() == Blocks.AIR) {
+                            continue;
+                        }
+                        pos.setPos(chunk.x * 16 + x, storageY * 16 + y, chunk.z * 16 + z);
+                        if (state.getBlock() instanceof IBlockMassProvider) {
+                            massProviderPositions.add(pos.toImmutable());
+                        } else {
+                            double blockMass = BlockMass.basicMass.getMassFromState(state, pos, worldObj);
+                            if (Math.abs(blockMass) > EPSILON) {
+                                sectionMasses.addBlockMass(pos.getX() + .5D, pos.getY() + .5D, pos.getZ() + .5D,
+                                        blockMass);
+                            }
+                        }
+                    }
+                }
+            }
         }
     }
 
@@ -502,7 +858,10 @@ public class PhysicsCalculations {
     }
 
     public void addPotentialActiveForcePos(BlockPos pos) {
-        this.activeForcePositions.add(pos);
+        synchronized (activeForcePositions) {
+            this.activeForcePositions.add(pos);
+        }
+        forceEmitters.markDirty();
     }
 
 }
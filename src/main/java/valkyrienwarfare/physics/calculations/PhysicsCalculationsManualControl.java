@@ -61,6 +61,8 @@ public class PhysicsCalculationsManualControl extends PhysicsCalculations {
         applyLinearVelocity();
         double previousYaw = parent.wrapper.yaw;
         applyAngularVelocity();
+        // The code below works with the Euler angles, so they can't lag behind here
+        updateEulerAngles();
 
         //We don't want the up normal to exactly align with the world normal, it causes problems with collision
         if (!this.actAsArchimedes) {
@@ -85,6 +87,11 @@ public class PhysicsCalculationsManualControl extends PhysicsCalculations {
         parent.coordTransform.updateAllTransforms();
     }
 
+    @Override
+    protected boolean canSleep() {
+        return false;
+    }
+
     @Override
     public void writeToNBTTag(NBTTagCompound compound) {
         super.writeToNBTTag(compound);
@@ -27,6 +27,7 @@ public class PhysicsCalculationsOrbital extends PhysicsCalculations {
     public boolean isOrbitalPhased = true;
     private Vector setLinearVel = new Vector();
     private Vector setAngularVel = new Vector();
+    private final double[] orbitalRotation = new double[16];
 
     public PhysicsCalculationsOrbital(PhysicsObject toProcess) {
         super(toProcess);
@@ -76,7 +77,7 @@ public class PhysicsCalculationsOrbital extends PhysicsCalculations {
         } else {
             CoordTransformObject coordTrans = parent.coordTransform;
             double[] rotationChange = RotationMatrices.getRotationMatrix(setAngularVel.X, setAngularVel.Y, setAngularVel.Z, angularVelocity.length() * getPhysicsTimeDeltaPerPhysTick());
-            Quaternion transform = Quaternion.QuaternionFromMatrix(RotationMatrices.getMatrixProduct(rotationChange, coordTrans.lToWRotation));
+            Quaternion transform = Quaternion.QuaternionFromMatrix(RotationMatrices.getMatrixProduct(rotationChange, coordTrans.lToWRotation, orbitalRotation));
             double[] radians = transform.toRadians();
 
             wrapperEnt.pitch = Double.isNaN(radians[0]) ? 0.0f : (float) Math.toDegrees(radians[0]);
@@ -86,6 +87,11 @@ public class PhysicsCalculationsOrbital extends PhysicsCalculations {
         }
     }
 
+    @Override
+    protected boolean canSleep() {
+        return !isOrbitalPhased;
+    }
+
     public void setLinearVel(Vector newLinearVel) {
         setLinearVel = newLinearVel;
     }
@@ -424,8 +424,8 @@ public class EntityCollisionInjector {
 
 				if (wrapper.wrapping.ownsChunk(entityChunkX, entityChunkZ)) {
 					Chunk chunkIn = wrapper.wrapping.claimedChunks[entityChunkX
-							- wrapper.wrapping.claimedChunks[0][0].x][entityChunkZ
-									- wrapper.wrapping.claimedChunks[0][0].z];
+							- wrapper.wrapping.ownedChunks.minX][entityChunkZ
+									- wrapper.wrapping.ownedChunks.minZ];
 
 					int chunkYIndex = MathHelper.floor(entity.posY / 16.0D);
 
@@ -17,29 +17,34 @@
 package valkyrienwarfare.physics.collision;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 
 import net.minecraft.util.math.AxisAlignedBB;
-import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import valkyrienwarfare.api.RotationMatrices;
 import valkyrienwarfare.api.Vector;
-import valkyrienwarfare.math.VWMath;
 import valkyrienwarfare.physics.calculations.PhysicsCalculations;
 import valkyrienwarfare.physics.calculations.PhysicsCalculationsOrbital;
+import valkyrienwarfare.physics.collision.optimization.CollisionContactBuffer;
+import valkyrienwarfare.physics.collision.optimization.ShipPairCollisionTask;
 import valkyrienwarfare.physics.management.PhysicsObject;
+import valkyrienwarfare.physics.management.PhysicsWrapperEntity;
+import valkyrienwarfare.util.PhysicsSettings;
 
+// A manager used to process collisions between this ship and other ships
 public class ShipPhysicsCollider {
 
-	public static double axisTolerance = .3D;
-	public PhysicsCalculations calculator;
-	public World worldObj;
-	public PhysicsObject parent;
-	public double e = .35D;
-	private ArrayList<BlockPos> cachedPotentialHits;
-	// Ensures this always updates the first tick after creation
-	private double ticksSinceCacheUpdate = 420;
+	// Ships closer than this are checked against each other for collisions
+	public static final double AABB_EXPANSION = .5D;
+	// Determines how 'bouncy' collisions between ships are
+	public static final double COEFFICIENT_OF_RESTITUTION = .35D;
+	// Below this speed the coefficient of restitution is zero
+	public static final double RESTITUTION_SLOP = .5D;
+	public final PhysicsCalculations calculator;
+	public final World worldObj;
+	public final PhysicsObject parent;
 
 	public ShipPhysicsCollider(PhysicsCalculations calculations) {
 		calculator = calculations;
@@ -47,188 +52,117 @@ public class ShipPhysicsCollider {
 		worldObj = parent.worldObj;
 	}
 
-	public void doShipCollision(PhysicsObject toCollideWith) {
-		// Don't process collision if either of them are phased
-		if (toCollideWith.physicsProcessor instanceof PhysicsCalculationsOrbital) {
-			if (((PhysicsCalculationsOrbital) toCollideWith.physicsProcessor).isOrbitalPhased) {
-				return;
-			}
+	/**
+	 * Finds the pairs of ships whose bounding boxes overlap, using a sort and sweep
+	 * along the x axis, and creates a collision task for each of them. Only pairs
+	 * within the given list are checked.
+	 */
+	public static void createCollisionTasks(List<PhysicsWrapperEntity> physicsEntities,
+			Collection<ShipPairCollisionTask> toAdd) {
+		if (!PhysicsSettings.doShipCollision || physicsEntities.size() < 2) {
+			return;
 		}
-		if (parent.physicsProcessor instanceof PhysicsCalculationsOrbital) {
-			if (((PhysicsCalculationsOrbital) parent.physicsProcessor).isOrbitalPhased) {
-				return;
+		List<PhysicsWrapperEntity> sortedByMinX = new ArrayList<PhysicsWrapperEntity>(physicsEntities);
+		sortedByMinX.sort(new Comparator<PhysicsWrapperEntity>() {
+			@Override
+			public int compare(PhysicsWrapperEntity first, PhysicsWrapperEntity second) {
+				return Double.compare(first.wrapping.getCollisionBoundingBox().minX,
+						second.wrapping.getCollisionBoundingBox().minX);
+			}
+		});
+
+		for (int i = 0; i < sortedByMinX.size(); i++) {
+			PhysicsWrapperEntity first = sortedByMinX.get(i);
+			AxisAlignedBB firstBB = first.wrapping.getCollisionBoundingBox().grow(AABB_EXPANSION);
+			for (int j = i + 1; j < sortedByMinX.size(); j++) {
+				PhysicsWrapperEntity second = sortedByMinX.get(j);
+				AxisAlignedBB secondBB = second.wrapping.getCollisionBoundingBox().grow(AABB_EXPANSION);
+				if (secondBB.minX > firstBB.maxX) {
+					// Everything after this starts even further along the x axis
+					break;
+				}
+				if (firstBB.intersects(secondBB) && canCollide(first.wrapping, second.wrapping)) {
+					toAdd.add(new ShipPairCollisionTask(first.wrapping.physicsProcessor.shipCollision, second.wrapping));
+				}
 			}
 		}
+	}
 
-		AxisAlignedBB firstBB = parent.getCollisionBoundingBox();
-		AxisAlignedBB secondBB = toCollideWith.getCollisionBoundingBox();
-		AxisAlignedBB betweenBB = VWMath.getBetweenAABB(firstBB, secondBB);
+	private static boolean canCollide(PhysicsObject first, PhysicsObject second) {
+		if (first.wrapper.firstUpdate || second.wrapper.firstUpdate || !first.doPhysics || !second.doPhysics) {
+			return false;
+		}
+		// Neither of them can move
+		if (first.physicsProcessor.isSleeping() && second.physicsProcessor.isSleeping()) {
+			return false;
+		}
+		// Don't process collision if either of them are phased
+		return !isOrbitalPhased(first) && !isOrbitalPhased(second);
+	}
 
-		Polygon betweenBBPoly = new Polygon(betweenBB, toCollideWith.coordTransform.wToLTransform);
+	private static boolean isOrbitalPhased(PhysicsObject physicsObject) {
+		return physicsObject.physicsProcessor instanceof PhysicsCalculationsOrbital
+				&& ((PhysicsCalculationsOrbital) physicsObject.physicsProcessor).isOrbitalPhased;
+	}
 
-		List<AxisAlignedBB> bbsInFirst = parent.worldObj.getCollisionBoxes(parent.wrapper,
-				betweenBBPoly.getEnclosedAABB());
-		if (bbsInFirst.isEmpty()) {
-			return;
+	public void processCollisionTask(ShipPairCollisionTask task) {
+		CollisionContactBuffer contacts = task.getContacts();
+		if (contacts.size() > 0) {
+			calculator.markContact();
+			task.getOther().physicsProcessor.markContact();
 		}
-
-		Vector[] axes = parent.coordTransform.getSeperatingAxisWithShip(toCollideWith);
-		Iterator<AxisAlignedBB> firstRandIter = bbsInFirst.iterator();// RandomIterator.getRandomIteratorForList(bbsInFirst);
-		while (firstRandIter.hasNext()) {
-			AxisAlignedBB fromIter = firstRandIter.next();
-
-			Polygon firstInWorld = new Polygon(fromIter, toCollideWith.coordTransform.lToWTransform);
-
-			AxisAlignedBB inWorldAABB = firstInWorld.getEnclosedAABB();
-
-			Polygon inShip2Poly = new Polygon(inWorldAABB, parent.coordTransform.wToLTransform);
-
-			// This is correct
-			List<AxisAlignedBB> bbsInSecond = parent.worldObj.getCollisionBoxes(parent.wrapper,
-					inShip2Poly.getEnclosedAABB());
-
-			Iterator<AxisAlignedBB> secondRandIter = bbsInSecond.iterator();// RandomIterator.getRandomIteratorForList(bbsInSecond);
-
-			while (secondRandIter.hasNext()) {
-				// System.out.println("test");
-				Polygon secondInWorld = new Polygon(secondRandIter.next(), parent.coordTransform.lToWTransform);
-
-				// Both of these are in WORLD coordinates
-				Vector firstCenter = firstInWorld.getCenter();
-				Vector secondCenter = secondInWorld.getCenter();
-
-				Vector inBodyFirst = new Vector(firstCenter.X - parent.wrapper.posX,
-						firstCenter.Y - parent.wrapper.posY, firstCenter.Z - parent.wrapper.posZ);
-				Vector inBodySecond = new Vector(secondCenter.X - toCollideWith.wrapper.posX,
-						secondCenter.Y - toCollideWith.wrapper.posY, secondCenter.Z - toCollideWith.wrapper.posZ);
-
-				Vector velAtFirst = parent.physicsProcessor.getVelocityAtPoint(inBodyFirst);
-				Vector velAtSecond = toCollideWith.physicsProcessor.getVelocityAtPoint(inBodySecond);
-
-				velAtFirst.subtract(velAtSecond);
-
-				PhysPolygonCollider polyCol = new PhysPolygonCollider(firstInWorld, secondInWorld, axes);
-				if (!polyCol.seperated) {
-
-					Vector speedAtPoint = velAtFirst;
-
-					double xDot = Math.abs(speedAtPoint.X);
-					double yDot = Math.abs(speedAtPoint.Y);
-					double zDot = Math.abs(speedAtPoint.Z);
-
-					PhysCollisionObject polyColObj = null;
-
-					// NOTE: This is all EXPERIMENTAL! Could possibly revert
-
-					if (yDot > xDot && yDot > zDot) {
-						// Y speed is greatest
-						if (xDot > zDot) {
-							polyColObj = polyCol.collisions[2];
-						} else {
-							polyColObj = polyCol.collisions[0];
-						}
-					} else {
-						if (xDot > zDot) {
-							// X speed is greatest
-							polyColObj = polyCol.collisions[1];
-						} else {
-							// Z speed is greatest
-							polyColObj = polyCol.collisions[1];
-						}
-					}
-
-					// PhysCollisionObject polyColObj = polyCol.collisions[1];
-					if (polyColObj.penetrationDistance > axisTolerance
-							|| polyColObj.penetrationDistance < -axisTolerance) {
-						polyColObj = polyCol.collisions[polyCol.minDistanceIndex];
-					}
-
-					// PhysCollisionObject physCol = new
-					// PhysCollisionObject(firstInWorld,secondInWorld,polyColObj.axis);
-					processCollisionAtPoint(toCollideWith, polyColObj);
-
-					if (Math.abs(polyColObj.movMaxFixMin) > Math.abs(polyColObj.movMinFixMax)) {
-						for (Vector v : polyColObj.movable.getVertices()) {
-							if (v.dot(polyColObj.axis) == polyColObj.playerMinMax[1]) {
-								polyColObj.firstContactPoint = v;
-							}
-						}
-					} else {
-						for (Vector v : polyColObj.movable.getVertices()) {
-							if (v.dot(polyColObj.axis) == polyColObj.playerMinMax[0]) {
-								polyColObj.firstContactPoint = v;
-							}
-						}
-					}
-
-					// physCol.firstContactPoint = physCol.getSecondContactPoint();
-					processCollisionAtPoint(toCollideWith, polyColObj);
-				}
-			}
+		for (int i = 0; i < contacts.size(); i++) {
+			handleActualCollision(task.getOther(), contacts, i);
 		}
+
+		contacts.clear();
 	}
 
-	private void processCollisionAtPoint(PhysicsObject toCollideWith, PhysCollisionObject object) {
-		double e;
-		Vector inFirstShip = new Vector(object.firstContactPoint);
-		Vector inSecondShip = new Vector(object.firstContactPoint);
-		// inFirstShip.subtract(firstController.centerOfMass);
-		// inSecondShip.subtract(secondController.centerOfMass);
-		// System.out.println(object.axis);
-		// BigBastardMath.setInBodyWOFromInWorld(object.firstContactPoint,
-		// parent.physicsProcessor.centerOfMass, parent.coordTransform.lToWRotation,
-		// parent.coordTransform.wToLTransform,inFirstShip);
-
-		// BigBastardMath.setInBodyWOFromInWorld(object.firstContactPoint,
-		// toCollideWith.physicsProcessor.centerOfMass,
-		// toCollideWith.coordTransform.lToWRotation,
-		// toCollideWith.coordTransform.wToLTransform,inSecondShip);
-
-		inFirstShip.X -= parent.wrapper.posX;
-		inFirstShip.Y -= parent.wrapper.posY;
-		inFirstShip.Z -= parent.wrapper.posZ;
-
-		inSecondShip.X -= toCollideWith.wrapper.posX;
-		inSecondShip.Y -= toCollideWith.wrapper.posY;
-		inSecondShip.Z -= toCollideWith.wrapper.posZ;
-
-		Vector momentumInFirst = parent.physicsProcessor.getVelocityAtPoint(inFirstShip);
-		Vector momentumInSecond = toCollideWith.physicsProcessor.getVelocityAtPoint(inSecondShip);
-
-		// COULD BE WRONG!!!
-		Vector netVelocity = momentumInFirst.getSubtraction(momentumInSecond);
-
-		e = .9;
-
-		double topJ = -(e + 1D) * netVelocity.dot(object.axis);
-
-		double bottomJ = parent.physicsProcessor.getInvMass() + toCollideWith.physicsProcessor.getInvMass();
-
-		bottomJ += RotationMatrices
-				.get3by3TransformedVec(toCollideWith.physicsProcessor.invFramedMOI, inFirstShip.cross(object.axis))
-				.cross(inFirstShip).dot(object.axis);
-
-		bottomJ += RotationMatrices
-				.get3by3TransformedVec(toCollideWith.physicsProcessor.invFramedMOI, inSecondShip.cross(object.axis))
-				.cross(inSecondShip).dot(object.axis);
-
-		double j = topJ / bottomJ;
-
-		Vector responseVec = new Vector(object.axis, j);
-		// System.out.println(object.axis);
-		if (responseVec.dot(object.getResponse()) < 0) {
-			responseVec.multiply(-1D);
-			parent.physicsProcessor.linearMomentum.add(responseVec);
-			Vector cross = inFirstShip.cross(responseVec);
-			RotationMatrices.applyTransform3by3(parent.physicsProcessor.invFramedMOI, cross);
-			parent.physicsProcessor.angularVelocity.add(cross);
-
-			responseVec.multiply(-1D);
-			toCollideWith.physicsProcessor.linearMomentum.add(responseVec);
-			cross = inSecondShip.cross(responseVec);
-			RotationMatrices.applyTransform3by3(toCollideWith.physicsProcessor.invFramedMOI, cross);
-			toCollideWith.physicsProcessor.angularVelocity.add(cross);
+	// Applies an impulse to both ships that stops the two colliding blocks from
+	// moving into each other. The task already pointed the axis from the other
+	// ship into this one and put the contact point between the two blocks.
+	private void handleActualCollision(PhysicsObject other, CollisionContactBuffer contacts, int contactIndex) {
+		PhysicsCalculations otherCalculator = other.physicsProcessor;
+		Vector axis = new Vector();
+		contacts.getAxis(contactIndex, axis);
+		Vector contactPoint = new Vector();
+		contacts.getFirstContactPoint(contactIndex, contactPoint);
+		Vector inFirstBody = contactPoint.getSubtraction(new Vector(parent.wrapper.posX, parent.wrapper.posY, parent.wrapper.posZ));
+		Vector inSecondBody = contactPoint.getSubtraction(new Vector(other.wrapper.posX, other.wrapper.posY, other.wrapper.posZ));
+
+		Vector relativeVelocity = calculator.getVelocityAtPoint(inFirstBody);
+		relativeVelocity.subtract(otherCalculator.getVelocityAtPoint(inSecondBody));
+		double normalVelocity = relativeVelocity.dot(axis);
+		if (normalVelocity >= 0) {
+			// Already moving apart
+			return;
 		}
+
+		Vector firstCross = inFirstBody.cross(axis);
+		RotationMatrices.applyTransform3by3(calculator.invFramedMOI, firstCross);
+		Vector secondCross = inSecondBody.cross(axis);
+		RotationMatrices.applyTransform3by3(otherCalculator.invFramedMOI, secondCross);
+
+		double denominator = calculator.getInvMass() + otherCalculator.getInvMass()
+				+ firstCross.cross(inFirstBody).dot(axis) + secondCross.cross(inSecondBody).dot(axis);
+		double restitution = -normalVelocity > RESTITUTION_SLOP ? COEFFICIENT_OF_RESTITUTION : 0D;
+		double impulseMagnitude = -(1D + restitution) * normalVelocity / denominator;
+
+		Vector impulse = new Vector(axis, impulseMagnitude);
+		calculator.linearMomentum.add(impulse);
+		Vector angularChange = inFirstBody.cross(impulse);
+		RotationMatrices.applyTransform3by3(calculator.invFramedMOI, angularChange);
+		calculator.angularVelocity.add(angularChange);
+
+		impulse.multiply(-1D);
+		otherCalculator.linearMomentum.add(impulse);
+		angularChange = inSecondBody.cross(impulse);
+		RotationMatrices.applyTransform3by3(otherCalculator.invFramedMOI, angularChange);
+		otherCalculator.angularVelocity.add(angularChange);
+	}
+
+	public PhysicsObject getParent() {
+		return parent;
 	}
 
 }
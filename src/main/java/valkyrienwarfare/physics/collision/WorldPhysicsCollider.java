@@ -18,11 +18,16 @@ package valkyrienwarfare.physics.collision;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.jackredcreeper.cannon.world.NewExp2;
 
+import gnu.trove.iterator.TLongObjectIterator;
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
@@ -36,10 +41,13 @@ import valkyrienwarfare.api.RotationMatrices;
 import valkyrienwarfare.api.Vector;
 import valkyrienwarfare.mod.physmanagement.relocation.SpatialDetector;
 import valkyrienwarfare.physics.calculations.PhysicsCalculations;
+import valkyrienwarfare.physics.collision.optimization.CollisionContactBuffer;
 import valkyrienwarfare.physics.collision.optimization.IBitOctree;
 import valkyrienwarfare.physics.collision.optimization.IBitOctreeProvider;
+import valkyrienwarfare.physics.collision.optimization.OctreeNodeCuller;
 import valkyrienwarfare.physics.collision.optimization.ShipCollisionTask;
 import valkyrienwarfare.physics.management.PhysicsObject;
+import valkyrienwarfare.physics.management.WorldPhysObjectManager;
 
 // A manager used to process collisions between ships and the game world
 public class WorldPhysicsCollider {
@@ -66,6 +74,16 @@ public class WorldPhysicsCollider {
     public static final double COLLISION_TASK_SHUFFLE_FREQUENCY = .50D;
     // Greater coefficients result in more friction
     public static final double KINETIC_FRICTION_COEFFICIENT = .1D;
+    // If true, the solid blocks of every world section in the swept bounding box
+    // are kept between cache updates, and a section is only read from the world
+    // again when it enters the swept bounding box or a block in it changes. The
+    // test against the ship is still done on every update. If false then every
+    // section is read from the world on every update.
+    public static final boolean USE_INCREMENTAL_CACHE = true;
+    // If true, whole octree nodes are tested against the ship's local block bounds
+    // before their children are checked, so solid terrain far from the hull is
+    // skipped without looking at every block in it.
+    public static final boolean USE_OCTREE_NODE_CULLING = true;
     private final MutableBlockPos mutablePos;
     private final Random rand;
     private final Collection<ShipCollisionTask> tasks;
@@ -74,6 +92,19 @@ public class WorldPhysicsCollider {
     private final PhysicsObject parent;
     private final TIntArrayList cachedPotentialHits;
     private final TIntArrayList cachedHitsToRemove;
+    private final TLongObjectMap<CachedSection> cachedSections;
+    // Sections changed by world block updates, waiting to be rescanned
+    private final Queue<Long> invalidatedSections;
+    // The area covered by the last cache update
+    private volatile int cachedRegionMinX, cachedRegionMinY, cachedRegionMinZ;
+    private volatile int cachedRegionMaxX, cachedRegionMaxY, cachedRegionMaxZ;
+    // Reused by processCollisionTask() for every contact
+    private final Vector contactAxis;
+    private final Vector contactResponse;
+    private final Vector contactInBody;
+    private final Vector contactVelocity;
+    // Set up by updatePotentialCollisionCache() for the current position of the ship
+    private final OctreeNodeCuller nodeCuller;
     // Ensures this always updates the first tick after creation
     private double ticksSinceCacheUpdate;
     private boolean updateCollisionTasksCache;
@@ -85,6 +116,13 @@ public class WorldPhysicsCollider {
         this.worldObj = parent.worldObj;
         this.cachedPotentialHits = new TIntArrayList();
         this.cachedHitsToRemove = new TIntArrayList();
+        this.cachedSections = new TLongObjectHashMap<CachedSection>();
+        this.invalidatedSections = new ConcurrentLinkedQueue<Long>();
+        this.nodeCuller = new OctreeNodeCuller();
+        this.contactAxis = new Vector();
+        this.contactResponse = new Vector();
+        this.contactInBody = new Vector();
+        this.contactVelocity = new Vector();
         this.rand = new Random();
         this.mutablePos = new MutableBlockPos();
         this.tasks = new ArrayList<ShipCollisionTask>();
@@ -131,16 +169,41 @@ public class WorldPhysicsCollider {
     }
 
     public void processCollisionTask(ShipCollisionTask task) {
-        MutableBlockPos inWorldPos = new MutableBlockPos();
-        MutableBlockPos inLocalPos = new MutableBlockPos();
-
-        for (CollisionInformationHolder info : task.getCollisionInformationGenerated()) {
-            inWorldPos.setPos(info.inWorldX, info.inWorldY, info.inWorldZ);
-            inLocalPos.setPos(info.inLocalX, info.inLocalY, info.inLocalZ);
-            handleActualCollision(info.collider, inWorldPos, inLocalPos, info.inWorldState, info.inLocalState);
+        CollisionContactBuffer contacts = task.getContacts();
+        if (contacts.size() > 0) {
+            calculator.markContact();
+        }
+        for (int i = 0; i < contacts.size(); i++) {
+            handleActualCollision(contacts, i);
         }
 
-        task.getCollisionInformationGenerated().clear();
+        contacts.clear();
+    }
+
+    // The same as the PhysPolygonCollider version below, except the response axis
+    // and points of collision were already picked by the collision task
+    private void handleActualCollision(CollisionContactBuffer contacts, int contactIndex) {
+        contacts.getAxis(contactIndex, contactAxis);
+        contactResponse.X = contactAxis.X * contacts.getPenetrationDistance(contactIndex);
+        contactResponse.Y = contactAxis.Y * contacts.getPenetrationDistance(contactIndex);
+        contactResponse.Z = contactAxis.Z * contacts.getPenetrationDistance(contactIndex);
+
+        // Two points of collision, so each gets half of the impulse
+        double impulseApplied = .5D;
+
+        contacts.getFirstContactPoint(contactIndex, contactInBody);
+        applyContactImpulse(impulseApplied);
+        contacts.getSecondContactPoint(contactIndex, contactInBody);
+        applyContactImpulse(impulseApplied);
+    }
+
+    // Expects contactInBody to hold the point of collision in world coordinates
+    private void applyContactImpulse(double impulseApplied) {
+        contactInBody.subtract(parent.wrapper.posX, parent.wrapper.posY, parent.wrapper.posZ);
+        contactInBody.multiply(-1D);
+        calculator.setVectorToVelocityAtPoint(contactInBody, contactVelocity);
+        calculateCollisionImpulseForce(contactInBody, contactVelocity, contactAxis, contactResponse, false, false,
+                impulseApplied);
     }
 
     // Runs through the cache ArrayList, checking each possible BlockPos for SOLID
@@ -425,8 +488,13 @@ public class WorldPhysicsCollider {
         }
         // Resets the potential hits array in O(1) time! Isn't that something.
         cachedPotentialHits.resetQuick();
+        nodeCuller.update(parent.coordTransform.wToLTransform,
+                USE_OCTREE_NODE_CULLING ? parent.getBlockBoundingBoxInLocal() : null, parent.centerCoord,
+                calculator.linearMomentum.length() * calculator.getInvMass(), calculator.angularVelocity.length(),
+                calculator.getPhysicsTimeDeltaPerGameTick());
         // Ship is outside of world blockSpace, just skip this all together
         if (collisionBB.maxY < 0 || collisionBB.minY > 255) {
+            cachedSections.clear();
             return;
         }
 
@@ -434,15 +502,6 @@ public class WorldPhysicsCollider {
         // falling through the floor
         BlockPos min = new BlockPos(collisionBB.minX, Math.max(collisionBB.minY - 1, 0), collisionBB.minZ);
         BlockPos max = new BlockPos(collisionBB.maxX, Math.min(collisionBB.maxY, 255), collisionBB.maxZ);
-        centerPotentialHit = new BlockPos((min.getX() + max.getX()) / 2D, (min.getY() + max.getY()) / 2D,
-                (min.getZ() + max.getZ()) / 2D);
-
-        // Used to prevent jvm creating extra objects it doesnt need.
-        Vector temp1 = new Vector();
-        Vector temp2 = new Vector();
-        Vector temp3 = new Vector();
-
-        ChunkCache cache = parent.surroundingWorldChunksCache;
 
         int chunkMinX = min.getX() >> 4;
         int chunkMaxX = (max.getX() >> 4) + 1;
@@ -450,98 +509,40 @@ public class WorldPhysicsCollider {
         int storageMaxY = (max.getY() >> 4) + 1;
         int chunkMinZ = min.getZ() >> 4;
         int chunkMaxZ = (max.getZ() >> 4) + 1;
+
+        cachedRegionMinX = chunkMinX << 4;
+        cachedRegionMinY = storageMinY << 4;
+        cachedRegionMinZ = chunkMinZ << 4;
+        cachedRegionMaxX = chunkMaxX << 4;
+        cachedRegionMaxY = storageMaxY << 4;
+        cachedRegionMaxZ = chunkMaxZ << 4;
+        WorldPhysObjectManager worldPhysicsManager = parent.getWorldPhysicsManager();
+        if (worldPhysicsManager != null) {
+            worldPhysicsManager.onCollisionCacheRegionChanged(parent.wrapper, new AxisAlignedBB(cachedRegionMinX,
+                    cachedRegionMinY, cachedRegionMinZ, cachedRegionMaxX, cachedRegionMaxY, cachedRegionMaxZ));
+        }
+
+        centerPotentialHit = new BlockPos((min.getX() + max.getX()) / 2D, (min.getY() + max.getY()) / 2D,
+                (min.getZ() + max.getZ()) / 2D);
+
+        if (USE_INCREMENTAL_CACHE) {
+            updatePotentialCollisionCacheIncrementally(chunkMinX, chunkMaxX, storageMinY, storageMaxY, chunkMinZ,
+                    chunkMaxZ);
+            return;
+        }
+
+        ChunkCache cache = parent.surroundingWorldChunksCache;
         // long startTime = System.nanoTime();
 
         for (int chunkX = chunkMinX; chunkX < chunkMaxX; chunkX++) {
             for (int chunkZ = chunkMinZ; chunkZ < chunkMaxZ; chunkZ++) {
-                int arrayChunkX = chunkX - cache.chunkX;
-                int arrayChunkZ = chunkZ - cache.chunkZ;
-
-                if (!(arrayChunkX < 0 || arrayChunkZ < 0 || arrayChunkX > cache.chunkArray.length - 1
-                        || arrayChunkZ > cache.chunkArray[0].length - 1)) {
-                    Chunk chunk = cache.chunkArray[arrayChunkX][arrayChunkZ];
+                Chunk chunk = getCachedChunk(cache, chunkX, chunkZ);
+                if (chunk != null) {
                     for (int storageY = storageMinY; storageY < storageMaxY; storageY++) {
                         ExtendedBlockStorage extendedblockstorage = chunk.storageArrays[storageY];
                         if (extendedblockstorage != null) {
-                            int minStorageX = chunkX << 4;
-                            int minStorageY = storageY << 4;
-                            int minStorageZ = chunkZ << 4;
-
-                            int maxStorageX = minStorageX + 16;
-                            int maxStorageY = minStorageY + 16;
-                            int maxStorageZ = minStorageZ + 16;
-
-                            IBitOctreeProvider provider = IBitOctreeProvider.class.cast(extendedblockstorage.data);
-                            IBitOctree octree = provider.getBitOctree();
-
-                            if (USE_OCTREE_COLLISION) {
-                                for (int levelThree = 0; levelThree < 8; levelThree++) {
-                                    int levelThreeIndex = octree.getOctreeLevelThreeIndex(levelThree);
-                                    if (octree.getAtIndex(levelThreeIndex)) {
-                                        for (int levelTwo = 0; levelTwo < 8; levelTwo++) {
-                                            int levelTwoIndex = octree.getOctreeLevelTwoIndex(levelThreeIndex,
-                                                    levelTwo);
-                                            if (octree.getAtIndex(levelTwoIndex)) {
-                                                for (int levelOne = 0; levelOne < 8; levelOne++) {
-                                                    int levelOneIndex = octree.getOctreeLevelOneIndex(levelTwoIndex,
-                                                            levelOne);
-                                                    if (octree.getAtIndex(levelOneIndex)) {
-                                                        
-                                                        int baseX = ((levelThree % 2) * 8) + ((levelTwo % 2) * 4)
-                                                                + ((levelOne % 2) * 2);
-                                                        int baseY = (((levelThree >> 1) % 2) * 8)
-                                                                + (((levelTwo >> 1) % 2) * 4)
-                                                                + (((levelOne >> 1) % 2) * 2);
-                                                        int baseZ = (((levelThree >> 2) % 2) * 8)
-                                                                + (((levelTwo >> 2) % 2) * 4)
-                                                                + (((levelOne >> 2) % 2) * 2);
-                                                        // Don't run the checks for anything out of range
-                                                        // if (true || baseX >= mmX && baseX <= mxX && baseY >= mmY &&
-                                                        // baseY <= mxY &&
-                                                        // baseZ >= mmZ
-                                                        // && baseZ <= mxZ) {
-                                                        checkForCollision(baseX + minStorageX, baseY + minStorageY,
-                                                                baseZ + minStorageZ, extendedblockstorage, octree,
-                                                                temp1, temp2, temp3);
-                                                        checkForCollision(baseX + minStorageX, baseY + minStorageY,
-                                                                baseZ + minStorageZ + 1, extendedblockstorage, octree,
-                                                                temp1, temp2, temp3);
-                                                        checkForCollision(baseX + minStorageX, baseY + minStorageY + 1,
-                                                                baseZ + minStorageZ, extendedblockstorage, octree,
-                                                                temp1, temp2, temp3);
-                                                        checkForCollision(baseX + minStorageX, baseY + minStorageY + 1,
-                                                                baseZ + minStorageZ + 1, extendedblockstorage, octree,
-                                                                temp1, temp2, temp3);
-
-                                                        checkForCollision(baseX + minStorageX + 1, baseY + minStorageY,
-                                                                baseZ + minStorageZ, extendedblockstorage, octree,
-                                                                temp1, temp2, temp3);
-                                                        checkForCollision(baseX + minStorageX + 1, baseY + minStorageY,
-                                                                baseZ + minStorageZ + 1, extendedblockstorage, octree,
-                                                                temp1, temp2, temp3);
-                                                        checkForCollision(baseX + minStorageX + 1,
-                                                                baseY + minStorageY + 1, baseZ + minStorageZ,
-                                                                extendedblockstorage, octree, temp1, temp2, temp3);
-                                                        checkForCollision(baseX + minStorageX + 1,
-                                                                baseY + minStorageY + 1, baseZ + minStorageZ + 1,
-                                                                extendedblockstorage, octree, temp1, temp2, temp3);
-                                                        // }
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                            } else {
-                                for (int x = minStorageX; x < maxStorageX; x++) {
-                                    for (int y = minStorageY; y < maxStorageY; y++) {
-                                        for (int z = minStorageZ; z < maxStorageZ; z++) {
-                                            checkForCollision(x, y, z, extendedblockstorage, octree, temp1, temp2,
-                                                    temp3);
-                                        }
-                                    }
-                                }
-                            }
+                            scanStorageForPotentialHits(extendedblockstorage, chunkX, storageY, chunkZ, RANGE_CHECK,
+                                    cachedPotentialHits);
                         }
                     }
                 }
@@ -551,60 +552,212 @@ public class WorldPhysicsCollider {
         }
     }
 
-    private void checkForCollision(int x, int y, int z, ExtendedBlockStorage storage, IBitOctree octree, Vector inLocal,
-            Vector inBody, Vector speedInBody) {
-        if (octree.get(x & 15, y & 15, z & 15)) {
-            inLocal.X = x + .5D;
-            inLocal.Y = y + .5D;
-            inLocal.Z = z + .5D;
-            // TODO: Something
-            parent.coordTransform.fromGlobalToLocal(inLocal);
-
-            inBody.setSubtraction(inLocal, parent.centerCoord);
-            parent.physicsProcessor.setVectorToVelocityAtPoint(inBody, speedInBody);
-            speedInBody.multiply(-parent.physicsProcessor.getPhysicsTimeDeltaPerGameTick());
-
-            int minX, minY, minZ, maxX, maxY, maxZ;
-            if (speedInBody.X > 0) {
-                minX = MathHelper.floor(inLocal.X - RANGE_CHECK);
-                maxX = MathHelper.floor(inLocal.X + RANGE_CHECK + speedInBody.X);
-            } else {
-                minX = MathHelper.floor(inLocal.X - RANGE_CHECK + speedInBody.X);
-                maxX = MathHelper.floor(inLocal.X + RANGE_CHECK);
+    // Only reads the world sections that just entered the swept bounding box, or
+    // that had a block changed since they were last read. The solid blocks of
+    // every other section are taken from the last update, and then all of them
+    // are tested against the current position of the ship.
+    private void updatePotentialCollisionCacheIncrementally(int chunkMinX, int chunkMaxX, int storageMinY,
+            int storageMaxY, int chunkMinZ, int chunkMaxZ) {
+        Long invalidatedSection;
+        while ((invalidatedSection = invalidatedSections.poll()) != null) {
+            cachedSections.remove(invalidatedSection);
+        }
+
+        // Drop the sections that left the swept bounding box
+        TLongObjectIterator<CachedSection> sectionIterator = cachedSections.iterator();
+        while (sectionIterator.hasNext()) {
+            sectionIterator.advance();
+            CachedSection section = sectionIterator.value();
+            if (section.chunkX < chunkMinX || section.chunkX >= chunkMaxX || section.storageY < storageMinY
+                    || section.storageY >= storageMaxY || section.chunkZ < chunkMinZ || section.chunkZ >= chunkMaxZ) {
+                sectionIterator.remove();
             }
+        }
 
-            if (speedInBody.Y > 0) {
-                minY = MathHelper.floor(inLocal.Y - RANGE_CHECK);
-                maxY = MathHelper.floor(inLocal.Y + RANGE_CHECK + speedInBody.Y);
-            } else {
-                minY = MathHelper.floor(inLocal.Y - RANGE_CHECK + speedInBody.Y);
-                maxY = MathHelper.floor(inLocal.Y + RANGE_CHECK);
+        ChunkCache cache = parent.surroundingWorldChunksCache;
+        Vector temp1 = new Vector();
+        Vector temp2 = new Vector();
+        Vector temp3 = new Vector();
+
+        for (int chunkX = chunkMinX; chunkX < chunkMaxX; chunkX++) {
+            for (int chunkZ = chunkMinZ; chunkZ < chunkMaxZ; chunkZ++) {
+                Chunk chunk = getCachedChunk(cache, chunkX, chunkZ);
+                if (chunk != null) {
+                    for (int storageY = storageMinY; storageY < storageMaxY; storageY++) {
+                        long sectionKey = getSectionKey(chunkX, storageY, chunkZ);
+                        CachedSection section = cachedSections.get(sectionKey);
+                        if (section == null) {
+                            section = new CachedSection(chunkX, storageY, chunkZ, chunk.storageArrays[storageY]);
+                            cachedSections.put(sectionKey, section);
+                        }
+                        findPotentialHitsInSection(section, temp1, temp2, temp3, cachedPotentialHits);
+                    }
+                }
             }
+        }
+    }
 
-            if (speedInBody.Z > 0) {
-                minZ = MathHelper.floor(inLocal.Z - RANGE_CHECK);
-                maxZ = MathHelper.floor(inLocal.Z + RANGE_CHECK + speedInBody.Z);
-            } else {
-                minZ = MathHelper.floor(inLocal.Z - RANGE_CHECK + speedInBody.Z);
-                maxZ = MathHelper.floor(inLocal.Z + RANGE_CHECK);
+    // Tests the cached solid blocks of a section against the ship, skipping the
+    // bricks that the node culler rules out
+    private void findPotentialHitsInSection(CachedSection section, Vector temp1, Vector temp2, Vector temp3,
+            TIntArrayList potentialHits) {
+        if (section.isEmpty) {
+            return;
+        }
+        int minStorageX = section.chunkX << 4;
+        int minStorageY = section.storageY << 4;
+        int minStorageZ = section.chunkZ << 4;
+        if (!nodeCuller.canNodeCollide(minStorageX, minStorageY, minStorageZ, 16, RANGE_CHECK)) {
+            return;
+        }
+        for (int brick = 0; brick < 64; brick++) {
+            long word = section.brickWords[brick];
+            if (word != 0) {
+                int brickX = minStorageX + ((brick & 3) << 2);
+                int brickY = minStorageY + (((brick >> 2) & 3) << 2);
+                int brickZ = minStorageZ + ((brick >> 4) << 2);
+                if (nodeCuller.canNodeCollide(brickX, brickY, brickZ, 4, RANGE_CHECK)) {
+                    while (word != 0) {
+                        int bit = Long.numberOfTrailingZeros(word);
+                        checkSolidBlockForCollision(brickX + (bit & 3), brickY + ((bit >> 2) & 3),
+                                brickZ + (bit >> 4), temp1, temp2, temp3, RANGE_CHECK, potentialHits);
+                        word &= word - 1;
+                    }
+                }
             }
-            
-            minY = Math.min(255, Math.max(minY, 0));
-
-            outermostloop: for (int localX = minX; localX < maxX; localX++) {
-                for (int localZ = minZ; localZ < maxZ; localZ++) {
-                    for (int localY = minY; localY < maxY; localY++) {
-                        if (parent.ownsChunk(localX >> 4, localZ >> 4)) {
-                            Chunk chunkIn = parent.VKChunkCache.getChunkAt(localX >> 4, localZ >> 4);
-                            if (chunkIn.storageArrays[localY >> 4] != null) {
-                                IBitOctreeProvider provider = IBitOctreeProvider.class
-                                        .cast(chunkIn.storageArrays[localY >> 4].getData());
-                                IBitOctree octreeInLocal = provider.getBitOctree();
-                                if (octreeInLocal.get(localX & 15, localY & 15, localZ & 15)) {
-                                    int hash = SpatialDetector.getHashWithRespectTo(x, y, z, centerPotentialHit);
-                                    cachedPotentialHits.add(hash);
-                                    break outermostloop;
-                                }
+        }
+    }
+
+    private Chunk getCachedChunk(ChunkCache cache, int chunkX, int chunkZ) {
+        int arrayChunkX = chunkX - cache.chunkX;
+        int arrayChunkZ = chunkZ - cache.chunkZ;
+
+        if (arrayChunkX < 0 || arrayChunkZ < 0 || arrayChunkX > cache.chunkArray.length - 1
+                || arrayChunkZ > cache.chunkArray[0].length - 1) {
+            return null;
+        }
+        return cache.chunkArray[arrayChunkX][arrayChunkZ];
+    }
+
+    /**
+     * Called whenever a block in the world changes, can be called from any
+     * thread. Makes the incremental cache read the section of that block again.
+     *
+     * @param pos
+     */
+    public void onWorldBlockChange(BlockPos pos) {
+        if (USE_INCREMENTAL_CACHE && pos.getX() >= cachedRegionMinX && pos.getX() < cachedRegionMaxX
+                && pos.getY() >= cachedRegionMinY && pos.getY() < cachedRegionMaxY && pos.getZ() >= cachedRegionMinZ
+                && pos.getZ() < cachedRegionMaxZ) {
+            invalidatedSections.add(getSectionKey(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4));
+        }
+    }
+
+    private static long getSectionKey(int chunkX, int storageY, int chunkZ) {
+        return (chunkX & 0x3FFFFFL) | ((chunkZ & 0x3FFFFFL) << 22) | ((long) storageY << 44);
+    }
+
+    private void scanStorageForPotentialHits(ExtendedBlockStorage extendedblockstorage, int chunkX, int storageY,
+            int chunkZ, double rangeCheck, TIntArrayList potentialHits) {
+        // Used to prevent jvm creating extra objects it doesnt need.
+        Vector temp1 = new Vector();
+        Vector temp2 = new Vector();
+        Vector temp3 = new Vector();
+
+        int minStorageX = chunkX << 4;
+        int minStorageY = storageY << 4;
+        int minStorageZ = chunkZ << 4;
+
+        int maxStorageX = minStorageX + 16;
+        int maxStorageY = minStorageY + 16;
+        int maxStorageZ = minStorageZ + 16;
+
+        IBitOctreeProvider provider = IBitOctreeProvider.class.cast(extendedblockstorage.data);
+        IBitOctree octree = provider.getBitOctree();
+
+        if (USE_OCTREE_COLLISION) {
+            nodeCuller.forEachBlockThatCanCollide(octree, minStorageX, minStorageY, minStorageZ, rangeCheck,
+                    (x, y, z) -> checkSolidBlockForCollision(x, y, z, temp1, temp2, temp3, rangeCheck, potentialHits));
+        } else if (nodeCuller.canNodeCollide(minStorageX, minStorageY, minStorageZ, 16, rangeCheck)) {
+            for (int x = minStorageX; x < maxStorageX; x++) {
+                for (int y = minStorageY; y < maxStorageY; y++) {
+                    for (int z = minStorageZ; z < maxStorageZ; z++) {
+                        checkForCollision(x, y, z, octree, temp1, temp2, temp3, rangeCheck, potentialHits);
+                    }
+                }
+            }
+        }
+    }
+
+    private void checkForCollision(int x, int y, int z, IBitOctree octree, Vector inLocal, Vector inBody,
+            Vector speedInBody, double rangeCheck, TIntArrayList potentialHits) {
+        if (octree.get(x & 15, y & 15, z & 15)) {
+            checkSolidBlockForCollision(x, y, z, inLocal, inBody, speedInBody, rangeCheck, potentialHits);
+        }
+    }
+
+    // Adds the solid world block at x, y, z to the potential hits if there are
+    // ship blocks in range of it
+    private void checkSolidBlockForCollision(int x, int y, int z, Vector inLocal, Vector inBody, Vector speedInBody,
+            double rangeCheck, TIntArrayList potentialHits) {
+        inLocal.X = x + .5D;
+        inLocal.Y = y + .5D;
+        inLocal.Z = z + .5D;
+        // TODO: Something
+        parent.coordTransform.fromGlobalToLocal(inLocal);
+
+        inBody.setSubtraction(inLocal, parent.centerCoord);
+        parent.physicsProcessor.setVectorToVelocityAtPoint(inBody, speedInBody);
+        speedInBody.multiply(-parent.physicsProcessor.getPhysicsTimeDeltaPerGameTick());
+
+        int minX, minY, minZ, maxX, maxY, maxZ;
+        if (speedInBody.X > 0) {
+            minX = MathHelper.floor(inLocal.X - rangeCheck);
+            maxX = MathHelper.floor(inLocal.X + rangeCheck + speedInBody.X);
+        } else {
+            minX = MathHelper.floor(inLocal.X - rangeCheck + speedInBody.X);
+            maxX = MathHelper.floor(inLocal.X + rangeCheck);
+        }
+
+        if (speedInBody.Y > 0) {
+            minY = MathHelper.floor(inLocal.Y - rangeCheck);
+            maxY = MathHelper.floor(inLocal.Y + rangeCheck + speedInBody.Y);
+        } else {
+            minY = MathHelper.floor(inLocal.Y - rangeCheck + speedInBody.Y);
+            maxY = MathHelper.floor(inLocal.Y + rangeCheck);
+        }
+
+        if (speedInBody.Z > 0) {
+            minZ = MathHelper.floor(inLocal.Z - rangeCheck);
+            maxZ = MathHelper.floor(inLocal.Z + rangeCheck + speedInBody.Z);
+        } else {
+            minZ = MathHelper.floor(inLocal.Z - rangeCheck + speedInBody.Z);
+            maxZ = MathHelper.floor(inLocal.Z + rangeCheck);
+        }
+        
+        minY = Math.min(255, Math.max(minY, 0));
+        maxY = Math.min(256, maxY);
+        if (minX >= maxX || minY >= maxY || minZ >= maxZ) {
+            return;
+        }
+
+        // Checks the box [min, max) one ship section at a time, letting the octree
+        // skip empty space instead of testing each block
+        for (int chunkX = minX >> 4; chunkX <= (maxX - 1) >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= (maxZ - 1) >> 4; chunkZ++) {
+                if (parent.ownsChunk(chunkX, chunkZ)) {
+                    Chunk chunkIn = parent.VKChunkCache.getChunkAt(chunkX, chunkZ);
+                    for (int storageY = minY >> 4; storageY <= (maxY - 1) >> 4; storageY++) {
+                        if (chunkIn.storageArrays[storageY] != null) {
+                            IBitOctreeProvider provider = IBitOctreeProvider.class
+                                    .cast(chunkIn.storageArrays[storageY].getData());
+                            IBitOctree octreeInLocal = provider.getBitOctree();
+                            if (!octreeInLocal.isRegionEmpty(minX - (chunkX << 4), minY - (storageY << 4),
+                                    minZ - (chunkZ << 4), maxX - 1 - (chunkX << 4), maxY - 1 - (storageY << 4),
+                                    maxZ - 1 - (chunkZ << 4))) {
+                                int hash = SpatialDetector.getHashWithRespectTo(x, y, z, centerPotentialHit);
+                                potentialHits.add(hash);
+                                return;
                             }
                         }
                     }
@@ -629,4 +782,29 @@ public class WorldPhysicsCollider {
         return parent;
     }
 
+    // The solid blocks of a world section. Doesn't depend on where the ship is, so
+    // it stays valid until a block in the section changes.
+    private static class CachedSection {
+        final int chunkX, storageY, chunkZ;
+        // One word for every 4x4x4 brick of the section, brick (x, y, z) is at
+        // index x + 4y + 16z and block (x, y, z) of a brick is bit x + 4y + 16z
+        final long[] brickWords;
+        final boolean isEmpty;
+
+        CachedSection(int chunkX, int storageY, int chunkZ, ExtendedBlockStorage storage) {
+            this.chunkX = chunkX;
+            this.storageY = storageY;
+            this.chunkZ = chunkZ;
+            this.brickWords = new long[64];
+            if (storage != null) {
+                IBitOctree octree = IBitOctreeProvider.class.cast(storage.getData()).getBitOctree();
+                octree.forEachSetBit((x, y, z) -> brickWords[(x >> 2) | ((y >> 2) << 2) | ((z >> 2) << 4)]
+                        |= 1L << ((x & 3) | ((y & 3) << 2) | ((z & 3) << 4)));
+                this.isEmpty = octree.getBlockCount() == 0;
+            } else {
+                this.isEmpty = true;
+            }
+        }
+    }
+
 }
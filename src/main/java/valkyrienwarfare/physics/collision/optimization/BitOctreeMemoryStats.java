@@ -0,0 +1,104 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package valkyrienwarfare.physics.collision.optimization;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+
+/**
+ * Keeps track of how much memory block storage octrees are using. The counters
+ * cover every octree materialized and released since startup. Octrees in
+ * unloaded chunks are never released, so countLoadedOctrees() is used to get
+ * what is actually resident.
+ */
+public class BitOctreeMemoryStats {
+
+    private static final LongAdder MATERIALIZED_OCTREES = new LongAdder();
+    private static final LongAdder MATERIALIZED_BYTES = new LongAdder();
+    private static final LongAdder RELEASED_OCTREES = new LongAdder();
+    private static final LongAdder RELEASED_BYTES = new LongAdder();
+
+    public static void onOctreeMaterialized(IBitOctree octree) {
+        MATERIALIZED_OCTREES.increment();
+        MATERIALIZED_BYTES.add(getEstimatedBytes(octree));
+    }
+
+    public static void onOctreeReleased(IBitOctree octree) {
+        RELEASED_OCTREES.increment();
+        RELEASED_BYTES.add(getEstimatedBytes(octree));
+    }
+
+    public static long getMaterializedOctrees() {
+        return MATERIALIZED_OCTREES.sum();
+    }
+
+    public static long getMaterializedBytes() {
+        return MATERIALIZED_BYTES.sum();
+    }
+
+    public static long getReleasedOctrees() {
+        return RELEASED_OCTREES.sum();
+    }
+
+    public static long getReleasedBytes() {
+        return RELEASED_BYTES.sum();
+    }
+
+    /**
+     * Counts the octrees of every loaded section in the world, must be called
+     * from the thread that owns it.
+     *
+     * @return {uniform sections, materialized sections, estimated bytes used by
+     *         the materialized ones}
+     */
+    public static long[] countLoadedOctrees(WorldServer world) {
+        long[] counts = new long[3];
+        for (Chunk chunk : world.getChunkProvider().getLoadedChunks()) {
+            for (ExtendedBlockStorage storage : chunk.getBlockStorageArray()) {
+                if (storage != null) {
+                    IBitOctree octree = IBitOctreeProvider.class.cast(storage.getData()).getBitOctree();
+                    if (octree instanceof UniformBitOctree) {
+                        counts[0]++;
+                    } else {
+                        counts[1]++;
+                        counts[2] += getEstimatedBytes(octree);
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+    // Rough heap size of an octree, including object headers
+    public static int getEstimatedBytes(IBitOctree octree) {
+        if (octree instanceof UniformBitOctree) {
+            return 0;
+        }
+        if (octree instanceof MortonBitOctree) {
+            return 16 + 16 + (IBitOctree.BLOCKS_TOTAL / 8);
+        }
+        // SimpleBitOctree, either a boolean per bit or an int per 32 bits
+        if (octree instanceof SimpleBitOctree && ((SimpleBitOctree) octree).usesSingleBitEntries()) {
+            return 16 + 16 + 16 + IBitOctree.BITS_TOTAL;
+        }
+        return 16 + 16 + 16 + ((IBitOctree.BITS_TOTAL >> 5) * 4);
+    }
+}
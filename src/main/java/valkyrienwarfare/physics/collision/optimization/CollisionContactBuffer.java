@@ -0,0 +1,167 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package valkyrienwarfare.physics.collision.optimization;
+
+import java.util.Arrays;
+
+import valkyrienwarfare.api.Vector;
+
+/**
+ * A reusable list of the contacts found between a ship and the world, stored as
+ * parallel primitive arrays so that filling it doesn't create any objects once
+ * the arrays have grown large enough.
+ */
+public class CollisionContactBuffer {
+
+	private static final int INITIAL_CAPACITY = 16;
+	private int size;
+	// 3 ints per contact
+	private int[] inWorldPositions;
+	private int[] inLocalPositions;
+	// 3 doubles per contact
+	private double[] axes;
+	private double[] shipBlockCenters;
+	private double[] firstContactPoints;
+	private double[] secondContactPoints;
+	// 1 double per contact
+	private double[] penetrationDistances;
+
+	public CollisionContactBuffer() {
+		this.size = 0;
+		this.inWorldPositions = new int[INITIAL_CAPACITY * 3];
+		this.inLocalPositions = new int[INITIAL_CAPACITY * 3];
+		this.axes = new double[INITIAL_CAPACITY * 3];
+		this.shipBlockCenters = new double[INITIAL_CAPACITY * 3];
+		this.firstContactPoints = new double[INITIAL_CAPACITY * 3];
+		this.secondContactPoints = new double[INITIAL_CAPACITY * 3];
+		this.penetrationDistances = new double[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Adds a new contact and returns its index; the caller is expected to fill in
+	 * the rest of its data with the setters.
+	 */
+	public int addContact(int inWorldX, int inWorldY, int inWorldZ, int inLocalX, int inLocalY, int inLocalZ) {
+		if (size == penetrationDistances.length) {
+			grow();
+		}
+		int index = size++;
+		inWorldPositions[index * 3] = inWorldX;
+		inWorldPositions[index * 3 + 1] = inWorldY;
+		inWorldPositions[index * 3 + 2] = inWorldZ;
+		inLocalPositions[index * 3] = inLocalX;
+		inLocalPositions[index * 3 + 1] = inLocalY;
+		inLocalPositions[index * 3 + 2] = inLocalZ;
+		return index;
+	}
+
+	private void grow() {
+		int newCapacity = penetrationDistances.length * 2;
+		inWorldPositions = Arrays.copyOf(inWorldPositions, newCapacity * 3);
+		inLocalPositions = Arrays.copyOf(inLocalPositions, newCapacity * 3);
+		axes = Arrays.copyOf(axes, newCapacity * 3);
+		shipBlockCenters = Arrays.copyOf(shipBlockCenters, newCapacity * 3);
+		firstContactPoints = Arrays.copyOf(firstContactPoints, newCapacity * 3);
+		secondContactPoints = Arrays.copyOf(secondContactPoints, newCapacity * 3);
+		penetrationDistances = Arrays.copyOf(penetrationDistances, newCapacity);
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void setAxis(int index, double x, double y, double z) {
+		set(axes, index, x, y, z);
+	}
+
+	public void setShipBlockCenter(int index, double x, double y, double z) {
+		set(shipBlockCenters, index, x, y, z);
+	}
+
+	public void setFirstContactPoint(int index, double x, double y, double z) {
+		set(firstContactPoints, index, x, y, z);
+	}
+
+	public void setSecondContactPoint(int index, double x, double y, double z) {
+		set(secondContactPoints, index, x, y, z);
+	}
+
+	public void setPenetrationDistance(int index, double penetrationDistance) {
+		penetrationDistances[index] = penetrationDistance;
+	}
+
+	public void getAxis(int index, Vector toSet) {
+		get(axes, index, toSet);
+	}
+
+	public void getShipBlockCenter(int index, Vector toSet) {
+		get(shipBlockCenters, index, toSet);
+	}
+
+	public void getFirstContactPoint(int index, Vector toSet) {
+		get(firstContactPoints, index, toSet);
+	}
+
+	public void getSecondContactPoint(int index, Vector toSet) {
+		get(secondContactPoints, index, toSet);
+	}
+
+	public double getPenetrationDistance(int index) {
+		return penetrationDistances[index];
+	}
+
+	public int getInWorldX(int index) {
+		return inWorldPositions[index * 3];
+	}
+
+	public int getInWorldY(int index) {
+		return inWorldPositions[index * 3 + 1];
+	}
+
+	public int getInWorldZ(int index) {
+		return inWorldPositions[index * 3 + 2];
+	}
+
+	public int getInLocalX(int index) {
+		return inLocalPositions[index * 3];
+	}
+
+	public int getInLocalY(int index) {
+		return inLocalPositions[index * 3 + 1];
+	}
+
+	public int getInLocalZ(int index) {
+		return inLocalPositions[index * 3 + 2];
+	}
+
+	private static void set(double[] array, int index, double x, double y, double z) {
+		array[index * 3] = x;
+		array[index * 3 + 1] = y;
+		array[index * 3 + 2] = z;
+	}
+
+	private static void get(double[] array, int index, Vector toSet) {
+		toSet.X = array[index * 3];
+		toSet.Y = array[index * 3 + 1];
+		toSet.Z = array[index * 3 + 2];
+	}
+
+}
@@ -0,0 +1,289 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package valkyrienwarfare.physics.collision.optimization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.minecraft.util.math.AxisAlignedBB;
+
+/**
+ * A bounding volume hierarchy over moving objects. Every object is stored with
+ * a fattened copy of its AABB, so it only needs to be reinserted once its real
+ * AABB leaves that box. The tree is kept balanced with the same rotations an
+ * AVL tree uses, so queries stay logarithmic in the number of objects.
+ *
+ * Updates can come from the physics threads while the game thread queries, so
+ * all access is synchronized.
+ *
+ * @param <T>
+ */
+public class DynamicAABBTree<T> {
+
+    // How far past the real AABB the stored AABB extends
+    public static final double AABB_MARGIN = 2D;
+
+    private final Map<T, Node<T>> leafNodes;
+    private Node<T> root;
+
+    public DynamicAABBTree() {
+        this.leafNodes = new HashMap<T, Node<T>>();
+        this.root = null;
+    }
+
+    public synchronized void insert(T object, AxisAlignedBB aabb) {
+        Node<T> leaf = leafNodes.get(object);
+        if (leaf == null) {
+            leaf = new Node<T>(object);
+            leafNodes.put(object, leaf);
+        } else {
+            removeLeaf(leaf);
+        }
+        leaf.aabb = aabb.grow(AABB_MARGIN);
+        insertLeaf(leaf);
+    }
+
+    /**
+     * Moves an object already in the tree to its new AABB. Does nothing if the
+     * object isn't in the tree.
+     *
+     * @return true if the object had to be reinserted
+     */
+    public synchronized boolean update(T object, AxisAlignedBB aabb) {
+        Node<T> leaf = leafNodes.get(object);
+        if (leaf == null || contains(leaf.aabb, aabb)) {
+            return false;
+        }
+        removeLeaf(leaf);
+        leaf.aabb = aabb.grow(AABB_MARGIN);
+        insertLeaf(leaf);
+        return true;
+    }
+
+    public synchronized void remove(T object) {
+        Node<T> leaf = leafNodes.remove(object);
+        if (leaf != null) {
+            removeLeaf(leaf);
+        }
+    }
+
+    /**
+     * Returns every object whose fattened AABB intersects the given one. Callers
+     * that need exact results should test the real AABBs of the returned objects.
+     */
+    public synchronized List<T> query(AxisAlignedBB toCheck) {
+        List<T> results = new ArrayList<T>();
+        if (root != null) {
+            query(root, toCheck, results);
+        }
+        return results;
+    }
+
+    public synchronized int size() {
+        return leafNodes.size();
+    }
+
+    private void query(Node<T> node, AxisAlignedBB toCheck, List<T> results) {
+        if (!node.aabb.intersects(toCheck)) {
+            return;
+        }
+        if (node.isLeaf()) {
+            results.add(node.object);
+        } else {
+            query(node.child1, toCheck, results);
+            query(node.child2, toCheck, results);
+        }
+    }
+
+    private void insertLeaf(Node<T> leaf) {
+        if (root == null) {
+            root = leaf;
+            leaf.parent = null;
+            return;
+        }
+
+        // Walk down the tree picking the child that grows the least in surface area
+        Node<T> sibling = root;
+        while (!sibling.isLeaf()) {
+            double area = surfaceArea(sibling.aabb);
+            double combinedArea = surfaceArea(sibling.aabb.union(leaf.aabb));
+            // Cost of making a new parent for this node and the leaf
+            double cost = 2D * combinedArea;
+            // Minimum cost pushed down to the children by descending
+            double inheritanceCost = 2D * (combinedArea - area);
+
+            double cost1 = descendCost(sibling.child1, leaf.aabb) + inheritanceCost;
+            double cost2 = descendCost(sibling.child2, leaf.aabb) + inheritanceCost;
+
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            sibling = cost1 < cost2 ? sibling.child1 : sibling.child2;
+        }
+
+        Node<T> oldParent = sibling.parent;
+        Node<T> newParent = new Node<T>(null);
+        newParent.parent = oldParent;
+        newParent.aabb = sibling.aabb.union(leaf.aabb);
+        newParent.height = sibling.height + 1;
+        newParent.child1 = sibling;
+        newParent.child2 = leaf;
+        sibling.parent = newParent;
+        leaf.parent = newParent;
+
+        if (oldParent == null) {
+            root = newParent;
+        } else if (oldParent.child1 == sibling) {
+            oldParent.child1 = newParent;
+        } else {
+            oldParent.child2 = newParent;
+        }
+
+        refit(leaf.parent);
+    }
+
+    private void removeLeaf(Node<T> leaf) {
+        if (leaf == root) {
+            root = null;
+            return;
+        }
+
+        Node<T> parent = leaf.parent;
+        Node<T> grandParent = parent.parent;
+        Node<T> sibling = parent.child1 == leaf ? parent.child2 : parent.child1;
+
+        if (grandParent == null) {
+            root = sibling;
+            sibling.parent = null;
+        } else {
+            if (grandParent.child1 == parent) {
+                grandParent.child1 = sibling;
+            } else {
+                grandParent.child2 = sibling;
+            }
+            sibling.parent = grandParent;
+            refit(grandParent);
+        }
+        leaf.parent = null;
+    }
+
+    // Rebalances and recalculates the AABBs of every node from this one up to the root
+    private void refit(Node<T> node) {
+        while (node != null) {
+            node = balance(node);
+            node.height = 1 + Math.max(node.child1.height, node.child2.height);
+            node.aabb = node.child1.aabb.union(node.child2.aabb);
+            node = node.parent;
+        }
+    }
+
+    // Rotates the taller grandchild of a into a's position if a is unbalanced,
+    // returns the node now in a's position
+    private Node<T> balance(Node<T> a) {
+        if (a.isLeaf() || a.height < 2) {
+            return a;
+        }
+        Node<T> b = a.child1;
+        Node<T> c = a.child2;
+        int balance = c.height - b.height;
+
+        if (balance > 1) {
+            rotateUp(a, c, b, false);
+            return c;
+        }
+        if (balance < -1) {
+            rotateUp(a, b, c, true);
+            return b;
+        }
+        return a;
+    }
+
+    // Moves the tall child up to replace a, a keeps the short child and the
+    // shorter of the tall child's children
+    private void rotateUp(Node<T> a, Node<T> tall, Node<T> shortChild, boolean tallIsChild1) {
+        Node<T> f = tall.child1;
+        Node<T> g = tall.child2;
+
+        tall.child1 = a;
+        tall.parent = a.parent;
+        a.parent = tall;
+
+        if (tall.parent == null) {
+            root = tall;
+        } else if (tall.parent.child1 == a) {
+            tall.parent.child1 = tall;
+        } else {
+            tall.parent.child2 = tall;
+        }
+
+        Node<T> kept = f.height > g.height ? f : g;
+        Node<T> moved = kept == f ? g : f;
+
+        tall.child2 = kept;
+        if (tallIsChild1) {
+            a.child1 = moved;
+        } else {
+            a.child2 = moved;
+        }
+        moved.parent = a;
+
+        a.aabb = shortChild.aabb.union(moved.aabb);
+        a.height = 1 + Math.max(shortChild.height, moved.height);
+        tall.aabb = a.aabb.union(kept.aabb);
+        tall.height = 1 + Math.max(a.height, kept.height);
+    }
+
+    private static double descendCost(Node<?> child, AxisAlignedBB toInsert) {
+        double combinedArea = surfaceArea(child.aabb.union(toInsert));
+        if (child.isLeaf()) {
+            return combinedArea;
+        }
+        return combinedArea - surfaceArea(child.aabb);
+    }
+
+    private static double surfaceArea(AxisAlignedBB aabb) {
+        double dx = aabb.maxX - aabb.minX;
+        double dy = aabb.maxY - aabb.minY;
+        double dz = aabb.maxZ - aabb.minZ;
+        return 2D * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private static boolean contains(AxisAlignedBB outer, AxisAlignedBB inner) {
+        return outer.minX <= inner.minX && outer.minY <= inner.minY && outer.minZ <= inner.minZ
+                && outer.maxX >= inner.maxX && outer.maxY >= inner.maxY && outer.maxZ >= inner.maxZ;
+    }
+
+    private static class Node<T> {
+        final T object;
+        AxisAlignedBB aabb;
+        Node<T> parent;
+        Node<T> child1;
+        Node<T> child2;
+        // Leaves have a height of 0
+        int height;
+
+        Node(T object) {
+            this.object = object;
+        }
+
+        boolean isLeaf() {
+            return child1 == null;
+        }
+    }
+}
@@ -35,4 +35,61 @@ public interface IBitOctree {
     int getOctreeLevelTwoIndex(int levelThreeIndex, int offset);
 
     int getOctreeLevelThreeIndex(int offset);
+
+    /**
+     * @return true if no block between the min and max coordinates is set, both
+     *         are inclusive and get clamped to 0-15.
+     */
+    default boolean isRegionEmpty(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        for (int x = Math.max(minX, 0); x <= Math.min(maxX, 15); x++) {
+            for (int y = Math.max(minY, 0); y <= Math.min(maxY, 15); y++) {
+                for (int z = Math.max(minZ, 0); z <= Math.min(maxZ, 15); z++) {
+                    if (get(x, y, z)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calls the consumer with the coordinates of every set block between the min
+     * and max coordinates, both are inclusive and get clamped to 0-15.
+     */
+    default void forEachSetBit(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockConsumer consumer) {
+        for (int x = Math.max(minX, 0); x <= Math.min(maxX, 15); x++) {
+            for (int y = Math.max(minY, 0); y <= Math.min(maxY, 15); y++) {
+                for (int z = Math.max(minZ, 0); z <= Math.min(maxZ, 15); z++) {
+                    if (get(x, y, z)) {
+                        consumer.accept(x, y, z);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls the consumer with the coordinates of every set block.
+     */
+    default void forEachSetBit(BlockConsumer consumer) {
+        forEachSetBit(0, 0, 0, 15, 15, 15, consumer);
+    }
+
+    /**
+     * @return The number of set blocks.
+     */
+    default int getBlockCount() {
+        int count = 0;
+        for (int i = 0; i < BLOCKS_TOTAL; i++) {
+            if (get(i & 15, (i >> 4) & 15, i >> 8)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    interface BlockConsumer {
+        void accept(int x, int y, int z);
+    }
 }
\ No newline at end of file
@@ -19,4 +19,10 @@ package valkyrienwarfare.physics.collision.optimization;
 public interface IBitOctreeProvider {
 
     IBitOctree getBitOctree();
+
+    /**
+     * @return The number of blocks that are neither air nor set in the octree.
+     *         When this is 0 the octree alone tells where every block is.
+     */
+    int getNonSolidBlockCount();
 }
@@ -0,0 +1,213 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package valkyrienwarfare.physics.collision.optimization;
+
+/**
+ * An IBitOctree that stores each 4x4x4 brick of blocks in a single long, with
+ * both the bricks and the bits inside them in Morton (z-order) order. Because
+ * of that every level one node is a byte of a word, every level two node is a
+ * whole word and every level three node is a run of 8 words, so the nodes never
+ * need to be stored or updated separately. Empty space can be skipped a word at
+ * a time.
+ */
+public class MortonBitOctree implements IBitOctree {
+
+    private static final int LEVEL_ONE_START = BLOCKS_TOTAL;
+    private static final int LEVEL_TWO_START = LEVEL_ONE_START + TREE_LEVEL_ONE;
+    private static final int LEVEL_THREE_START = LEVEL_TWO_START + TREE_LEVEL_TWO;
+    // Spreads the 4 bits of a coordinate 3 bits apart
+    private static final int[] SPREAD_BITS = new int[16];
+    // Bits of a brick whose coordinate along an axis is between lo and hi,
+    // indexed by (lo * 4) + hi
+    private static final long[] X_RANGE_MASKS = new long[16];
+    private static final long[] Y_RANGE_MASKS = new long[16];
+    private static final long[] Z_RANGE_MASKS = new long[16];
+
+    static {
+        for (int i = 0; i < 16; i++) {
+            SPREAD_BITS[i] = (i & 1) | ((i & 2) << 2) | ((i & 4) << 4) | ((i & 8) << 6);
+        }
+        for (int bit = 0; bit < 64; bit++) {
+            int x = getMortonX(bit);
+            int y = getMortonY(bit);
+            int z = getMortonZ(bit);
+            for (int lo = 0; lo < 4; lo++) {
+                for (int hi = lo; hi < 4; hi++) {
+                    if (x >= lo && x <= hi) {
+                        X_RANGE_MASKS[(lo * 4) + hi] |= 1L << bit;
+                    }
+                    if (y >= lo && y <= hi) {
+                        Y_RANGE_MASKS[(lo * 4) + hi] |= 1L << bit;
+                    }
+                    if (z >= lo && z <= hi) {
+                        Z_RANGE_MASKS[(lo * 4) + hi] |= 1L << bit;
+                    }
+                }
+            }
+        }
+    }
+
+    private final long[] bricks;
+
+    public MortonBitOctree() {
+        bricks = new long[BLOCKS_TOTAL / 64];
+    }
+
+    @Override
+    public void set(int x, int y, int z, boolean bit) {
+        int index = getMortonIndex(x, y, z);
+        if (bit) {
+            bricks[index >> 6] |= 1L << (index & 63);
+        } else {
+            bricks[index >> 6] &= ~(1L << (index & 63));
+        }
+    }
+
+    @Override
+    public boolean get(int x, int y, int z) {
+        int index = getMortonIndex(x, y, z);
+        return (bricks[index >> 6] & (1L << (index & 63))) != 0;
+    }
+
+    @Override
+    public boolean getAtIndex(int index) {
+        if (index < 0 || index >= BITS_TOTAL) {
+            throw new IllegalArgumentException();
+        }
+        if (index < LEVEL_ONE_START) {
+            return (bricks[index >> 6] & (1L << (index & 63))) != 0;
+        }
+        if (index < LEVEL_TWO_START) {
+            int levelOne = index - LEVEL_ONE_START;
+            return (bricks[levelOne >> 3] & (0xFFL << ((levelOne & 7) * 8))) != 0;
+        }
+        if (index < LEVEL_THREE_START) {
+            return bricks[index - LEVEL_TWO_START] != 0;
+        }
+        int firstBrick = (index - LEVEL_THREE_START) * 8;
+        for (int brick = firstBrick; brick < firstBrick + 8; brick++) {
+            if (bricks[brick] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getOctreeLevelOneIndex(int levelTwoIndex, int offset) {
+        return LEVEL_ONE_START + ((levelTwoIndex - LEVEL_TWO_START) * 8) + offset;
+    }
+
+    @Override
+    public int getOctreeLevelTwoIndex(int levelThreeIndex, int offset) {
+        return LEVEL_TWO_START + ((levelThreeIndex - LEVEL_THREE_START) * 8) + offset;
+    }
+
+    @Override
+    public int getOctreeLevelThreeIndex(int offset) {
+        return LEVEL_THREE_START + offset;
+    }
+
+    @Override
+    public boolean isRegionEmpty(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        minX = Math.max(minX, 0);
+        minY = Math.max(minY, 0);
+        minZ = Math.max(minZ, 0);
+        maxX = Math.min(maxX, 15);
+        maxY = Math.min(maxY, 15);
+        maxZ = Math.min(maxZ, 15);
+        for (int brickX = minX >> 2; brickX <= maxX >> 2; brickX++) {
+            for (int brickY = minY >> 2; brickY <= maxY >> 2; brickY++) {
+                for (int brickZ = minZ >> 2; brickZ <= maxZ >> 2; brickZ++) {
+                    long word = bricks[getMortonIndex(brickX << 2, brickY << 2, brickZ << 2) >> 6];
+                    if (word != 0) {
+                        long mask = X_RANGE_MASKS[getRangeMaskIndex(minX, maxX, brickX)]
+                                & Y_RANGE_MASKS[getRangeMaskIndex(minY, maxY, brickY)]
+                                & Z_RANGE_MASKS[getRangeMaskIndex(minZ, maxZ, brickZ)];
+                        if ((word & mask) != 0) {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void forEachSetBit(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockConsumer consumer) {
+        minX = Math.max(minX, 0);
+        minY = Math.max(minY, 0);
+        minZ = Math.max(minZ, 0);
+        maxX = Math.min(maxX, 15);
+        maxY = Math.min(maxY, 15);
+        maxZ = Math.min(maxZ, 15);
+        for (int brickX = minX >> 2; brickX <= maxX >> 2; brickX++) {
+            for (int brickY = minY >> 2; brickY <= maxY >> 2; brickY++) {
+                for (int brickZ = minZ >> 2; brickZ <= maxZ >> 2; brickZ++) {
+                    int brick = getMortonIndex(brickX << 2, brickY << 2, brickZ << 2) >> 6;
+                    long word = bricks[brick];
+                    if (word != 0) {
+                        word &= X_RANGE_MASKS[getRangeMaskIndex(minX, maxX, brickX)]
+                                & Y_RANGE_MASKS[getRangeMaskIndex(minY, maxY, brickY)]
+                                & Z_RANGE_MASKS[getRangeMaskIndex(minZ, maxZ, brickZ)];
+                        while (word != 0) {
+                            int index = (brick << 6) | Long.numberOfTrailingZeros(word);
+                            consumer.accept(getMortonX(index), getMortonY(index), getMortonZ(index));
+                            word &= word - 1;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getBlockCount() {
+        int count = 0;
+        for (long word : bricks) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    // The part of [min, max] inside of the given brick, relative to that brick
+    private static int getRangeMaskIndex(int min, int max, int brick) {
+        int brickMin = brick << 2;
+        int lo = Math.max(min, brickMin) - brickMin;
+        int hi = Math.min(max, brickMin + 3) - brickMin;
+        return (lo * 4) + hi;
+    }
+
+    private static int getMortonIndex(int x, int y, int z) {
+        return SPREAD_BITS[x & 15] | (SPREAD_BITS[y & 15] << 1) | (SPREAD_BITS[z & 15] << 2);
+    }
+
+    private static int getMortonX(int index) {
+        return (index & 1) | ((index >> 2) & 2) | ((index >> 4) & 4) | ((index >> 6) & 8);
+    }
+
+    private static int getMortonY(int index) {
+        return getMortonX(index >> 1);
+    }
+
+    private static int getMortonZ(int index) {
+        return getMortonX(index >> 2);
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package valkyrienwarfare.physics.collision.optimization;
+
+import net.minecraft.util.math.AxisAlignedBB;
+import valkyrienwarfare.api.Vector;
+
+/**
+ * Skips the octree nodes of world sections that are too far from a ship to hold
+ * any block that could collide with it. Every node is moved into the local
+ * coordinates of the ship, where its bounding box is grown by the range check
+ * and by the furthest any point of it could travel in a tick, and then compared
+ * against the bounding box of the ship's blocks.
+ */
+public class OctreeNodeCuller {
+
+    private double[] wToLTransform;
+    // Null if nothing should be culled
+    private AxisAlignedBB blockBBInLocal;
+    private double centerX, centerY, centerZ;
+    private double linearSpeed;
+    private double angularSpeed;
+    private double timeStep;
+
+    /**
+     * Sets up the culler for the current position and speed of a ship.
+     *
+     * @param blockBBInLocal The bounding box of the ship's blocks in local
+     *                       coordinates, if null nothing gets culled.
+     */
+    public void update(double[] wToLTransform, AxisAlignedBB blockBBInLocal, Vector centerCoord, double linearSpeed,
+            double angularSpeed, double timeStep) {
+        this.wToLTransform = wToLTransform;
+        this.blockBBInLocal = blockBBInLocal;
+        this.centerX = centerCoord.X;
+        this.centerY = centerCoord.Y;
+        this.centerZ = centerCoord.Z;
+        this.linearSpeed = linearSpeed;
+        this.angularSpeed = angularSpeed;
+        this.timeStep = timeStep;
+    }
+
+    /**
+     * Calls the consumer with the world coordinates of every set block of the
+     * section that is in a node canNodeCollide() doesn't rule out. The section
+     * and its level three and level two nodes are culled, and then the set
+     * blocks of each remaining 4x4x4 brick are visited with forEachSetBit().
+     */
+    public void forEachBlockThatCanCollide(IBitOctree octree, int minStorageX, int minStorageY, int minStorageZ,
+            double rangeCheck, IBitOctree.BlockConsumer consumer) {
+        if (!canNodeCollide(minStorageX, minStorageY, minStorageZ, 16, rangeCheck)) {
+            return;
+        }
+        IBitOctree.BlockConsumer toWorldCoordinates = (x, y, z) -> consumer.accept(minStorageX + x, minStorageY + y,
+                minStorageZ + z);
+        for (int levelThree = 0; levelThree < 8; levelThree++) {
+            int levelThreeIndex = octree.getOctreeLevelThreeIndex(levelThree);
+            int levelThreeX = minStorageX + ((levelThree % 2) * 8);
+            int levelThreeY = minStorageY + (((levelThree >> 1) % 2) * 8);
+            int levelThreeZ = minStorageZ + (((levelThree >> 2) % 2) * 8);
+            if (octree.getAtIndex(levelThreeIndex)
+                    && canNodeCollide(levelThreeX, levelThreeY, levelThreeZ, 8, rangeCheck)) {
+                for (int levelTwo = 0; levelTwo < 8; levelTwo++) {
+                    int levelTwoIndex = octree.getOctreeLevelTwoIndex(levelThreeIndex, levelTwo);
+                    int levelTwoX = levelThreeX + ((levelTwo % 2) * 4);
+                    int levelTwoY = levelThreeY + (((levelTwo >> 1) % 2) * 4);
+                    int levelTwoZ = levelThreeZ + (((levelTwo >> 2) % 2) * 4);
+                    if (octree.getAtIndex(levelTwoIndex)
+                            && canNodeCollide(levelTwoX, levelTwoY, levelTwoZ, 4, rangeCheck)) {
+                        // A level two node is a 4x4x4 brick, so this only visits its set blocks
+                        int brickX = levelTwoX - minStorageX;
+                        int brickY = levelTwoY - minStorageY;
+                        int brickZ = levelTwoZ - minStorageZ;
+                        octree.forEachSetBit(brickX, brickY, brickZ, brickX + 3, brickY + 3, brickZ + 3,
+                                toWorldCoordinates);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Conservative test for whether any block inside the given cube of world
+     * blocks could be within the range check of the ship's blocks by the end of
+     * the tick.
+     *
+     * @return false only if no block in the cube can possibly collide
+     */
+    public boolean canNodeCollide(int minX, int minY, int minZ, int size, double rangeCheck) {
+        AxisAlignedBB blockBB = blockBBInLocal;
+        if (blockBB == null) {
+            return true;
+        }
+        final double[] M = wToLTransform;
+        double halfSize = size / 2D;
+        double nodeCenterX = minX + halfSize;
+        double nodeCenterY = minY + halfSize;
+        double nodeCenterZ = minZ + halfSize;
+
+        double localX = nodeCenterX * M[0] + nodeCenterY * M[1] + nodeCenterZ * M[2] + M[3];
+        double localY = nodeCenterX * M[4] + nodeCenterY * M[5] + nodeCenterZ * M[6] + M[7];
+        double localZ = nodeCenterX * M[8] + nodeCenterY * M[9] + nodeCenterZ * M[10] + M[11];
+
+        // Half extents of the rotated cube along the local axes
+        double extentX = halfSize * (Math.abs(M[0]) + Math.abs(M[1]) + Math.abs(M[2]));
+        double extentY = halfSize * (Math.abs(M[4]) + Math.abs(M[5]) + Math.abs(M[6]));
+        double extentZ = halfSize * (Math.abs(M[8]) + Math.abs(M[9]) + Math.abs(M[10]));
+
+        double bodyX = localX - centerX;
+        double bodyY = localY - centerY;
+        double bodyZ = localZ - centerZ;
+        double maxDistanceFromCenter = Math.sqrt(bodyX * bodyX + bodyY * bodyY + bodyZ * bodyZ)
+                + Math.sqrt(extentX * extentX + extentY * extentY + extentZ * extentZ);
+        double maxTravel = timeStep * (linearSpeed + angularSpeed * maxDistanceFromCenter);
+        // The extra 1 accounts for the collider flooring block positions
+        double margin = rangeCheck + maxTravel + 1D;
+
+        return localX + extentX + margin > blockBB.minX && localX - extentX - margin < blockBB.maxX
+                && localY + extentY + margin > blockBB.minY && localY - extentY - margin < blockBB.maxY
+                && localZ + extentZ + margin > blockBB.minZ && localZ - extentZ - margin < blockBB.maxZ;
+    }
+
+}
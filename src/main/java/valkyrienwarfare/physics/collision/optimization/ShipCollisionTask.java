@@ -16,23 +16,24 @@
 
 package valkyrienwarfare.physics.collision.optimization;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.Callable;
 
-import net.minecraft.block.state.IBlockState;
-import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos.MutableBlockPos;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.chunk.Chunk;
 import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
 import valkyrienwarfare.api.Vector;
 import valkyrienwarfare.mod.physmanagement.relocation.SpatialDetector;
-import valkyrienwarfare.physics.collision.CollisionInformationHolder;
-import valkyrienwarfare.physics.collision.PhysPolygonCollider;
-import valkyrienwarfare.physics.collision.Polygon;
+import valkyrienwarfare.physics.calculations.PhysicsCalculations;
 import valkyrienwarfare.physics.collision.WorldPhysicsCollider;
+import valkyrienwarfare.physics.management.PhysicsObject;
 
+/**
+ * Tests a slice of the potential collision cache of a WorldPhysicsCollider.
+ * Tasks are kept around until the collision cache changes, and every buffer
+ * they use is reused between physics ticks, so running one doesn't create any
+ * garbage.
+ */
 public class ShipCollisionTask implements Callable<Void> {
 
 	public final static int MAX_TASKS_TO_CHECK = 45;
@@ -40,32 +41,28 @@ public class ShipCollisionTask implements Callable<Void> {
 	private final int taskStartIndex;
 	private final int tasksToCheck;
 	private final MutableBlockPos mutablePos;
-	private final MutableBlockPos inLocalPos;
 	private final Vector inWorld;
-	private final List<CollisionInformationHolder> collisionInformationGenerated;
-	private IBlockState inWorldState;
-	// public TIntArrayList foundPairs = new TIntArrayList();
+	private final UnitCubeCollider collider;
+	private final CollisionContactBuffer contacts;
 
 	public ShipCollisionTask(WorldPhysicsCollider toTask, int taskStartIndex) {
 		this.taskStartIndex = taskStartIndex;
 		this.toTask = toTask;
 		this.mutablePos = new MutableBlockPos();
-		this.inLocalPos = new MutableBlockPos();
 		this.inWorld = new Vector();
-		this.collisionInformationGenerated = new ArrayList<>();
-		this.inWorldState = null;
+		this.collider = new UnitCubeCollider();
+		this.contacts = new CollisionContactBuffer();
 
 		int size = toTask.getCachedPotentialHitSize();
-		if (taskStartIndex + MAX_TASKS_TO_CHECK > size + 1) {
-			tasksToCheck = size + 1 - taskStartIndex;
-		} else {
-			tasksToCheck = MAX_TASKS_TO_CHECK;
-		}
+		tasksToCheck = Math.min(MAX_TASKS_TO_CHECK, size - taskStartIndex);
 	}
 
 	@Override
 	public Void call() {
-		for (int index = taskStartIndex; index < tasksToCheck + 1; index++) {
+		PhysicsObject parent = toTask.getParent();
+		collider.setShipTransform(parent.coordTransform.lToWTransform, parent.coordTransform.normals);
+		int endIndex = Math.min(taskStartIndex + tasksToCheck, toTask.getCachedPotentialHitSize());
+		for (int index = taskStartIndex; index < endIndex; index++) {
 			int integer = toTask.getCachedPotentialHit(index);
 			processNumber(integer);
 		}
@@ -73,13 +70,12 @@ public class ShipCollisionTask implements Callable<Void> {
 		return null;
 	}
 
-	public List<CollisionInformationHolder> getCollisionInformationGenerated() {
-		return collisionInformationGenerated;
+	public CollisionContactBuffer getContacts() {
+		return contacts;
 	}
 
 	private void processNumber(int integer) {
 		SpatialDetector.setPosWithRespectTo(integer, toTask.getCenterPotentialHit(), mutablePos);
-		inWorldState = toTask.getParent().surroundingWorldChunksCache.getBlockState(mutablePos);
 
 		inWorld.X = mutablePos.getX() + .5;
 		inWorld.Y = mutablePos.getY() + .5;
@@ -92,39 +88,16 @@ public class ShipCollisionTask implements Callable<Void> {
 		int midZ = MathHelper.floor(inWorld.Z + .5D);
 
 		// Check the 27 possible positions
-		checkPosition(midX - 1, midY - 1, midZ - 1, integer);
-		checkPosition(midX - 1, midY - 1, midZ, integer);
-		checkPosition(midX - 1, midY - 1, midZ + 1, integer);
-		checkPosition(midX - 1, midY, midZ - 1, integer);
-		checkPosition(midX - 1, midY, midZ, integer);
-		checkPosition(midX - 1, midY, midZ + 1, integer);
-		checkPosition(midX - 1, midY + 1, midZ - 1, integer);
-		checkPosition(midX - 1, midY + 1, midZ, integer);
-		checkPosition(midX - 1, midY + 1, midZ + 1, integer);
-
-		checkPosition(midX, midY - 1, midZ - 1, integer);
-		checkPosition(midX, midY - 1, midZ, integer);
-		checkPosition(midX, midY - 1, midZ + 1, integer);
-		checkPosition(midX, midY, midZ - 1, integer);
-		checkPosition(midX, midY, midZ, integer);
-		checkPosition(midX, midY, midZ + 1, integer);
-		checkPosition(midX, midY + 1, midZ - 1, integer);
-		checkPosition(midX, midY + 1, midZ, integer);
-		checkPosition(midX, midY + 1, midZ + 1, integer);
-
-		checkPosition(midX + 1, midY - 1, midZ - 1, integer);
-		checkPosition(midX + 1, midY - 1, midZ, integer);
-		checkPosition(midX + 1, midY - 1, midZ + 1, integer);
-		checkPosition(midX + 1, midY, midZ - 1, integer);
-		checkPosition(midX + 1, midY, midZ, integer);
-		checkPosition(midX + 1, midY, midZ + 1, integer);
-		checkPosition(midX + 1, midY + 1, midZ - 1, integer);
-		checkPosition(midX + 1, midY + 1, midZ, integer);
-		checkPosition(midX + 1, midY + 1, midZ + 1, integer);
-
+		for (int x = midX - 1; x <= midX + 1; x++) {
+			for (int y = midY - 1; y <= midY + 1; y++) {
+				for (int z = midZ - 1; z <= midZ + 1; z++) {
+					checkPosition(x, y, z);
+				}
+			}
+		}
 	}
 
-	public void checkPosition(int x, int y, int z, int positionHash) {
+	public void checkPosition(int x, int y, int z) {
 		final Chunk chunkIn = toTask.getParent().VKChunkCache.getChunkAt(x >> 4, z >> 4);
 		y = Math.max(0, Math.min(y, 255));
 
@@ -133,41 +106,23 @@ public class ShipCollisionTask implements Callable<Void> {
 			IBitOctreeProvider provider = IBitOctreeProvider.class.cast(storage.data);
 			IBitOctree octree = provider.getBitOctree();
 
-			if (octree.get(x & 15, y & 15, z & 15)) {
-				IBlockState inLocalState = chunkIn.getBlockState(x, y, z);
-				// Only if you want to stop short
-				// foundPairs.add(positionHash);
-				// foundPairs.add(x);
-				// foundPairs.add(y);
-				// foundPairs.add(z);
-
-				inLocalPos.setPos(x, y, z);
-
-				AxisAlignedBB inLocalBB = new AxisAlignedBB(inLocalPos.getX(), inLocalPos.getY(), inLocalPos.getZ(),
-						inLocalPos.getX() + 1, inLocalPos.getY() + 1, inLocalPos.getZ() + 1);
-				AxisAlignedBB inGlobalBB = new AxisAlignedBB(mutablePos.getX(), mutablePos.getY(), mutablePos.getZ(),
-						mutablePos.getX() + 1, mutablePos.getY() + 1, mutablePos.getZ() + 1);
-
-				// This changes the box bounding box to the real bounding box, not sure if this
-				// is better or worse for this mod
-				// List<AxisAlignedBB> colBB = worldObj.getCollisionBoxes(inLocalBB);
-				// inLocalBB = colBB.get(0);
-
-				Polygon shipInWorld = new Polygon(inLocalBB, toTask.getParent().coordTransform.lToWTransform);
-				Polygon worldPoly = new Polygon(inGlobalBB);
-
-				PhysPolygonCollider collider = new PhysPolygonCollider(shipInWorld, worldPoly,
-						toTask.getParent().coordTransform.normals);
-
-				if (!collider.seperated) {
-					// return handleActualCollision(collider, mutablePos, inLocalPos, inWorldState,
-					// inLocalState);
-					CollisionInformationHolder holder = new CollisionInformationHolder(collider, mutablePos.getX(),
-							mutablePos.getY(), mutablePos.getZ(), inLocalPos.getX(), inLocalPos.getY(),
-							inLocalPos.getZ(), inWorldState, inLocalState);
-
-					collisionInformationGenerated.add(holder);
-				}
+			if (octree.get(x & 15, y & 15, z & 15)
+					&& collider.collide(x, y, z, mutablePos.getX(), mutablePos.getY(), mutablePos.getZ())) {
+				PhysicsObject parent = toTask.getParent();
+				PhysicsCalculations calculations = parent.physicsProcessor;
+				// The velocity of the ship at the center of this block
+				double inBodyX = collider.getShipCenterX() - parent.wrapper.posX;
+				double inBodyY = collider.getShipCenterY() - parent.wrapper.posY;
+				double inBodyZ = collider.getShipCenterZ() - parent.wrapper.posZ;
+				Vector angularVelocity = calculations.angularVelocity;
+				Vector linearMomentum = calculations.linearMomentum;
+				double invMass = calculations.getInvMass();
+				double velocityX = angularVelocity.Y * inBodyZ - angularVelocity.Z * inBodyY + linearMomentum.X * invMass;
+				double velocityY = angularVelocity.Z * inBodyX - angularVelocity.X * inBodyZ + linearMomentum.Y * invMass;
+				double velocityZ = angularVelocity.X * inBodyY - angularVelocity.Y * inBodyX + linearMomentum.Z * invMass;
+
+				int contactIndex = contacts.addContact(mutablePos.getX(), mutablePos.getY(), mutablePos.getZ(), x, y, z);
+				collider.writeContact(contacts, contactIndex, velocityX, velocityY, velocityZ);
 			}
 		}
 	}
@@ -0,0 +1,222 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package valkyrienwarfare.physics.collision.optimization;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.RayTraceResult;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import valkyrienwarfare.physics.management.PhysicsObject;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Ray traces the blocks of a ship in local coordinates using the bit octrees of
+ * its sections, so empty space is skipped a word at a time instead of walking
+ * through it block by block. The octrees only know about solid blocks, so this
+ * can only be used when every section along the ray has no other blocks than
+ * solid ones and air; otherwise canUseOctree() returns false and the vanilla
+ * ray trace has to be used instead. Server side only, the client doesn't fill
+ * the octrees of the sections it receives from the server.
+ */
+public class ShipOctreeRayTracer {
+
+    private final PhysicsObject ship;
+    private final Vec3d start;
+    private final Vec3d end;
+    private final Vec3d direction;
+    // The sections the ray passes through, in the order it enters them
+    private final List<SectionOnRay> sections;
+    private final boolean canUseOctree;
+
+    public ShipOctreeRayTracer(PhysicsObject ship, Vec3d start, Vec3d end) {
+        this.ship = ship;
+        this.start = start;
+        this.end = end;
+        this.direction = end.subtract(start);
+        this.sections = new ArrayList<SectionOnRay>();
+        this.canUseOctree = findSectionsOnRay();
+        sections.sort(Comparator.comparingDouble(section -> section.enterTime));
+    }
+
+    public boolean canUseOctree() {
+        return canUseOctree;
+    }
+
+    /**
+     * Does the same as World.rayTraceBlocks(start, end, stopOnLiquid,
+     * ignoreBlockWithoutBoundingBox, false) for the blocks of the ship. Only
+     * valid when canUseOctree() is true.
+     *
+     * @return The first block hit, or null if the ray didn't hit anything.
+     */
+    public RayTraceResult rayTraceBlocks(World world, boolean stopOnLiquid, boolean ignoreBlockWithoutBoundingBox) {
+        if (!canUseOctree) {
+            throw new IllegalStateException("This ray passes through blocks the octrees don't know about");
+        }
+        double[] interval = new double[2];
+        List<BlockOnRay> blocksOnRay = new ArrayList<BlockOnRay>();
+        for (SectionOnRay section : sections) {
+            int sectionX = section.chunkX << 4;
+            int sectionY = section.storageY << 4;
+            int sectionZ = section.chunkZ << 4;
+            blocksOnRay.clear();
+            section.octree.forEachSetBit(
+                    MathHelper.floor(Math.min(getX(section.enterTime), getX(section.exitTime))) - sectionX,
+                    MathHelper.floor(Math.min(getY(section.enterTime), getY(section.exitTime))) - sectionY,
+                    MathHelper.floor(Math.min(getZ(section.enterTime), getZ(section.exitTime))) - sectionZ,
+                    MathHelper.floor(Math.max(getX(section.enterTime), getX(section.exitTime))) - sectionX,
+                    MathHelper.floor(Math.max(getY(section.enterTime), getY(section.exitTime))) - sectionY,
+                    MathHelper.floor(Math.max(getZ(section.enterTime), getZ(section.exitTime))) - sectionZ,
+                    (x, y, z) -> {
+                        if (clipRay(sectionX + x, sectionY + y, sectionZ + z, sectionX + x + 1, sectionY + y + 1,
+                                sectionZ + z + 1, interval)) {
+                            blocksOnRay.add(new BlockOnRay(new BlockPos(sectionX + x, sectionY + y, sectionZ + z),
+                                    interval[0]));
+                        }
+                    });
+            // Blocks don't overlap, so the first one the ray enters that it hits is
+            // the closest hit
+            blocksOnRay.sort(Comparator.comparingDouble(blockOnRay -> blockOnRay.enterTime));
+            for (BlockOnRay blockOnRay : blocksOnRay) {
+                IBlockState state = world.getBlockState(blockOnRay.pos);
+                if ((!ignoreBlockWithoutBoundingBox
+                        || state.getCollisionBoundingBox(world, blockOnRay.pos) != Block.NULL_AABB)
+                        && state.getBlock().canCollideCheck(state, stopOnLiquid)) {
+                    RayTraceResult result = state.collisionRayTrace(world, blockOnRay.pos, start, end);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean findSectionsOnRay() {
+        double[] interval = new double[2];
+        // Nothing outside of the chunks owned by the ship can be hit
+        if (!clipRay(ship.ownedChunks.minX << 4, 0, ship.ownedChunks.minZ << 4,
+                (ship.ownedChunks.maxX + 1) << 4, 256, (ship.ownedChunks.maxZ + 1) << 4, interval)) {
+            return true;
+        }
+        int minChunkX = MathHelper.floor(Math.min(getX(interval[0]), getX(interval[1]))) >> 4;
+        int minStorageY = MathHelper.floor(Math.min(getY(interval[0]), getY(interval[1]))) >> 4;
+        int minChunkZ = MathHelper.floor(Math.min(getZ(interval[0]), getZ(interval[1]))) >> 4;
+        int maxChunkX = MathHelper.floor(Math.max(getX(interval[0]), getX(interval[1]))) >> 4;
+        int maxStorageY = MathHelper.floor(Math.max(getY(interval[0]), getY(interval[1]))) >> 4;
+        int maxChunkZ = MathHelper.floor(Math.max(getZ(interval[0]), getZ(interval[1]))) >> 4;
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                if (ship.ownsChunk(chunkX, chunkZ)) {
+                    Chunk chunk = ship.VKChunkCache.getChunkAt(chunkX, chunkZ);
+                    for (int storageY = Math.max(minStorageY, 0); storageY <= Math.min(maxStorageY, 15); storageY++) {
+                        ExtendedBlockStorage storage = chunk.storageArrays[storageY];
+                        if (storage != null && clipRay(chunkX << 4, storageY << 4, chunkZ << 4, (chunkX + 1) << 4,
+                                (storageY + 1) << 4, (chunkZ + 1) << 4, interval)) {
+                            IBitOctreeProvider provider = IBitOctreeProvider.class.cast(storage.getData());
+                            if (provider.getNonSolidBlockCount() != 0) {
+                                return false;
+                            }
+                            sections.add(new SectionOnRay(chunkX, storageY, chunkZ, provider.getBitOctree(),
+                                    interval[0], interval[1]));
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private double getX(double time) {
+        return start.x + (direction.x * time);
+    }
+
+    private double getY(double time) {
+        return start.y + (direction.y * time);
+    }
+
+    private double getZ(double time) {
+        return start.z + (direction.z * time);
+    }
+
+    /**
+     * Finds the part of the ray inside of the given box.
+     *
+     * @param interval Gets set to the times the ray enters and exits the box, 0 is
+     *                 the start of the ray and 1 is the end.
+     * @return false if the ray doesn't touch the box.
+     */
+    private boolean clipRay(double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+            double[] interval) {
+        interval[0] = 0;
+        interval[1] = 1;
+        return clipRayAxis(start.x, direction.x, minX, maxX, interval)
+                && clipRayAxis(start.y, direction.y, minY, maxY, interval)
+                && clipRayAxis(start.z, direction.z, minZ, maxZ, interval);
+    }
+
+    private static boolean clipRayAxis(double start, double direction, double min, double max, double[] interval) {
+        if (direction == 0) {
+            return start >= min && start <= max;
+        }
+        double enterTime = (min - start) / direction;
+        double exitTime = (max - start) / direction;
+        if (enterTime > exitTime) {
+            double swap = enterTime;
+            enterTime = exitTime;
+            exitTime = swap;
+        }
+        interval[0] = Math.max(interval[0], enterTime);
+        interval[1] = Math.min(interval[1], exitTime);
+        return interval[0] <= interval[1];
+    }
+
+    private static class SectionOnRay {
+        final int chunkX, storageY, chunkZ;
+        final IBitOctree octree;
+        final double enterTime, exitTime;
+
+        SectionOnRay(int chunkX, int storageY, int chunkZ, IBitOctree octree, double enterTime, double exitTime) {
+            this.chunkX = chunkX;
+            this.storageY = storageY;
+            this.chunkZ = chunkZ;
+            this.octree = octree;
+            this.enterTime = enterTime;
+            this.exitTime = exitTime;
+        }
+    }
+
+    private static class BlockOnRay {
+        final BlockPos pos;
+        final double enterTime;
+
+        BlockOnRay(BlockPos pos, double enterTime) {
+            this.pos = pos;
+            this.enterTime = enterTime;
+        }
+    }
+
+}
@@ -0,0 +1,268 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package valkyrienwarfare.physics.collision.optimization;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import valkyrienwarfare.api.RotationMatrices;
+import valkyrienwarfare.api.Vector;
+import valkyrienwarfare.physics.collision.Polygon;
+import valkyrienwarfare.physics.collision.ShipPhysicsCollider;
+import valkyrienwarfare.physics.management.PhysicsObject;
+
+/**
+ * Finds the colliding blocks between two ships. Only the part of the first ship
+ * inside the overlap of both bounding boxes is searched, and empty octree nodes
+ * are skipped entirely. Each solid block found is moved into the space of the
+ * other ship and tested against the blocks around it there.
+ *
+ * The blocks of the other ship are axis aligned in its own space, so the tests
+ * are done there by a UnitCubeCollider the same way ShipCollisionTask tests
+ * blocks against the world, and only real contacts get written to the contact
+ * buffer.
+ */
+public class ShipPairCollisionTask implements Callable<Void> {
+
+	// Limits on the work done for a single pair of ships every physics tick, so
+	// that large groups of colliding ships can't stall the physics thread
+	public final static int MAX_BLOCK_CHECKS = 2048;
+	public final static int MAX_COLLISIONS = 64;
+	private final ShipPhysicsCollider toTask;
+	private final PhysicsObject other;
+	// Transforms positions in the first ship into positions in the other ship
+	private final double[] localToOtherLocal;
+	private final Vector inOther;
+	private final Vector contactAxis;
+	private final Vector contactPoint;
+	private final UnitCubeCollider collider;
+	// Axes and contact points are in world space, the in world positions hold
+	// the position of the block within the other ship
+	private final CollisionContactBuffer contacts;
+	private int minX, minY, minZ, maxX, maxY, maxZ;
+	private int blockChecks;
+
+	public ShipPairCollisionTask(ShipPhysicsCollider toTask, PhysicsObject other) {
+		this.toTask = toTask;
+		this.other = other;
+		PhysicsObject parent = toTask.getParent();
+		this.localToOtherLocal = new double[16];
+		RotationMatrices.getMatrixProduct(other.coordTransform.wToLTransform, parent.coordTransform.lToWTransform,
+				localToOtherLocal);
+		this.inOther = new Vector();
+		this.contactAxis = new Vector();
+		this.contactPoint = new Vector();
+		this.collider = new UnitCubeCollider();
+		this.contacts = new CollisionContactBuffer();
+		this.blockChecks = 0;
+
+		// The separating axes, moved into the space of the other ship
+		Vector[] axes = parent.coordTransform.getSeperatingAxisWithShip(other);
+		Vector[] axesInOther = new Vector[axes.length];
+		for (int i = 0; i < axes.length; i++) {
+			axesInOther[i] = new Vector(axes[i]);
+			RotationMatrices.applyTransform(other.coordTransform.wToLRotation, axesInOther[i]);
+		}
+		collider.setShipTransform(localToOtherLocal, axesInOther);
+	}
+
+	@Override
+	public Void call() {
+		PhysicsObject parent = toTask.getParent();
+		AxisAlignedBB overlap = parent.getCollisionBoundingBox().grow(ShipPhysicsCollider.AABB_EXPANSION)
+				.intersect(other.getCollisionBoundingBox().grow(ShipPhysicsCollider.AABB_EXPANSION));
+		AxisAlignedBB overlapInLocal = new Polygon(overlap, parent.coordTransform.wToLTransform).getEnclosedAABB();
+
+		minX = MathHelper.floor(overlapInLocal.minX);
+		minY = Math.max(MathHelper.floor(overlapInLocal.minY), 0);
+		minZ = MathHelper.floor(overlapInLocal.minZ);
+		maxX = MathHelper.floor(overlapInLocal.maxX);
+		maxY = Math.min(MathHelper.floor(overlapInLocal.maxY), 255);
+		maxZ = MathHelper.floor(overlapInLocal.maxZ);
+		if (minY > maxY) {
+			return null;
+		}
+
+		int storagesY = (maxY >> 4) - (minY >> 4) + 1;
+		int maxStorages = ((maxX >> 4) - (minX >> 4) + 1) * ((maxZ >> 4) - (minZ >> 4) + 1) * storagesY;
+		ExtendedBlockStorage[] storages = new ExtendedBlockStorage[maxStorages];
+		// 3 ints per storage, the position of its lowest corner
+		int[] storageCorners = new int[maxStorages * 3];
+		int storageCount = 0;
+		for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+			for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+				if (parent.ownsChunk(chunkX, chunkZ)) {
+					Chunk chunk = parent.VKChunkCache.getChunkAt(chunkX, chunkZ);
+					for (int storageY = minY >> 4; storageY <= maxY >> 4; storageY++) {
+						ExtendedBlockStorage storage = chunk.storageArrays[storageY];
+						if (storage != null) {
+							storages[storageCount] = storage;
+							storageCorners[storageCount * 3] = chunkX << 4;
+							storageCorners[storageCount * 3 + 1] = storageY << 4;
+							storageCorners[storageCount * 3 + 2] = chunkZ << 4;
+							storageCount++;
+						}
+					}
+				}
+			}
+		}
+		if (storageCount == 0) {
+			return null;
+		}
+
+		// The search is split into the 8 top level octree nodes of every storage.
+		// It starts at a random one and wraps around, so when a large overlap runs
+		// out of budget a different part of it gets checked next tick instead of
+		// the same corner every time.
+		int nodeCount = storageCount * 8;
+		int startNode = ThreadLocalRandom.current().nextInt(nodeCount);
+		for (int i = 0; i < nodeCount && !isOverBudget(); i++) {
+			int node = (startNode + i) % nodeCount;
+			int storageIndex = node >> 3;
+			ExtendedBlockStorage storage = storages[storageIndex];
+			IBitOctree octree = IBitOctreeProvider.class.cast(storage.data).getBitOctree();
+			checkLevelThreeNode(storage, octree, storageCorners[storageIndex * 3],
+					storageCorners[storageIndex * 3 + 1], storageCorners[storageIndex * 3 + 2], node & 7);
+		}
+		return null;
+	}
+
+	private void checkLevelThreeNode(ExtendedBlockStorage storage, IBitOctree octree, int storageX, int storageY,
+			int storageZ, int levelThree) {
+		int levelThreeIndex = octree.getOctreeLevelThreeIndex(levelThree);
+		int levelThreeX = storageX + ((levelThree % 2) * 8);
+		int levelThreeY = storageY + (((levelThree >> 1) % 2) * 8);
+		int levelThreeZ = storageZ + (((levelThree >> 2) % 2) * 8);
+		if (!octree.getAtIndex(levelThreeIndex) || !isInRange(levelThreeX, levelThreeY, levelThreeZ, 8)) {
+			return;
+		}
+		for (int levelTwo = 0; levelTwo < 8; levelTwo++) {
+			int levelTwoIndex = octree.getOctreeLevelTwoIndex(levelThreeIndex, levelTwo);
+			int levelTwoX = levelThreeX + ((levelTwo % 2) * 4);
+			int levelTwoY = levelThreeY + (((levelTwo >> 1) % 2) * 4);
+			int levelTwoZ = levelThreeZ + (((levelTwo >> 2) % 2) * 4);
+			if (!octree.getAtIndex(levelTwoIndex) || !isInRange(levelTwoX, levelTwoY, levelTwoZ, 4)) {
+				continue;
+			}
+			for (int levelOne = 0; levelOne < 8; levelOne++) {
+				int levelOneIndex = octree.getOctreeLevelOneIndex(levelTwoIndex, levelOne);
+				int baseX = levelTwoX + ((levelOne % 2) * 2);
+				int baseY = levelTwoY + (((levelOne >> 1) % 2) * 2);
+				int baseZ = levelTwoZ + (((levelOne >> 2) % 2) * 2);
+				if (!octree.getAtIndex(levelOneIndex) || !isInRange(baseX, baseY, baseZ, 2)) {
+					continue;
+				}
+				for (int x = baseX; x < baseX + 2; x++) {
+					for (int y = baseY; y < baseY + 2; y++) {
+						for (int z = baseZ; z < baseZ + 2; z++) {
+							if (isInRange(x, y, z, 1) && octree.get(x & 15, y & 15, z & 15)) {
+								checkBlock(x, y, z);
+								if (isOverBudget()) {
+									return;
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	// Returns true if the cube with the given corner and size overlaps the area
+	// being searched
+	private boolean isInRange(int x, int y, int z, int size) {
+		return x <= maxX && x + size > minX && y <= maxY && y + size > minY && z <= maxZ && z + size > minZ;
+	}
+
+	private boolean isOverBudget() {
+		return blockChecks >= MAX_BLOCK_CHECKS || contacts.size() >= MAX_COLLISIONS;
+	}
+
+	// Tests a solid block of the first ship against the blocks around it in the
+	// other ship
+	private void checkBlock(int x, int y, int z) {
+		blockChecks++;
+		inOther.X = x + .5D;
+		inOther.Y = y + .5D;
+		inOther.Z = z + .5D;
+		RotationMatrices.applyTransform(localToOtherLocal, inOther);
+
+		int midX = MathHelper.floor(inOther.X);
+		int midY = MathHelper.floor(inOther.Y);
+		int midZ = MathHelper.floor(inOther.Z);
+
+		for (int otherX = midX - 1; otherX <= midX + 1; otherX++) {
+			for (int otherZ = midZ - 1; otherZ <= midZ + 1; otherZ++) {
+				if (!other.ownsChunk(otherX >> 4, otherZ >> 4)) {
+					continue;
+				}
+				Chunk otherChunk = other.VKChunkCache.getChunkAt(otherX >> 4, otherZ >> 4);
+				for (int otherY = Math.max(midY - 1, 0); otherY <= Math.min(midY + 1, 255); otherY++) {
+					ExtendedBlockStorage otherStorage = otherChunk.storageArrays[otherY >> 4];
+					if (otherStorage != null) {
+						IBitOctree otherOctree = IBitOctreeProvider.class.cast(otherStorage.data).getBitOctree();
+						if (otherOctree.get(otherX & 15, otherY & 15, otherZ & 15)
+								&& collider.collide(x, y, z, otherX, otherY, otherZ)) {
+							addContact(x, y, z, otherX, otherY, otherZ);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	// Writes the last collision found by the collider into the contact buffer,
+	// moved back into world space
+	private void addContact(int x, int y, int z, int otherX, int otherY, int otherZ) {
+		collider.getMinDistanceAxis(contactAxis);
+		// Make the axis point from the other ship into this one
+		double betweenX = collider.getShipCenterX() - (otherX + .5D);
+		double betweenY = collider.getShipCenterY() - (otherY + .5D);
+		double betweenZ = collider.getShipCenterZ() - (otherZ + .5D);
+		if (contactAxis.X * betweenX + contactAxis.Y * betweenY + contactAxis.Z * betweenZ < 0) {
+			contactAxis.multiply(-1D);
+		}
+		RotationMatrices.applyTransform(other.coordTransform.lToWRotation, contactAxis);
+
+		// Halfway between the centers of the two blocks
+		contactPoint.X = (collider.getShipCenterX() + otherX + .5D) / 2D;
+		contactPoint.Y = (collider.getShipCenterY() + otherY + .5D) / 2D;
+		contactPoint.Z = (collider.getShipCenterZ() + otherZ + .5D) / 2D;
+		RotationMatrices.applyTransform(other.coordTransform.lToWTransform, contactPoint);
+
+		int contactIndex = contacts.addContact(otherX, otherY, otherZ, x, y, z);
+		contacts.setAxis(contactIndex, contactAxis.X, contactAxis.Y, contactAxis.Z);
+		contacts.setFirstContactPoint(contactIndex, contactPoint.X, contactPoint.Y, contactPoint.Z);
+	}
+
+	public CollisionContactBuffer getContacts() {
+		return contacts;
+	}
+
+	public ShipPhysicsCollider getToTask() {
+		return toTask;
+	}
+
+	public PhysicsObject getOther() {
+		return other;
+	}
+
+}
@@ -159,6 +159,11 @@ public class SimpleBitOctree implements IBitOctree {
         return getOctreeLevelThreeIndex(x | y | z);
     }
 
+    // True if each entry takes a whole boolean, used for memory accounting
+    boolean usesSingleBitEntries() {
+        return bitbuffer instanceof FastBitSet;
+    }
+
     private int getBlockIndex(int x, int y, int z) {
         return x | (y << 4) | (z << 8);
     }
@@ -0,0 +1,110 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+
+package valkyrienwarfare.physics.collision.optimization;
+
+import valkyrienwarfare.ValkyrienWarfareMod;
+
+/**
+ * A read only IBitOctree where every block is either set or not set. Sections
+ * that are all air or all solid share one of the two instances instead of
+ * keeping a full octree each; materialize() creates a real octree once the
+ * section stops being uniform.
+ */
+public class UniformBitOctree implements IBitOctree {
+
+    public static final UniformBitOctree EMPTY = new UniformBitOctree(false);
+    public static final UniformBitOctree SOLID = new UniformBitOctree(true);
+
+    private final boolean isSolid;
+
+    private UniformBitOctree(boolean isSolid) {
+        this.isSolid = isSolid;
+    }
+
+    /**
+     * @return A new modifiable octree with the same contents as this one.
+     */
+    public IBitOctree materialize() {
+        IBitOctree octree = ValkyrienWarfareMod.mortonBitOctrees ? new MortonBitOctree() : new SimpleBitOctree();
+        if (isSolid) {
+            for (int x = 0; x < 16; x++) {
+                for (int y = 0; y < 16; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        octree.set(x, y, z, true);
+                    }
+                }
+            }
+        }
+        return octree;
+    }
+
+    @Override
+    public void set(int x, int y, int z, boolean bit) {
+        throw new UnsupportedOperationException("Uniform octrees are shared, materialize() them first");
+    }
+
+    @Override
+    public boolean get(int x, int y, int z) {
+        return isSolid;
+    }
+
+    @Override
+    public boolean getAtIndex(int index) {
+        if (index < 0 || index >= BITS_TOTAL) {
+            throw new IllegalArgumentException();
+        }
+        return isSolid;
+    }
+
+    @Override
+    public int getOctreeLevelOneIndex(int levelTwoIndex, int offset) {
+        return levelTwoIndex + offset + 1;
+    }
+
+    @Override
+    public int getOctreeLevelTwoIndex(int levelThreeIndex, int offset) {
+        return levelThreeIndex + (9 * offset) + 1;
+    }
+
+    @Override
+    public int getOctreeLevelThreeIndex(int offset) {
+        return BLOCKS_TOTAL + (73 * offset);
+    }
+
+    @Override
+    public boolean isRegionEmpty(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        if (!isSolid) {
+            return true;
+        }
+        return Math.max(minX, 0) > Math.min(maxX, 15) || Math.max(minY, 0) > Math.min(maxY, 15)
+                || Math.max(minZ, 0) > Math.min(maxZ, 15);
+    }
+
+    @Override
+    public void forEachSetBit(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, BlockConsumer consumer) {
+        if (isSolid) {
+            IBitOctree.super.forEachSetBit(minX, minY, minZ, maxX, maxY, maxZ, consumer);
+        }
+    }
+
+    @Override
+    public int getBlockCount() {
+        return isSolid ? BLOCKS_TOTAL : 0;
+    }
+
+}
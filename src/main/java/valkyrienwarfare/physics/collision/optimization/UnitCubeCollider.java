@@ -0,0 +1,235 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package valkyrienwarfare.physics.collision.optimization;
+
+import valkyrienwarfare.api.Vector;
+import valkyrienwarfare.physics.collision.WorldPhysicsCollider;
+
+/**
+ * Separating axis test between a block of a ship and a block of the world,
+ * specialized for unit cubes. Gives the same results as running a
+ * PhysPolygonCollider over the two block polygons, but works entirely on
+ * primitive arrays that are reused between tests.
+ *
+ * The projection of a cube onto an axis is its center projection plus or minus
+ * a radius that only depends on the axis and the cube rotation, so those radii
+ * are computed once per physics tick in setShipTransform().
+ *
+ * Not thread safe, every collision task has its own instance.
+ */
+public class UnitCubeCollider {
+
+	public static final int AXES_COUNT = 15;
+	private final double[] lToWTransform;
+	// Half of the x, y and z edges of a ship block, in world space
+	private final double[] halfEdges;
+	private final double[] axes;
+	private final double[] shipRadii;
+	private final double[] worldRadii;
+	private final double[] movMaxFixMin;
+	private final double[] movMinFixMax;
+	private final double[] shipCenter;
+	private final double[] worldCenter;
+	private int minDistanceIndex;
+
+	public UnitCubeCollider() {
+		this.lToWTransform = new double[16];
+		this.halfEdges = new double[9];
+		this.axes = new double[AXES_COUNT * 3];
+		this.shipRadii = new double[AXES_COUNT];
+		this.worldRadii = new double[AXES_COUNT];
+		this.movMaxFixMin = new double[AXES_COUNT];
+		this.movMinFixMax = new double[AXES_COUNT];
+		this.shipCenter = new double[3];
+		this.worldCenter = new double[3];
+	}
+
+	/**
+	 * Must be called before testing blocks whenever the ship has moved.
+	 *
+	 * @param lToWTransform
+	 *            the local to world transform of the ship
+	 * @param normals
+	 *            the 15 potential separating axes of the ship and world
+	 */
+	public void setShipTransform(double[] lToWTransform, Vector[] normals) {
+		System.arraycopy(lToWTransform, 0, this.lToWTransform, 0, 16);
+		for (int edge = 0; edge < 3; edge++) {
+			halfEdges[edge * 3] = .5D * lToWTransform[edge];
+			halfEdges[edge * 3 + 1] = .5D * lToWTransform[4 + edge];
+			halfEdges[edge * 3 + 2] = .5D * lToWTransform[8 + edge];
+		}
+		for (int axis = 0; axis < AXES_COUNT; axis++) {
+			Vector normal = normals[axis];
+			axes[axis * 3] = normal.X;
+			axes[axis * 3 + 1] = normal.Y;
+			axes[axis * 3 + 2] = normal.Z;
+			double shipRadius = 0;
+			for (int edge = 0; edge < 3; edge++) {
+				shipRadius += Math.abs(halfEdges[edge * 3] * normal.X + halfEdges[edge * 3 + 1] * normal.Y
+						+ halfEdges[edge * 3 + 2] * normal.Z);
+			}
+			shipRadii[axis] = shipRadius;
+			worldRadii[axis] = .5D * (Math.abs(normal.X) + Math.abs(normal.Y) + Math.abs(normal.Z));
+		}
+	}
+
+	/**
+	 * Tests the ship block at the given local position against the world block at
+	 * the given world position.
+	 *
+	 * @return true if the two blocks are colliding
+	 */
+	public boolean collide(int localX, int localY, int localZ, int worldX, int worldY, int worldZ) {
+		double x = localX + .5D;
+		double y = localY + .5D;
+		double z = localZ + .5D;
+		double[] m = lToWTransform;
+		shipCenter[0] = m[0] * x + m[1] * y + m[2] * z + m[3];
+		shipCenter[1] = m[4] * x + m[5] * y + m[6] * z + m[7];
+		shipCenter[2] = m[8] * x + m[9] * y + m[10] * z + m[11];
+		worldCenter[0] = worldX + .5D;
+		worldCenter[1] = worldY + .5D;
+		worldCenter[2] = worldZ + .5D;
+
+		for (int axis = 0; axis < AXES_COUNT; axis++) {
+			double axisX = axes[axis * 3];
+			double axisY = axes[axis * 3 + 1];
+			double axisZ = axes[axis * 3 + 2];
+			double shipProjection = shipCenter[0] * axisX + shipCenter[1] * axisY + shipCenter[2] * axisZ;
+			double worldProjection = worldCenter[0] * axisX + worldCenter[1] * axisY + worldCenter[2] * axisZ;
+			double maxFixMin = (shipProjection - shipRadii[axis]) - (worldProjection + worldRadii[axis]);
+			double minFixMax = (shipProjection + shipRadii[axis]) - (worldProjection - worldRadii[axis]);
+			if (maxFixMin > 0 || minFixMax < 0) {
+				return false;
+			}
+			movMaxFixMin[axis] = maxFixMin;
+			movMinFixMax[axis] = minFixMax;
+		}
+
+		// Take the collision response closest to 0
+		double minDistance = 420;
+		for (int axis = 0; axis < AXES_COUNT; axis++) {
+			double distance = Math.abs(getPenetrationDistance(axis));
+			if (distance < minDistance) {
+				minDistanceIndex = axis;
+				minDistance = distance;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the last collision found by collide() into the contact buffer. The
+	 * response axis and contact points are picked the same way
+	 * WorldPhysicsCollider and PolygonCollisionPointFinder pick them from a
+	 * PhysPolygonCollider.
+	 *
+	 * @param velocityX
+	 *            the velocity of the ship block, used to find which face was hit
+	 *            first
+	 */
+	public void writeContact(CollisionContactBuffer contacts, int contactIndex, double velocityX, double velocityY,
+			double velocityZ) {
+		int responseAxis = 1;
+		if (Math.abs(getPenetrationDistance(responseAxis)) > WorldPhysicsCollider.AXIS_TOLERANCE) {
+			responseAxis = minDistanceIndex;
+		}
+		double responseX = axes[responseAxis * 3];
+		double responseY = axes[responseAxis * 3 + 1];
+		double responseZ = axes[responseAxis * 3 + 2];
+
+		double reverseVelocityAlongAxis = -(velocityX * responseX + velocityY * responseY + velocityZ * responseZ);
+		double minSecondsAgo = 69D;
+		int contactAxis = 0;
+		for (int axis = 0; axis < AXES_COUNT; axis++) {
+			double secondsAgo;
+			if (Math.signum(reverseVelocityAlongAxis) == 1.0D) {
+				secondsAgo = movMinFixMax[axis] / reverseVelocityAlongAxis;
+			} else {
+				secondsAgo = movMaxFixMin[axis] / reverseVelocityAlongAxis;
+			}
+			if (secondsAgo < minSecondsAgo) {
+				minSecondsAgo = secondsAgo;
+				contactAxis = axis;
+			}
+		}
+
+		double axisX = axes[contactAxis * 3];
+		double axisY = axes[contactAxis * 3 + 1];
+		double axisZ = axes[contactAxis * 3 + 2];
+		// The ship block is pushed towards whichever side it penetrates the least
+		boolean shipMaxTouches = Math.abs(movMaxFixMin[contactAxis]) > Math.abs(movMinFixMax[contactAxis]);
+		double shipDirection = shipMaxTouches ? 1D : -1D;
+
+		// The corner of the ship block furthest along the contact axis in that direction
+		double firstX = shipCenter[0];
+		double firstY = shipCenter[1];
+		double firstZ = shipCenter[2];
+		for (int edge = 0; edge < 3; edge++) {
+			double edgeX = halfEdges[edge * 3];
+			double edgeY = halfEdges[edge * 3 + 1];
+			double edgeZ = halfEdges[edge * 3 + 2];
+			double sign = (edgeX * axisX + edgeY * axisY + edgeZ * axisZ) * shipDirection >= 0 ? 1D : -1D;
+			firstX += sign * edgeX;
+			firstY += sign * edgeY;
+			firstZ += sign * edgeZ;
+		}
+
+		// And the corner of the world block furthest the other way
+		double secondX = worldCenter[0] + (axisX * shipDirection >= 0 ? -.5D : .5D);
+		double secondY = worldCenter[1] + (axisY * shipDirection >= 0 ? -.5D : .5D);
+		double secondZ = worldCenter[2] + (axisZ * shipDirection >= 0 ? -.5D : .5D);
+
+		contacts.setAxis(contactIndex, responseX, responseY, responseZ);
+		contacts.setPenetrationDistance(contactIndex, getPenetrationDistance(responseAxis));
+		contacts.setShipBlockCenter(contactIndex, shipCenter[0], shipCenter[1], shipCenter[2]);
+		contacts.setFirstContactPoint(contactIndex, firstX, firstY, firstZ);
+		contacts.setSecondContactPoint(contactIndex, secondX, secondY, secondZ);
+	}
+
+	/**
+	 * Sets toSet to the axis the last collision found by collide() penetrates the
+	 * least along, the same axis a PhysPolygonCollider would have picked.
+	 */
+	public void getMinDistanceAxis(Vector toSet) {
+		toSet.X = axes[minDistanceIndex * 3];
+		toSet.Y = axes[minDistanceIndex * 3 + 1];
+		toSet.Z = axes[minDistanceIndex * 3 + 2];
+	}
+
+	public double getShipCenterX() {
+		return shipCenter[0];
+	}
+
+	public double getShipCenterY() {
+		return shipCenter[1];
+	}
+
+	public double getShipCenterZ() {
+		return shipCenter[2];
+	}
+
+	// Set the penetration to be the smaller distance
+	private double getPenetrationDistance(int axis) {
+		if (Math.abs(movMaxFixMin[axis]) > Math.abs(movMinFixMax[axis])) {
+			return movMinFixMax[axis];
+		}
+		return movMaxFixMin[axis];
+	}
+
+}
@@ -16,6 +16,7 @@
 
 package valkyrienwarfare.physics.data;
 
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -31,6 +32,13 @@ public class BlockForce {
 
     public static final BlockForce basicForces = new BlockForce();
     private final Map<Block, Force> blocksToForces;
+    // The force of every block state, indexed by its id in Block.BLOCK_STATE_IDS.
+    // Null until bakeStateForces() is called.
+    private volatile double[] stateForcesX, stateForcesY, stateForcesZ;
+    // States that provide a force, either from the map or as an IBlockForceProvider
+    private volatile BitSet forceStates;
+    // States of blocks that implement IBlockForceProvider
+    private volatile BitSet forceProviderStates;
 
     public BlockForce() {
         blocksToForces = new HashMap<Block, Force>();
@@ -39,9 +47,71 @@ public class BlockForce {
     public static void registerBlockForce(Block block, Vector forceVec, boolean isLocal) {
         Force force = new Force(forceVec.X, forceVec.Y, forceVec.Z, isLocal);
         basicForces.blocksToForces.put(block, force);
+        basicForces.updateBakedForces(block);
+    }
+
+    /**
+     * Puts the force of every registered block state into arrays indexed by state
+     * id, and marks the states that provide a force in a bitset, so that force
+     * lookups don't need any map lookups. Blocks registered afterwards are added
+     * to the arrays as well.
+     */
+    public void bakeStateForces() {
+        int maxStateId = 0;
+        for (IBlockState state : Block.BLOCK_STATE_IDS) {
+            maxStateId = Math.max(maxStateId, Block.BLOCK_STATE_IDS.get(state));
+        }
+        stateForcesX = new double[maxStateId + 1];
+        stateForcesY = new double[maxStateId + 1];
+        stateForcesZ = new double[maxStateId + 1];
+        forceStates = new BitSet(maxStateId + 1);
+        forceProviderStates = new BitSet(maxStateId + 1);
+        for (IBlockState state : Block.BLOCK_STATE_IDS) {
+            bakeStateForce(state);
+        }
+    }
+
+    private void updateBakedForces(Block block) {
+        if (forceStates != null) {
+            for (IBlockState state : block.getBlockState().getValidStates()) {
+                bakeStateForce(state);
+            }
+        }
+    }
+
+    private void bakeStateForce(IBlockState state) {
+        int stateId = Block.BLOCK_STATE_IDS.get(state);
+        if (stateId < 0 || stateId >= stateForcesX.length) {
+            return;
+        }
+        Block block = state.getBlock();
+        Force force = blocksToForces.get(block);
+        if (force != null) {
+            stateForcesX[stateId] = force.X;
+            stateForcesY[stateId] = force.Y;
+            stateForcesZ[stateId] = force.Z;
+        }
+        forceStates.set(stateId, force != null || block instanceof IBlockForceProvider);
+        forceProviderStates.set(stateId, block instanceof IBlockForceProvider);
+    }
+
+    // Returns the state id to use with the baked arrays, or -1 if there isn't one
+    private int getBakedStateId(IBlockState state) {
+        if (forceStates == null) {
+            return -1;
+        }
+        int stateId = Block.BLOCK_STATE_IDS.get(state);
+        return stateId < stateForcesX.length ? stateId : -1;
     }
 
     public void getForceFromState(IBlockState state, BlockPos pos, World world, double secondsToApply, PhysicsObject obj, Vector toSet) {
+        int stateId = getBakedStateId(state);
+        if (stateId >= 0 && !forceProviderStates.get(stateId)) {
+            toSet.X = stateForcesX[stateId] * secondsToApply;
+            toSet.Y = stateForcesY[stateId] * secondsToApply;
+            toSet.Z = stateForcesZ[stateId] * secondsToApply;
+            return;
+        }
         Block block = state.getBlock();
         if (block instanceof IBlockForceProvider) {
             Vector forceVector = ((IBlockForceProvider) block).getBlockForceInWorldSpace(world, pos, state, obj.wrapper, secondsToApply);
@@ -64,7 +134,43 @@ public class BlockForce {
         }
     }
 
+    /**
+     * Sets toSet to the force per second registered for the block of the given
+     * state, or zero if there isn't one. Doesn't work for IBlockForceProvider
+     * blocks.
+     */
+    public void getForcePerSecond(IBlockState state, Vector toSet) {
+        int stateId = getBakedStateId(state);
+        if (stateId >= 0) {
+            toSet.X = stateForcesX[stateId];
+            toSet.Y = stateForcesY[stateId];
+            toSet.Z = stateForcesZ[stateId];
+            return;
+        }
+        Force force = blocksToForces.get(state.getBlock());
+        if (force != null) {
+            toSet.X = force.X;
+            toSet.Y = force.Y;
+            toSet.Z = force.Z;
+        } else {
+            toSet.zero();
+        }
+    }
+
+    /**
+     * @return True if the force registered for the block of the given state is
+     *         in local coordinates.
+     */
+    public boolean isForceInLocal(IBlockState state) {
+        Force force = blocksToForces.get(state.getBlock());
+        return force != null && force.inLocal;
+    }
+
     public boolean isBlockProvidingForce(IBlockState state, BlockPos pos, World world) {
+        int stateId = getBakedStateId(state);
+        if (stateId >= 0) {
+            return forceStates.get(stateId);
+        }
         Block block = state.getBlock();
         return basicForces.blocksToForces.containsKey(block) || block instanceof IBlockForceProvider;
     }
@@ -24,6 +24,7 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import valkyrienwarfare.api.IBlockMassProvider;
 
+import java.util.BitSet;
 import java.util.HashMap;
 
 public class BlockMass {
@@ -31,15 +32,64 @@ public class BlockMass {
     // 80N, Something like ~ 20lbs
     private final static double defaultMass = 50D;
     public static BlockMass basicMass = new BlockMass();
+    // Ship mass is added up on several threads at once, so everything in here
+    // that touches these maps synchronizes on this BlockMass
     public HashMap<Block, Double> blockToMass = new HashMap<Block, Double>();
     public HashMap<Material, Double> materialMass = new HashMap<Material, Double>();
+    // The mass of every block state, indexed by its id in Block.BLOCK_STATE_IDS.
+    // Null until bakeStateMasses() is called.
+    private volatile double[] stateMasses;
+    // States of blocks that implement IBlockMassProvider
+    private volatile BitSet massProviderStates;
 
     public BlockMass() {
         generateMaterialMasses();
     }
 
     public static void registerBlockMass(Block block, double mass) {
-        basicMass.blockToMass.put(block, mass);
+        synchronized (basicMass) {
+            basicMass.blockToMass.put(block, mass);
+        }
+        basicMass.updateBakedMasses(block);
+    }
+
+    /**
+     * Puts the mass of every registered block state into an array indexed by
+     * state id, so getMassFromState() doesn't need any map lookups. Blocks
+     * registered afterwards are added to the array as well.
+     */
+    public void bakeStateMasses() {
+        int maxStateId = 0;
+        for (IBlockState state : Block.BLOCK_STATE_IDS) {
+            maxStateId = Math.max(maxStateId, Block.BLOCK_STATE_IDS.get(state));
+        }
+        double[] masses = new double[maxStateId + 1];
+        BitSet providers = new BitSet(maxStateId + 1);
+        for (IBlockState state : Block.BLOCK_STATE_IDS) {
+            int stateId = Block.BLOCK_STATE_IDS.get(state);
+            Block block = state.getBlock();
+            if (block instanceof IBlockMassProvider) {
+                providers.set(stateId);
+            } else {
+                masses[stateId] = getMassFromBlock(block);
+            }
+        }
+        massProviderStates = providers;
+        stateMasses = masses;
+    }
+
+    private void updateBakedMasses(Block block) {
+        double[] masses = stateMasses;
+        if (masses == null || block instanceof IBlockMassProvider) {
+            return;
+        }
+        double mass = getMassFromBlock(block);
+        for (IBlockState state : block.getBlockState().getValidStates()) {
+            int stateId = Block.BLOCK_STATE_IDS.get(state);
+            if (stateId >= 0 && stateId < masses.length) {
+                masses[stateId] = mass;
+            }
+        }
     }
 
     private void generateMaterialMasses() {
@@ -82,22 +132,33 @@ public class BlockMass {
     }
 
     public double getMassFromState(IBlockState state, BlockPos pos, World world) {
+        double[] masses = stateMasses;
+        if (masses != null) {
+            int stateId = Block.BLOCK_STATE_IDS.get(state);
+            if (stateId >= 0 && stateId < masses.length && !massProviderStates.get(stateId)) {
+                return masses[stateId];
+            }
+        }
         Block block = state.getBlock();
         if (block instanceof IBlockMassProvider) {
             return ((IBlockMassProvider) block).getBlockMass(world, pos, state);
         } else {
-            Double fromMap = blockToMass.get(block);
-            if (fromMap != null) {
-                return fromMap.doubleValue();
-            } else {
-                Double newMass = generateMassForBlock(block);
-                blockToMass.put(block, newMass);
-                return newMass;
-            }
+            return getMassFromBlock(block);
+        }
+    }
+
+    private synchronized double getMassFromBlock(Block block) {
+        Double fromMap = blockToMass.get(block);
+        if (fromMap != null) {
+            return fromMap.doubleValue();
+        } else {
+            Double newMass = generateMassForBlock(block);
+            blockToMass.put(block, newMass);
+            return newMass;
         }
     }
 
-    public double getMassFromMaterial(Material material) {
+    public synchronized double getMassFromMaterial(Material material) {
         Double mass = materialMass.get(material);
         if (mass == null) {
             mass = defaultMass;
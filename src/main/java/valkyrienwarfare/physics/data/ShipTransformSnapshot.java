@@ -0,0 +1,55 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package valkyrienwarfare.physics.data;
+
+import valkyrienwarfare.api.Vector;
+import valkyrienwarfare.physics.management.CoordTransformObject;
+import valkyrienwarfare.physics.management.PhysicsObject;
+
+/**
+ * An immutable copy of where a ship was at the end of a physics tick, so other
+ * threads can read a position, rotation and set of matrices that all belong
+ * together while the physics thread keeps moving the ship.
+ */
+public class ShipTransformSnapshot {
+
+    public final double posX, posY, posZ;
+    public final double pitch, yaw, roll;
+    public final Vector centerCoord;
+    // CoordTransformObject never writes into a matrix after publishing it, so
+    // these are shared instead of copied. Don't modify them.
+    public final double[] lToWTransform, wToLTransform;
+    public final double[] lToWRotation, wToLRotation;
+
+    public ShipTransformSnapshot(PhysicsObject physObj) {
+        posX = physObj.wrapper.posX;
+        posY = physObj.wrapper.posY;
+        posZ = physObj.wrapper.posZ;
+
+        pitch = physObj.wrapper.pitch;
+        yaw = physObj.wrapper.yaw;
+        roll = physObj.wrapper.roll;
+
+        centerCoord = new Vector(physObj.centerCoord);
+
+        CoordTransformObject coordTransform = physObj.coordTransform;
+        lToWTransform = coordTransform.lToWTransform;
+        wToLTransform = coordTransform.wToLTransform;
+        lToWRotation = coordTransform.lToWRotation;
+        wToLRotation = coordTransform.wToLRotation;
+    }
+}
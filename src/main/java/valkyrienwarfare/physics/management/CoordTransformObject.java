@@ -29,9 +29,12 @@ import net.minecraft.world.border.WorldBorder;
 import valkyrienwarfare.ValkyrienWarfareMod;
 import valkyrienwarfare.api.RotationMatrices;
 import valkyrienwarfare.api.Vector;
+import valkyrienwarfare.math.Quaternion;
 import valkyrienwarfare.mod.network.EntityRelativePositionMessage;
 import valkyrienwarfare.mod.network.PhysWrapperPositionMessage;
 import valkyrienwarfare.mod.physmanagement.interaction.IDraggable;
+import valkyrienwarfare.physics.calculations.PhysicsCalculations;
+import valkyrienwarfare.physics.data.ShipTransformSnapshot;
 
 /**
  * Stores coordinates and transforms for the ship.
@@ -60,30 +63,58 @@ public class CoordTransformObject {
     public Vector[] normals;
 
     public final ShipTransformationBuffer serverBuffer;
+    // Only used on the server, keeps track of what the position messages already sent
+    private final ShipTransformEncoder positionEncoder = new ShipTransformEncoder();
+    // Latest finished physics state, replaced as a whole after every physics tick
+    private volatile ShipTransformSnapshot snapshot;
+    // The R matrices point at these after updateRenderMatrices(), only the render
+    // thread uses them
+    private final double[] renderLToWRotation = new double[16];
+    private final double[] renderWToLRotation = new double[16];
+    private final double[] renderLToWTransform = new double[16];
+    private final double[] renderWToLTransform = new double[16];
 
     public CoordTransformObject(PhysicsObject object) {
         this.parent = object;
         updateAllTransforms();
-        this.prevlToWTransform = lToWTransform;
-        this.prevwToLTransform = wToLTransform;
+        setPrevMatrices();
         this.serverBuffer = new ShipTransformationBuffer();
         this.normals = Vector.generateAxisAlignedNorms();
     }
 
     public void updateMatricesOnly() {
-        lToWTransform = RotationMatrices.getTranslationMatrix(parent.wrapper.posX, parent.wrapper.posY,
-                parent.wrapper.posZ);
-
-        lToWTransform = RotationMatrices.rotateAndTranslate(lToWTransform, parent.wrapper.pitch, parent.wrapper.yaw,
-                parent.wrapper.roll, parent.centerCoord);
+        PhysicsCalculations physicsProcessor = parent.physicsProcessor;
+        if (physicsProcessor != null && physicsProcessor.hasPendingOrientation()) {
+            // The physics integrator is ahead of the Euler angles, so build the matrices
+            // straight from its orientation
+            updateMatricesFromOrientation(physicsProcessor.getOrientation());
+            return;
+        }
+        updateMatricesFromRotation(RotationMatrices.getRotationMatrix(parent.wrapper.pitch, parent.wrapper.yaw,
+                parent.wrapper.roll, new double[16]));
+    }
 
-        lToWRotation = RotationMatrices.getDoubleIdentity();
+    /**
+     * Builds the matrices from a rotation Quaternion instead of the wrapper pitch,
+     * yaw and roll.
+     */
+    public void updateMatricesFromOrientation(Quaternion orientation) {
+        updateMatricesFromRotation(orientation.toRotationMatrix(new double[16]));
+    }
 
-        lToWRotation = RotationMatrices.rotateOnly(lToWRotation, parent.wrapper.pitch, parent.wrapper.yaw,
-                parent.wrapper.roll);
+    // The game thread reads these fields while the physics thread updates them, so
+    // every update fills in brand new arrays and only then swaps them in. A matrix
+    // is never written to again once it's been assigned to a field.
+    private void updateMatricesFromRotation(double[] rotation) {
+        double[] inverseRotation = RotationMatrices.inverse(rotation, new double[16]);
+        double[] transform = getTransform(rotation, parent.wrapper.posX, parent.wrapper.posY, parent.wrapper.posZ,
+                parent.centerCoord, new double[16]);
+        double[] inverseTransform = RotationMatrices.inverse(transform, new double[16]);
 
-        wToLTransform = RotationMatrices.inverse(lToWTransform);
-        wToLRotation = RotationMatrices.inverse(lToWRotation);
+        lToWRotation = rotation;
+        wToLRotation = inverseRotation;
+        lToWTransform = transform;
+        wToLTransform = inverseTransform;
 
         RlToWTransform = lToWTransform;
         RwToLTransform = wToLTransform;
@@ -92,14 +123,25 @@ public class CoordTransformObject {
     }
 
     public void updateRenderMatrices(double x, double y, double z, double pitch, double yaw, double roll) {
-        RlToWTransform = RotationMatrices.getTranslationMatrix(x, y, z);
-
-        RlToWTransform = RotationMatrices.rotateAndTranslate(RlToWTransform, pitch, yaw, roll, parent.centerCoord);
-
-        RwToLTransform = RotationMatrices.inverse(RlToWTransform);
+        RotationMatrices.getRotationMatrix(pitch, yaw, roll, renderLToWRotation);
+        RotationMatrices.inverse(renderLToWRotation, renderWToLRotation);
+        getTransform(renderLToWRotation, x, y, z, parent.centerCoord, renderLToWTransform);
+        RotationMatrices.inverse(renderLToWTransform, renderWToLTransform);
+
+        RlToWRotation = renderLToWRotation;
+        RwToLRotation = renderWToLRotation;
+        RlToWTransform = renderLToWTransform;
+        RwToLTransform = renderWToLTransform;
+    }
 
-        RlToWRotation = RotationMatrices.rotateOnly(RotationMatrices.getDoubleIdentity(), pitch, yaw, roll);
-        RwToLRotation = RotationMatrices.inverse(RlToWRotation);
+    // Same as translate(x, y, z) * rotation * translate(-centerCoord)
+    private static double[] getTransform(double[] rotation, double x, double y, double z, Vector centerCoord,
+            double[] transform) {
+        System.arraycopy(rotation, 0, transform, 0, 16);
+        transform[3] = x - (rotation[0] * centerCoord.X + rotation[1] * centerCoord.Y + rotation[2] * centerCoord.Z);
+        transform[7] = y - (rotation[4] * centerCoord.X + rotation[5] * centerCoord.Y + rotation[6] * centerCoord.Z);
+        transform[11] = z - (rotation[8] * centerCoord.X + rotation[9] * centerCoord.Y + rotation[10] * centerCoord.Z);
+        return transform;
     }
 
     // Used for the moveRiders() method
@@ -150,8 +192,49 @@ public class CoordTransformObject {
         }
     }
 
+    /**
+     * Called by the physics thread once a physics tick is done with this ship
+     */
+    public void publishSnapshot() {
+        snapshot = new ShipTransformSnapshot(parent);
+    }
+
+    /**
+     * Returns the position the ship had at the end of the last physics tick, or
+     * null if no tick has finished yet
+     */
+    public ShipTransformSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Code that isn't covered by the decoupled physics tickLock should read the
+     * ship through this, since the physics thread can be moving it at the same time.
+     * Before the first physics tick the ship isn't being stepped yet, so the
+     * current position gets published instead.
+     */
+    public ShipTransformSnapshot getLatestSnapshot() {
+        ShipTransformSnapshot latest = snapshot;
+        if (latest == null) {
+            publishSnapshot();
+            latest = snapshot;
+        }
+        return latest;
+    }
+
     public void sendPositionToPlayers() {
-        PhysWrapperPositionMessage posMessage = new PhysWrapperPositionMessage(parent.wrapper);
+        PhysicsWrapperEntity wrapper = parent.wrapper;
+        PhysWrapperPositionMessage posMessage;
+        ShipTransformSnapshot snapshot = this.snapshot;
+        if (snapshot != null) {
+            posMessage = positionEncoder.encode(wrapper.getEntityId(), wrapper.ticksExisted, snapshot.posX,
+                    snapshot.posY, snapshot.posZ, snapshot.pitch, snapshot.yaw, snapshot.roll, snapshot.centerCoord,
+                    parent.watchingPlayers);
+        } else {
+            posMessage = positionEncoder.encode(wrapper.getEntityId(), wrapper.ticksExisted, wrapper.posX,
+                    wrapper.posY, wrapper.posZ, wrapper.pitch, wrapper.yaw, wrapper.roll, parent.centerCoord,
+                    parent.watchingPlayers);
+        }
 
         List<Entity> entityList = new ArrayList<Entity>();
         for (Entity entity : parent.worldObj.loadedEntityList) {
@@ -216,13 +299,15 @@ public class CoordTransformObject {
         // Note: This Vector array still contains potential 0 vectors, those are removed
         // later
         Vector[] normals = new Vector[15];
+        // The rotated face normals of both ships, slots 0 to 2 of the normals
+        // arrays only hold the world axes
         Vector[] otherNorms = other.coordTransform.normals;
-        Vector[] rotatedNorms = normals;
+        Vector[] rotatedNorms = this.normals;
         for (int i = 0; i < 6; i++) {
             if (i < 3) {
-                normals[i] = otherNorms[i];
+                normals[i] = otherNorms[i + 3];
             } else {
-                normals[i] = rotatedNorms[i - 3];
+                normals[i] = rotatedNorms[i];
             }
         }
         int cont = 6;
@@ -253,6 +338,7 @@ public class CoordTransformObject {
         }
         parentPositionsStream.forEach(convexHullConsumer);
         parent.setCollisionBoundingBox(convexHullConsumer.createWrappingAABB());
+        parent.setBlockBoundingBoxInLocal(convexHullConsumer.createLocalBlockAABB());
     }
 
     public void fromGlobalToLocal(Vector inGlobal) {
@@ -266,6 +352,7 @@ public class CoordTransformObject {
     private class CollisionBBConsumer implements Consumer<BlockPos> {
         private final double[] M = lToWTransform;
         double minX, minY, minZ, maxX, maxY, maxZ;
+        int localMinX, localMinY, localMinZ, localMaxX, localMaxY, localMaxZ;
 
         CollisionBBConsumer() {
             minX = parent.wrapper.posX;
@@ -274,6 +361,8 @@ public class CoordTransformObject {
             maxX = parent.wrapper.posX;
             maxY = parent.wrapper.posY;
             maxZ = parent.wrapper.posZ;
+            localMinX = localMinY = localMinZ = Integer.MAX_VALUE;
+            localMaxX = localMaxY = localMaxZ = Integer.MIN_VALUE;
         }
         
         @Override
@@ -292,11 +381,26 @@ public class CoordTransformObject {
             maxY = Math.max(newY, maxY);
             minZ = Math.min(newZ, minZ);
             maxZ = Math.max(newZ, maxZ);
+
+            localMinX = Math.min(pos.getX(), localMinX);
+            localMaxX = Math.max(pos.getX(), localMaxX);
+            localMinY = Math.min(pos.getY(), localMinY);
+            localMaxY = Math.max(pos.getY(), localMaxY);
+            localMinZ = Math.min(pos.getZ(), localMinZ);
+            localMaxZ = Math.max(pos.getZ(), localMaxZ);
         }
         
         AxisAlignedBB createWrappingAABB() {
             return new AxisAlignedBB(minX, minY, minZ, maxX, maxY, maxZ).expand(.6D, .6D, .6D);
         }
+
+        // Covers every block of the ship in local coordinates, null if there aren't any
+        AxisAlignedBB createLocalBlockAABB() {
+            if (localMinX > localMaxX) {
+                return null;
+            }
+            return new AxisAlignedBB(localMinX, localMinY, localMinZ, localMaxX + 1, localMaxY + 1, localMaxZ + 1);
+        }
     
     }
 }
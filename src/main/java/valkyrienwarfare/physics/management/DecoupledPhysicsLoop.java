@@ -0,0 +1,142 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package valkyrienwarfare.physics.management;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Used when decoupledPhysics is on. Runs the physics of one world on its own
+ * thread at a fixed 20 ticks a second instead of inside the game tick, so a
+ * slow game tick doesn't make the ships stutter and slow physics doesn't hold
+ * up the game tick.
+ *
+ * The game thread hands over the ships and their sub-step counts at the start
+ * of each world tick. tickLock is held for the whole of a physics tick, and the
+ * server thread holds it from the start to the end of every server tick. That
+ * covers packet handling and scheduled tasks as well as the world ticks, so
+ * entity movement, the mixins and everything else the server thread does see
+ * the ships, their matrices and their chunks standing still. Ship block changes
+ * and saves also take it themselves, since those can happen outside of a server
+ * tick. Other threads have to read ships through their ShipTransformSnapshot.
+ * The server thread only ever waits when a physics tick is partway done.
+ */
+public class DecoupledPhysicsLoop implements Runnable {
+
+    // One physics tick per game tick the server is supposed to run
+    public static final long TICK_PERIOD_MILLIS = 50L;
+    // If the game thread stops handing over ticks for this long (paused, or stuck
+    // on something), the ships stop moving until it comes back
+    public static final int MAX_TICKS_WITHOUT_INPUT = 20;
+
+    private final WorldPhysObjectManager manager;
+    private final ReentrantLock tickLock;
+    private ScheduledExecutorService executor;
+    // Only touched while holding tickLock
+    private List<PhysicsWrapperEntity> physicsEntities;
+    private int passes;
+    private int ticksWithoutInput;
+
+    public DecoupledPhysicsLoop(WorldPhysObjectManager manager) {
+        this.manager = manager;
+        this.tickLock = new ReentrantLock();
+        this.physicsEntities = new ArrayList<PhysicsWrapperEntity>();
+    }
+
+    public boolean isRunning() {
+        return executor != null;
+    }
+
+    public void start() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "VW Physics " + manager.worldObj.provider.getDimension());
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleAtFixedRate(this, TICK_PERIOD_MILLIS, TICK_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the loop, and waits for the physics tick in progress if there is one.
+     * The loop is only forgotten once its thread has really finished, so a new one
+     * can never run next to it.
+     */
+    public void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // Also gets the thread out of waiting for tickLock
+                    executor.shutdownNow();
+                    while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                        System.err.println("Still waiting for the physics thread of dimension "
+                                + manager.worldObj.provider.getDimension() + " to stop");
+                    }
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                Thread.currentThread().interrupt();
+                return;
+            }
+            executor = null;
+        }
+    }
+
+    public ReentrantLock getTickLock() {
+        return tickLock;
+    }
+
+    /**
+     * Sets the ships to step from now on. Has to be called while holding tickLock.
+     */
+    public void setTickInput(List<PhysicsWrapperEntity> physicsEntities, int passes) {
+        this.physicsEntities = physicsEntities;
+        this.passes = passes;
+        this.ticksWithoutInput = 0;
+    }
+
+    @Override
+    public void run() {
+        try {
+            tickLock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            // Being stopped
+            return;
+        }
+        try {
+            if (ticksWithoutInput++ < MAX_TICKS_WITHOUT_INPUT && !physicsEntities.isEmpty()) {
+                new PhysicsTickHandler.PhysicsTickThreadTask(passes, physicsEntities, manager).call();
+                for (PhysicsWrapperEntity wrapper : physicsEntities) {
+                    wrapper.wrapping.physicsProcessor.updateEulerAngles();
+                    wrapper.wrapping.coordTransform.publishSnapshot();
+                }
+            }
+        } catch (Exception e) {
+            // Anything thrown out of here would silently cancel the loop
+            e.printStackTrace();
+        } finally {
+            tickLock.unlock();
+        }
+    }
+
+}
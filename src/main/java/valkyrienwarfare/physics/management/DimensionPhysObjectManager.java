@@ -16,7 +16,9 @@
 
 package valkyrienwarfare.physics.management;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import net.minecraft.entity.Entity;
@@ -58,8 +60,16 @@ public class DimensionPhysObjectManager {
         return managerPerWorld.get(world);
     }
 
+    // A copy, the client thread adds managers for its own worlds
+    public List<WorldPhysObjectManager> getManagers() {
+        return new ArrayList<WorldPhysObjectManager>(managerPerWorld.values());
+    }
+
     public void removeWorld(World world) {
-        managerPerWorld.remove(world);
+        WorldPhysObjectManager manager = managerPerWorld.remove(world);
+        if (manager != null) {
+            manager.getPhysicsLoop().stop();
+        }
     }
 
     /**
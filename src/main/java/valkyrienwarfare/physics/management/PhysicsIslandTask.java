@@ -0,0 +1,139 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package valkyrienwarfare.physics.management;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import net.minecraft.util.math.AxisAlignedBB;
+import valkyrienwarfare.ValkyrienWarfareMod;
+import valkyrienwarfare.physics.collision.WorldPhysicsCollider;
+import valkyrienwarfare.physics.collision.optimization.ShipCollisionTask;
+import valkyrienwarfare.physics.collision.optimization.ShipPairCollisionTask;
+
+/**
+ * Runs every physics sub-step of a game tick for a group of ships that could
+ * possibly touch each other. Separate islands share no physics state, so each
+ * one is stepped as its own fork/join task and they only meet up again once
+ * the whole tick has been simulated.
+ */
+public class PhysicsIslandTask extends RecursiveAction {
+
+    // How close two ships have to be before they're considered able to interact
+    public static final double ISLAND_CONTACT_DISTANCE = WorldPhysicsCollider.AABB_EXPANSION;
+
+    private final List<PhysicsWrapperEntity> island;
+
+    public PhysicsIslandTask(List<PhysicsWrapperEntity> island) {
+        this.island = island;
+    }
+
+    @Override
+    protected void compute() {
+        List<ShipCollisionTask> collisionTasks = new ArrayList<ShipCollisionTask>(island.size() * 2);
+        List<ShipPairCollisionTask> pairCollisionTasks = new ArrayList<ShipPairCollisionTask>();
+        List<ForkJoinTask<Void>> forkedTasks = new ArrayList<ForkJoinTask<Void>>();
+        List<PhysicsWrapperEntity> shipsInPass = new ArrayList<PhysicsWrapperEntity>(island.size());
+        int passes = PhysicsSubstepScheduler.getMostSubsteps(island);
+        for (int pass = 0; pass < passes; pass++) {
+            PhysicsSubstepScheduler.getShipsForPass(island, pass, shipsInPass);
+            PhysicsTickHandler.runPreCollision(shipsInPass, collisionTasks, pairCollisionTasks);
+            for (ShipCollisionTask task : collisionTasks) {
+                forkedTasks.add(ForkJoinTask.adapt(task));
+            }
+            // Every pair of ships in the island is searched for collisions in parallel
+            for (ShipPairCollisionTask task : pairCollisionTasks) {
+                forkedTasks.add(ForkJoinTask.adapt(task));
+            }
+            ForkJoinTask.invokeAll(forkedTasks);
+            PhysicsTickHandler.runPostCollision(shipsInPass, collisionTasks, pairCollisionTasks);
+            collisionTasks.clear();
+            pairCollisionTasks.clear();
+            forkedTasks.clear();
+        }
+    }
+
+    /**
+     * Splits the ships into islands, and steps every island in parallel. Only
+     * returns after every island has finished all of its sub-steps.
+     */
+    public static void runIslands(List<PhysicsWrapperEntity> physicsEntities) {
+        List<List<PhysicsWrapperEntity>> islands = createIslands(physicsEntities);
+        List<PhysicsIslandTask> islandTasks = new ArrayList<PhysicsIslandTask>(islands.size());
+        for (List<PhysicsWrapperEntity> island : islands) {
+            PhysicsIslandTask task = new PhysicsIslandTask(island);
+            ValkyrienWarfareMod.PHYSICS_ISLAND_POOL.execute(task);
+            islandTasks.add(task);
+        }
+        for (PhysicsIslandTask task : islandTasks) {
+            task.join();
+        }
+    }
+
+    /**
+     * Groups the ships whose collision bounding boxes are close enough to touch
+     * during this tick. Uses a union-find over the overlapping pairs.
+     */
+    public static List<List<PhysicsWrapperEntity>> createIslands(List<PhysicsWrapperEntity> physicsEntities) {
+        int size = physicsEntities.size();
+        int[] parents = new int[size];
+        AxisAlignedBB[] expandedBBs = new AxisAlignedBB[size];
+        for (int i = 0; i < size; i++) {
+            parents[i] = i;
+            expandedBBs[i] = physicsEntities.get(i).wrapping.getCollisionBoundingBox().grow(ISLAND_CONTACT_DISTANCE);
+        }
+
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                if (expandedBBs[i].intersects(expandedBBs[j])) {
+                    int rootI = findRoot(parents, i);
+                    int rootJ = findRoot(parents, j);
+                    if (rootI != rootJ) {
+                        parents[rootJ] = rootI;
+                    }
+                }
+            }
+        }
+
+        List<List<PhysicsWrapperEntity>> islands = new ArrayList<List<PhysicsWrapperEntity>>();
+        int[] rootToIsland = new int[size];
+        for (int i = 0; i < size; i++) {
+            rootToIsland[i] = -1;
+        }
+        for (int i = 0; i < size; i++) {
+            int root = findRoot(parents, i);
+            if (rootToIsland[root] == -1) {
+                rootToIsland[root] = islands.size();
+                islands.add(new ArrayList<PhysicsWrapperEntity>());
+            }
+            islands.get(rootToIsland[root]).add(physicsEntities.get(i));
+        }
+        return islands;
+    }
+
+    private static int findRoot(int[] parents, int index) {
+        while (parents[index] != index) {
+            // Path halving keeps the trees flat
+            parents[index] = parents[parents[index]];
+            index = parents[index];
+        }
+        return index;
+    }
+
+}
@@ -28,6 +28,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
 
 import gnu.trove.iterator.TIntIterator;
 import io.netty.buffer.ByteBuf;
@@ -86,6 +87,9 @@ public class PhysicsObject {
 
 	public final World worldObj;
 	public final PhysicsWrapperEntity wrapper;
+	// The manager of the world this ship is in, only set on the server. Kept here
+	// since the physics threads can't look it up safely.
+	private final WorldPhysObjectManager worldPhysicsManager;
 	// This handles sending packets to players involving block changes in the Ship
 	// space
 	public final List<EntityPlayerMP> watchingPlayers;
@@ -100,6 +104,8 @@ public class PhysicsObject {
 	public PhysicsCalculations physicsProcessor;
 	public Set<BlockPos> blockPositions;
 	private AxisAlignedBB collisionBB;
+	// The blocks of this ship in local coordinates, used to cull world collision checks
+	private volatile AxisAlignedBB blockBBInLocal;
 
 	public final List<PhysicsQueuedForce> queuedPhysForces;
 	public final List<BlockPos> explodedPositionsThisTick;
@@ -111,6 +117,10 @@ public class PhysicsObject {
 
     // The closest Chunks to the Ship cached in here
     public ChunkCache surroundingWorldChunksCache;
+    // Kept by WorldPhysObjectManager; whether this ship is in its tickable list, and
+    // the world chunk it was last filed under
+    boolean tickable;
+    ChunkPos tickableCheckChunk;
     // TODO: Make for re-organizing these to make Ship sizes Dynamic
     public ChunkSet ownedChunks;
     // Used for faster memory access to the Chunks this object 'owns'
@@ -119,6 +129,8 @@ public class PhysicsObject {
     // Some badly written mods use these Maps to determine who to send packets to,
     // so we need to manually fill them with nearby players
     public PlayerChunkMapEntry[][] claimedChunksEntries;
+    // Set on the client while some of the chunks the ship needs haven't been sent yet
+    private boolean clientChunksMissing;
     public final List<String> allowedUsers;
     // Compatibility for ships made before the update
     public boolean claimedChunksInMap;
@@ -136,8 +148,10 @@ public class PhysicsObject {
 		worldObj = host.world;
 		if (host.world.isRemote) {
 			renderer = new PhysObjectRenderManager(this);
+			worldPhysicsManager = null;
 		} else {
 			renderer = null;
+			worldPhysicsManager = ValkyrienWarfareMod.physicsManager.getManagerForWorld(host.world);
 		}
 		isNameCustom = false;
 		claimedChunksInMap = false;
@@ -155,6 +169,29 @@ public class PhysicsObject {
 	}
 
 	public void onSetBlockState(IBlockState oldState, IBlockState newState, BlockPos posAt) {
+		ReentrantLock tickLock = getPhysicsTickLock();
+		if (tickLock != null) {
+			tickLock.lock();
+		}
+		try {
+			handleSetBlockState(oldState, newState, posAt);
+		} finally {
+			if (tickLock != null) {
+				tickLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Anything on the game thread that changes the physics state of this ship has
+	 * to hold this lock, since the decoupled physics thread could be stepping it
+	 * at the same time. Null on the client.
+	 */
+	private ReentrantLock getPhysicsTickLock() {
+		return worldPhysicsManager == null ? null : worldPhysicsManager.getPhysicsLoop().getTickLock();
+	}
+
+	private void handleSetBlockState(IBlockState oldState, IBlockState newState, BlockPos posAt) {
        if (!ownedChunks.isChunkEnclosedInMaxSet(posAt.getX() >> 4, posAt.getZ() >> 4)) {
             return;
         }
@@ -186,9 +223,15 @@ public class PhysicsObject {
 					blockPositions.add(posAt);
 				}
 			}
-			int chunkX = (posAt.getX() >> 4) - claimedChunks[0][0].x;
-			int chunkZ = (posAt.getZ() >> 4) - claimedChunks[0][0].z;
-			ownedChunks.chunkOccupiedInLocal[chunkX][chunkZ] = true;
+			int chunkX = (posAt.getX() >> 4) - ownedChunks.minX;
+			int chunkZ = (posAt.getZ() >> 4) - ownedChunks.minZ;
+			if (!ownedChunks.chunkOccupiedInLocal[chunkX][chunkZ]) {
+				// Has to happen first, reads of chunks without blocks only get the shared empty chunk
+				if (claimedChunks != null) {
+					materializeChunksAround(posAt.getX() >> 4, posAt.getZ() >> 4);
+				}
+				ownedChunks.chunkOccupiedInLocal[chunkX][chunkZ] = true;
+			}
 		}
 
 		if (blockPositions.isEmpty()) {
@@ -214,8 +257,7 @@ public class PhysicsObject {
     							}
 						    }
 						}
-						ValkyrienWarfareMod.chunkManager.getManagerForWorld(worldObj).data.avalibleChunkKeys
-								.add(ownedChunks.centerX);
+						ValkyrienWarfareMod.chunkManager.getManagerForWorld(worldObj).freeChunkSet(ownedChunks);
 					}
 				}
 			} catch (Exception e) {
@@ -239,6 +281,9 @@ public class PhysicsObject {
         List<EntityPlayerMP> watchersCopy = new ArrayList<EntityPlayerMP>(watchingPlayers);
         for (int x = ownedChunks.minX; x <= ownedChunks.maxX; x++) {
             for (int z = ownedChunks.minZ; z <= ownedChunks.maxZ; z++) {
+                if (claimedChunks[x - ownedChunks.minX][z - ownedChunks.minZ] == null) {
+                    continue;
+                }
                 SPacketUnloadChunk unloadPacket = new SPacketUnloadChunk(x, z);
                 for (EntityPlayerMP wachingPlayer : watchersCopy) {
                     wachingPlayer.connection.sendPacket(unloadPacket);
@@ -292,19 +337,13 @@ public class PhysicsObject {
 
 		ValkyrienWarfareMod.physicsManager.onShipPreload(wrapper);
 
+		// The chunks get made as the blocks are placed into them
 		claimedChunks = new Chunk[(ownedChunks.radius * 2) + 1][(ownedChunks.radius * 2) + 1];
 		claimedChunksEntries = new PlayerChunkMapEntry[(ownedChunks.radius * 2) + 1][(ownedChunks.radius * 2) + 1];
-		for (int x = ownedChunks.minX; x <= ownedChunks.maxX; x++) {
-			for (int z = ownedChunks.minZ; z <= ownedChunks.maxZ; z++) {
-				Chunk chunk = new Chunk(worldObj, x, z);
-				injectChunkIntoWorld(chunk, x, z, true);
-				claimedChunks[x - ownedChunks.minX][z - ownedChunks.minZ] = chunk;
-			}
-		}
 
 		replaceOuterChunksWithAir();
 
-		VKChunkCache = new VWChunkCache(worldObj, claimedChunks);
+		VKChunkCache = new VWChunkCache(worldObj, ownedChunks.minX, ownedChunks.minZ, claimedChunks);
 
 		refrenceBlockPos = getRegionCenter();
 		centerCoord = new Vector(refrenceBlockPos.getX(), refrenceBlockPos.getY(), refrenceBlockPos.getZ());
@@ -383,20 +422,13 @@ public class PhysicsObject {
 
 		claimedChunks = new Chunk[(ownedChunks.radius * 2) + 1][(ownedChunks.radius * 2) + 1];
 		claimedChunksEntries = new PlayerChunkMapEntry[(ownedChunks.radius * 2) + 1][(ownedChunks.radius * 2) + 1];
-		for (int x = ownedChunks.minX; x <= ownedChunks.maxX; x++) {
-			for (int z = ownedChunks.minZ; z <= ownedChunks.maxZ; z++) {
-				Chunk chunk = new Chunk(worldObj, x, z);
-				injectChunkIntoWorld(chunk, x, z, true);
-				claimedChunks[x - ownedChunks.minX][z - ownedChunks.minZ] = chunk;
-			}
-		}
 
 		// Prevents weird shit from spawning at the edges of a ship
 		replaceOuterChunksWithAir();
 
-		VKChunkCache = new VWChunkCache(worldObj, claimedChunks);
-		int minChunkX = claimedChunks[0][0].x;
-		int minChunkZ = claimedChunks[0][0].z;
+		VKChunkCache = new VWChunkCache(worldObj, ownedChunks.minX, ownedChunks.minZ, claimedChunks);
+		int minChunkX = ownedChunks.minX;
+		int minChunkZ = ownedChunks.minZ;
 
 		refrenceBlockPos = getRegionCenter();
 		centerCoord = new Vector(refrenceBlockPos.getX(), refrenceBlockPos.getY(), refrenceBlockPos.getZ());
@@ -404,6 +436,17 @@ public class PhysicsObject {
 		createPhysicsCalculations();
 
 		BlockPos centerDifference = refrenceBlockPos.subtract(centerInWorld);
+		// Find which chunks the blocks will land in first, only those (and the ones
+		// around them) get made
+		while (iter.hasNext()) {
+			int i = iter.next();
+			detector.setPosWithRespectTo(i, centerInWorld, pos);
+			ownedChunks.chunkOccupiedInLocal[((pos.getX() + centerDifference.getX()) >> 4)
+					- minChunkX][((pos.getZ() + centerDifference.getZ()) >> 4) - minChunkZ] = true;
+		}
+		materializeNeededChunks();
+
+		iter = detector.foundSet.iterator();
 		while (iter.hasNext()) {
 			int i = iter.next();
 			detector.setPosWithRespectTo(i, centerInWorld, pos);
@@ -414,7 +457,6 @@ public class PhysicsObject {
 
 			pos.setPos(pos.getX() + centerDifference.getX(), pos.getY() + centerDifference.getY(),
 					pos.getZ() + centerDifference.getZ());
-			ownedChunks.chunkOccupiedInLocal[(pos.getX() >> 4) - minChunkX][(pos.getZ() >> 4) - minChunkZ] = true;
 
 			Chunk chunkToSet = claimedChunks[(pos.getX() >> 4) - minChunkX][(pos.getZ() >> 4) - minChunkZ];
 			int storageIndex = pos.getY() >> 4;
@@ -524,11 +566,13 @@ public class PhysicsObject {
 		// BlockPos(claimedChunks[ownedChunks.radius+1][ownedChunks.radius+1].x*16,128,claimedChunks[ownedChunks.radius+1][ownedChunks.radius+1].z*16);
 		// System.out.println(chunkCache.getBlockState(centerDifference).getBlock());
 
-		for (int x = ownedChunks.minX; x <= ownedChunks.maxX; x++) {
-			for (int z = ownedChunks.minZ; z <= ownedChunks.maxZ; z++) {
-				claimedChunks[x - ownedChunks.minX][z - ownedChunks.minZ].isTerrainPopulated = true;
-				claimedChunks[x - ownedChunks.minX][z - ownedChunks.minZ].generateSkylightMap();
-				claimedChunks[x - ownedChunks.minX][z - ownedChunks.minZ].checkLight();
+		for (Chunk[] chunkArray : claimedChunks) {
+			for (Chunk chunk : chunkArray) {
+				if (chunk != null) {
+					chunk.isTerrainPopulated = true;
+					chunk.generateSkylightMap();
+					chunk.checkLight();
+				}
 			}
 		}
 
@@ -554,6 +598,101 @@ public class PhysicsObject {
 		}
 	}
 
+	/**
+	 * Whether this ship has yet to make the chunk at the given position and has no
+	 * blocks in it, so reading it can just get an empty chunk. Always false before
+	 * the ship's chunks are set up.
+	 */
+	public boolean isChunkWithoutBlocks(int chunkX, int chunkZ) {
+		if (claimedChunks == null || worldObj.isRemote || !ownedChunks.isChunkEnclosedInSet(chunkX, chunkZ)) {
+			return false;
+		}
+		int localX = chunkX - ownedChunks.minX;
+		int localZ = chunkZ - ownedChunks.minZ;
+		return claimedChunks[localX][localZ] == null && !ownedChunks.chunkOccupiedInLocal[localX][localZ];
+	}
+
+	/**
+	 * Ships only keep the chunks that have blocks in them, and the ones close
+	 * enough to those for lighting to need them. Returns the ship chunk at the
+	 * given position, making an empty one if there isn't one yet; that way nothing
+	 * ever gets generated inside of a ship. Returns null for chunks with blocks
+	 * that haven't been loaded yet, those get loaded from the disk like normal.
+	 */
+	public Chunk materializeChunk(int chunkX, int chunkZ) {
+		if (claimedChunks == null || worldObj.isRemote || !ownedChunks.isChunkEnclosedInSet(chunkX, chunkZ)) {
+			return null;
+		}
+		int localX = chunkX - ownedChunks.minX;
+		int localZ = chunkZ - ownedChunks.minZ;
+		Chunk chunk = claimedChunks[localX][localZ];
+		if (chunk == null && !ownedChunks.chunkOccupiedInLocal[localX][localZ]) {
+			chunk = worldObj.getChunkProvider().getLoadedChunk(chunkX, chunkZ);
+			if (chunk != null) {
+				injectChunkIntoWorld(chunk, chunkX, chunkZ, false);
+			} else {
+				chunk = createEmptyChunk(chunkX, chunkZ);
+			}
+		}
+		return chunk;
+	}
+
+	private Chunk createEmptyChunk(int chunkX, int chunkZ) {
+		Chunk chunk = new Chunk(worldObj, chunkX, chunkZ);
+		chunk.isTerrainPopulated = true;
+		chunk.generateSkylightMap();
+		injectChunkIntoWorld(chunk, chunkX, chunkZ, true);
+		if (!watchingPlayers.isEmpty()) {
+			SPacketChunkData data = new SPacketChunkData(chunk, 65535);
+			for (EntityPlayerMP watcher : watchingPlayers) {
+				watcher.connection.sendPacket(data);
+			}
+		}
+		return chunk;
+	}
+
+	// Makes every chunk the ship needs that doesn't exist yet
+	private void materializeNeededChunks() {
+		for (int x = 0; x < claimedChunks.length; x++) {
+			for (int z = 0; z < claimedChunks[x].length; z++) {
+				if (claimedChunks[x][z] == null && ownedChunks.isChunkNeededInLocal(x, z)) {
+					createEmptyChunk(x + ownedChunks.minX, z + ownedChunks.minZ);
+				}
+			}
+		}
+	}
+
+	// Called when the given chunk just got its first block
+	private void materializeChunksAround(int chunkX, int chunkZ) {
+		if (worldObj.isRemote) {
+			// The server sends these over, they get picked up once they're here
+			clientChunksMissing = true;
+			return;
+		}
+		for (int x = chunkX - ChunkSet.EMPTY_CHUNK_MARGIN; x <= chunkX + ChunkSet.EMPTY_CHUNK_MARGIN; x++) {
+			for (int z = chunkZ - ChunkSet.EMPTY_CHUNK_MARGIN; z <= chunkZ + ChunkSet.EMPTY_CHUNK_MARGIN; z++) {
+				materializeChunk(x, z);
+			}
+		}
+	}
+
+	// The server only sends the chunks that exist, this picks them up as they arrive
+	private void updateClientChunks() {
+		clientChunksMissing = false;
+		for (int x = 0; x < claimedChunks.length; x++) {
+			for (int z = 0; z < claimedChunks[x].length; z++) {
+				if (claimedChunks[x][z] == null && ownedChunks.isChunkNeededInLocal(x, z)) {
+					Chunk chunk = worldObj.getChunkProvider().getLoadedChunk(x + ownedChunks.minX, z + ownedChunks.minZ);
+					if (chunk != null && !chunk.isEmpty()) {
+						claimedChunks[x][z] = chunk;
+					} else {
+						clientChunksMissing = true;
+					}
+				}
+			}
+		}
+	}
+
 	public void injectChunkIntoWorld(Chunk chunk, int x, int z, boolean putInId2ChunkMap) {
 		ChunkProviderServer provider = (ChunkProviderServer) worldObj.getChunkProvider();
 		// TileEntities will break if you don't do this
@@ -621,6 +760,9 @@ public class PhysicsObject {
 		Set<EntityPlayerMP> newWatchers = getPlayersThatJustWatched();
 		for (Chunk[] chunkArray : claimedChunks) {
 			for (Chunk chunk : chunkArray) {
+				if (chunk == null) {
+					continue;
+				}
 				SPacketChunkData data = new SPacketChunkData(chunk, 65535);
 				for (EntityPlayerMP player : newWatchers) {
 					player.connection.sendPacket(data);
@@ -631,8 +773,8 @@ public class PhysicsObject {
 	}
 
 	public BlockPos getRegionCenter() {
-		return new BlockPos((claimedChunks[ownedChunks.radius + 1][ownedChunks.radius + 1].x * 16) - 8, 127,
-				(claimedChunks[ownedChunks.radius + 1][ownedChunks.radius + 1].z * 16) - 8);
+		return new BlockPos(((ownedChunks.minX + ownedChunks.radius + 1) * 16) - 8, 127,
+				((ownedChunks.minZ + ownedChunks.radius + 1) * 16) - 8);
 	}
 
 	/**
@@ -645,6 +787,9 @@ public class PhysicsObject {
 		watchingPlayers.remove(untracking);
 		for (int x = ownedChunks.minX; x <= ownedChunks.maxX; x++) {
 			for (int z = ownedChunks.minZ; z <= ownedChunks.maxZ; z++) {
+				if (claimedChunks[x - ownedChunks.minX][z - ownedChunks.minZ] == null) {
+					continue;
+				}
 				SPacketUnloadChunk unloadPacket = new SPacketUnloadChunk(x, z);
 				((EntityPlayerMP) untracking).connection.sendPacket(unloadPacket);
 			}
@@ -666,7 +811,10 @@ public class PhysicsObject {
 		ChunkProviderServer provider = (ChunkProviderServer) worldObj.getChunkProvider();
 		for (int x = ownedChunks.minX; x <= ownedChunks.maxX; x++) {
 			for (int z = ownedChunks.minZ; z <= ownedChunks.maxZ; z++) {
-				provider.queueUnload(claimedChunks[x - ownedChunks.minX][z - ownedChunks.minZ]);
+				Chunk chunk = claimedChunks[x - ownedChunks.minX][z - ownedChunks.minZ];
+				if (chunk != null) {
+					provider.queueUnload(chunk);
+				}
 
 				// Ticket ticket =
 				// ValkyrienWarfareMod.physicsManager.getManagerForWorld(this.worldObj).chunkLoadingTicket;
@@ -759,6 +907,10 @@ public class PhysicsObject {
 
 		coordTransform.setPrevMatrices();
 		coordTransform.updateAllTransforms();
+
+		if (clientChunksMissing) {
+			updateClientChunks();
+		}
 	}
 
 	public void updateChunkCache() {
@@ -776,14 +928,29 @@ public class PhysicsObject {
 		claimedChunksEntries = new PlayerChunkMapEntry[(ownedChunks.radius * 2) + 1][(ownedChunks.radius * 2) + 1];
 		for (int x = ownedChunks.minX; x <= ownedChunks.maxX; x++) {
 			for (int z = ownedChunks.minZ; z <= ownedChunks.maxZ; z++) {
-				Chunk chunk = worldObj.getChunkFromChunkCoords(x, z);
-				if (chunk == null) {
-					System.out.println("Just a loaded a null chunk");
-					chunk = new Chunk(worldObj, x, z);
+				int localX = x - ownedChunks.minX;
+				int localZ = z - ownedChunks.minZ;
+				// Chunks far from any blocks are left out, they only get made if something asks for them
+				if (!ownedChunks.isChunkNeededInLocal(localX, localZ)) {
+					continue;
 				}
-				// Do this to get it re-integrated into the world
-				if (!worldObj.isRemote) {
+				Chunk chunk;
+				if (worldObj.isRemote) {
+					chunk = worldObj.getChunkProvider().getLoadedChunk(x, z);
+					if (chunk == null || chunk.isEmpty()) {
+						clientChunksMissing = true;
+						continue;
+					}
+				} else if (ownedChunks.chunkOccupiedInLocal[localX][localZ]) {
+					chunk = worldObj.getChunkFromChunkCoords(x, z);
+					if (chunk == null) {
+						System.out.println("Just a loaded a null chunk");
+						chunk = new Chunk(worldObj, x, z);
+					}
+					// Do this to get it re-integrated into the world
 					injectChunkIntoWorld(chunk, x, z, false);
+				} else {
+					chunk = materializeChunk(x, z);
 				}
 				for (Entry<BlockPos, TileEntity> entry : chunk.tileEntities.entrySet()) {
 					TileEntity tile = entry.getValue();
@@ -791,10 +958,10 @@ public class PhysicsObject {
 						nodeTileEntitiesToUpdate.add(tile);
 					}
 				}
-				claimedChunks[x - ownedChunks.minX][z - ownedChunks.minZ] = chunk;
+				claimedChunks[localX][localZ] = chunk;
 			}
 		}
-		VKChunkCache = new VWChunkCache(worldObj, claimedChunks);
+		VKChunkCache = new VWChunkCache(worldObj, ownedChunks.minX, ownedChunks.minZ, claimedChunks);
 		refrenceBlockPos = getRegionCenter();
 		coordTransform = new CoordTransformObject(this);
 		if (!worldObj.isRemote) {
@@ -861,8 +1028,10 @@ public class PhysicsObject {
 		}
 	}
 
+	// Only true for the chunks of the ChunkSet that exist
 	public boolean ownsChunk(int chunkX, int chunkZ) {
-		return ownedChunks.isChunkEnclosedInSet(chunkX, chunkZ);
+		return ownedChunks.isChunkEnclosedInSet(chunkX, chunkZ)
+				&& claimedChunks[chunkX - ownedChunks.minX][chunkZ - ownedChunks.minZ] != null;
 	}
 
 	public void queueEntityForMounting(Entity toMount) {
@@ -913,6 +1082,21 @@ public class PhysicsObject {
 	}
 
 	public void writeToNBTTag(NBTTagCompound compound) {
+		// Writing the physics data applies the queued mass changes
+		ReentrantLock tickLock = getPhysicsTickLock();
+		if (tickLock != null) {
+			tickLock.lock();
+		}
+		try {
+			writeShipToNBTTag(compound);
+		} finally {
+			if (tickLock != null) {
+				tickLock.unlock();
+			}
+		}
+	}
+
+	private void writeShipToNBTTag(NBTTagCompound compound) {
 		ownedChunks.writeToNBT(compound);
 		NBTUtils.writeVectorToNBT("c", centerCoord, compound);
 		compound.setDouble("pitch", wrapper.pitch);
@@ -973,11 +1157,6 @@ public class PhysicsObject {
 
 		creator = compound.getString("owner");
 		claimedChunksInMap = compound.getBoolean("claimedChunksInMap");
-		for (int x = ownedChunks.minX; x <= ownedChunks.maxX; x++) {
-			for (int z = ownedChunks.minZ; z <= ownedChunks.maxZ; z++) {
-				worldObj.getChunkFromChunkCoords(x, z);
-			}
-		}
 
 		isNameCustom = compound.getBoolean("isNameCustom");
 
@@ -1124,7 +1303,29 @@ public class PhysicsObject {
 	    return collisionBB;
 	}
 	
+	/**
+	 * @return The manager of the world this ship is in, or null on the client.
+	 */
+	public WorldPhysObjectManager getWorldPhysicsManager() {
+	    return worldPhysicsManager;
+	}
+
 	public void setCollisionBoundingBox(AxisAlignedBB newCollisionBB) {
 	    this.collisionBB = newCollisionBB;
+	    if (worldPhysicsManager != null) {
+	        worldPhysicsManager.onShipAABBChanged(wrapper);
+	    }
+	}
+
+	/**
+	 * @return The bounding box of every block in this ship in local coordinates,
+	 *         or null if it hasn't been calculated yet.
+	 */
+	public AxisAlignedBB getBlockBoundingBoxInLocal() {
+	    return blockBBInLocal;
+	}
+
+	public void setBlockBoundingBoxInLocal(AxisAlignedBB newBlockBBInLocal) {
+	    this.blockBBInLocal = newBlockBBInLocal;
 	}
 }
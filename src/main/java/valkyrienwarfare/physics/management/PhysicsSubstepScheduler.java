@@ -0,0 +1,186 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package valkyrienwarfare.physics.management;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.math.AxisAlignedBB;
+import valkyrienwarfare.ValkyrienWarfareMod;
+import valkyrienwarfare.physics.calculations.PhysicsCalculations;
+import valkyrienwarfare.util.PhysicsSettings;
+
+/**
+ * Picks how many physics sub-steps every ship gets in a game tick. Ships that
+ * are moving fast, touching something or close to a player get the full
+ * physicsiterations count, while idle or far away ships get just a couple.
+ * Ships close enough to touch always end up with the same count, so that they
+ * step together.
+ */
+public class PhysicsSubstepScheduler {
+
+    // Fewest sub-steps an awake ship gets in a tick
+    public static final int MIN_SUBSTEPS = 2;
+    // How far any part of a ship near a player may move in one sub-step, in blocks
+    public static final double MAX_TRAVEL_PER_SUBSTEP = .25D;
+    // Ships further than this from every player are only stepped as much as
+    // they need to not skip through blocks
+    public static final double FULL_DETAIL_DISTANCE = 64D;
+    public static final double DISTANT_TRAVEL_PER_SUBSTEP = 1D;
+
+    private static final LongAdder shipTicks = new LongAdder();
+    private static final LongAdder fullDetailShipTicks = new LongAdder();
+    private static final LongAdder substepsSpent = new LongAdder();
+    private static final LongAdder substepsAvailable = new LongAdder();
+
+    /**
+     * Sets the sub-step count of every ship for this tick, cuts them back to fit
+     * the world's physics budget, and returns the highest count given to any of
+     * them.
+     */
+    public static int assignSubsteps(List<PhysicsWrapperEntity> physicsEntities, int maxSubsteps,
+            PhysicsTickBudget budget) {
+        maxSubsteps = Math.max(maxSubsteps, 1);
+        int mostSubsteps = 0;
+        for (PhysicsWrapperEntity wrapper : physicsEntities) {
+            PhysicsCalculations physicsProcessor = wrapper.wrapping.physicsProcessor;
+            // Always cleared, so an old contact doesn't carry over once this gets enabled
+            boolean hadContact = physicsProcessor.pollContact();
+            int substeps = maxSubsteps;
+            if (PhysicsSettings.doAdaptiveSubsteps) {
+                substeps = pickSubsteps(wrapper, hadContact, maxSubsteps);
+            }
+            physicsProcessor.setSubstepsThisTick(substeps);
+            physicsProcessor.setTickPriority(PhysicsTickBudget.getPriority(wrapper, hadContact));
+        }
+        List<List<PhysicsWrapperEntity>> islands = PhysicsIslandTask.createIslands(physicsEntities);
+        if (PhysicsSettings.doAdaptiveSubsteps) {
+            for (List<PhysicsWrapperEntity> island : islands) {
+                if (island.size() > 1) {
+                    int islandSubsteps = getMostSubsteps(island);
+                    for (PhysicsWrapperEntity wrapper : island) {
+                        wrapper.wrapping.physicsProcessor.setSubstepsThisTick(islandSubsteps);
+                    }
+                }
+            }
+        }
+        budget.fitToBudget(islands);
+
+        for (PhysicsWrapperEntity wrapper : physicsEntities) {
+            int substeps = wrapper.wrapping.physicsProcessor.getSubstepsThisTick();
+            shipTicks.increment();
+            substepsSpent.add(substeps);
+            substepsAvailable.add(maxSubsteps);
+            if (substeps == maxSubsteps) {
+                fullDetailShipTicks.increment();
+            }
+            mostSubsteps = Math.max(mostSubsteps, substeps);
+        }
+        return mostSubsteps;
+    }
+
+    private static int pickSubsteps(PhysicsWrapperEntity wrapper, boolean hadContact, int maxSubsteps) {
+        PhysicsCalculations physicsProcessor = wrapper.wrapping.physicsProcessor;
+        if (wrapper.firstUpdate || (physicsProcessor.isSleeping() && !physicsProcessor.isWakeUpRequested())) {
+            return 1;
+        }
+        AxisAlignedBB shipBB = wrapper.wrapping.getCollisionBoundingBox();
+        boolean nearPlayer = getDistanceSqToNearestPlayer(wrapper, shipBB) < FULL_DETAIL_DISTANCE * FULL_DETAIL_DISTANCE;
+        if (hadContact && nearPlayer) {
+            return maxSubsteps;
+        }
+
+        // Fastest any point of the ship could be moving, in blocks per second
+        double radius = .5D * Math.sqrt(square(shipBB.maxX - shipBB.minX) + square(shipBB.maxY - shipBB.minY)
+                + square(shipBB.maxZ - shipBB.minZ));
+        double invMass = physicsProcessor.getInvMass();
+        double speed = physicsProcessor.linearMomentum.length() * invMass + physicsProcessor.angularVelocity.length() * radius;
+        double travelPerTick = speed * ValkyrienWarfareMod.physSpeed;
+        double allowedTravel = nearPlayer ? MAX_TRAVEL_PER_SUBSTEP : DISTANT_TRAVEL_PER_SUBSTEP;
+
+        int substeps = (int) Math.ceil(travelPerTick / allowedTravel);
+        if (Double.isNaN(travelPerTick) || substeps > maxSubsteps) {
+            return maxSubsteps;
+        }
+        return Math.max(substeps, Math.min(MIN_SUBSTEPS, maxSubsteps));
+    }
+
+    // Measured to the ship's bounding box rather than its center, so big ships
+    // don't lose detail while a player is standing on their edge
+    private static double getDistanceSqToNearestPlayer(PhysicsWrapperEntity wrapper, AxisAlignedBB shipBB) {
+        double nearestSq = Double.MAX_VALUE;
+        for (EntityPlayer player : wrapper.world.playerEntities) {
+            double dx = Math.max(0, Math.max(shipBB.minX - player.posX, player.posX - shipBB.maxX));
+            double dy = Math.max(0, Math.max(shipBB.minY - player.posY, player.posY - shipBB.maxY));
+            double dz = Math.max(0, Math.max(shipBB.minZ - player.posZ, player.posZ - shipBB.maxZ));
+            nearestSq = Math.min(nearestSq, dx * dx + dy * dy + dz * dz);
+        }
+        return nearestSq;
+    }
+
+    private static double square(double value) {
+        return value * value;
+    }
+
+    public static int getMostSubsteps(List<PhysicsWrapperEntity> physicsEntities) {
+        int mostSubsteps = 0;
+        for (PhysicsWrapperEntity wrapper : physicsEntities) {
+            mostSubsteps = Math.max(mostSubsteps, wrapper.wrapping.physicsProcessor.getSubstepsThisTick());
+        }
+        return mostSubsteps;
+    }
+
+    /**
+     * Fills shipsInPass with the ships that still have a sub-step left to run on
+     * the given pass of this tick.
+     */
+    public static List<PhysicsWrapperEntity> getShipsForPass(List<PhysicsWrapperEntity> physicsEntities, int pass,
+            List<PhysicsWrapperEntity> shipsInPass) {
+        shipsInPass.clear();
+        for (PhysicsWrapperEntity wrapper : physicsEntities) {
+            if (pass < wrapper.wrapping.physicsProcessor.getSubstepsThisTick()) {
+                shipsInPass.add(wrapper);
+            }
+        }
+        return shipsInPass;
+    }
+
+    public static long getShipTicks() {
+        return shipTicks.sum();
+    }
+
+    public static long getFullDetailShipTicks() {
+        return fullDetailShipTicks.sum();
+    }
+
+    public static long getSubstepsSpent() {
+        return substepsSpent.sum();
+    }
+
+    public static long getSubstepsAvailable() {
+        return substepsAvailable.sum();
+    }
+
+    public static void resetMetrics() {
+        shipTicks.reset();
+        fullDetailShipTicks.reset();
+        substepsSpent.reset();
+        substepsAvailable.reset();
+    }
+
+}
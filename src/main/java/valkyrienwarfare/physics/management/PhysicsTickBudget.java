@@ -0,0 +1,245 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package valkyrienwarfare.physics.management;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import net.minecraft.entity.player.EntityPlayer;
+import valkyrienwarfare.ValkyrienWarfareMod;
+import valkyrienwarfare.addon.control.piloting.IShipPilot;
+import valkyrienwarfare.mod.physmanagement.interaction.EntityDraggable;
+import valkyrienwarfare.physics.calculations.PhysicsCalculations;
+
+/**
+ * Keeps the physics of one world within physicsTickBudgetMs, so that a world
+ * full of ships slows its ships down instead of the whole server. Uses the
+ * measured cost of a ship sub-step to guess how many fit into the budget, and
+ * when they don't, the least important ships get fewer sub-steps or skip the
+ * tick entirely.
+ */
+public class PhysicsTickBudget {
+
+    // Ships are given up on in this order, lowest first
+    public static final int PRIORITY_IDLE = 0;
+    public static final int PRIORITY_COLLIDING = 1;
+    public static final int PRIORITY_OCCUPIED = 2;
+    public static final int PRIORITY_PILOTED = 3;
+    // Sub-steps a ship is cut down to before anything gets deferred
+    public static final int REDUCED_SUBSTEPS = 2;
+    // A ship is never deferred more than this many ticks in a row
+    public static final int MAX_DEFERRED_TICKS = 4;
+    // How much each tick's measurement moves the cost estimate
+    private static final double COST_SMOOTHING = .2D;
+
+    public enum Policy {
+        UNLIMITED, FULL, REDUCED, DEFERRING
+    }
+
+    private volatile Policy policy = Policy.UNLIMITED;
+    // Estimated wall time of one ship sub-step, 0 until the first measurement
+    private volatile double nanosPerSubstep;
+    private volatile double lastPhysicsMillis;
+    private volatile int plannedSubsteps;
+    private volatile int reducedShips;
+    private volatile int deferredShips;
+
+    /**
+     * Returns how important it is that the ship gets simulated properly this tick
+     */
+    public static int getPriority(PhysicsWrapperEntity wrapper, boolean hadContact) {
+        boolean occupied = false;
+        for (EntityPlayer player : wrapper.world.playerEntities) {
+            IShipPilot pilot = IShipPilot.class.cast(player);
+            if (pilot.getPilotedShip() == wrapper || (pilot.isPilotingATile() && ValkyrienWarfareMod.physicsManager
+                    .getObjectManagingPos(wrapper.world, pilot.getPosBeingControlled()) == wrapper)) {
+                return PRIORITY_PILOTED;
+            }
+            if (EntityDraggable.getDraggableFromEntity(player).getWorldBelowFeet() == wrapper
+                    || wrapper.riddenByEntities.contains(player)) {
+                occupied = true;
+            }
+        }
+        if (occupied) {
+            return PRIORITY_OCCUPIED;
+        }
+        return hadContact ? PRIORITY_COLLIDING : PRIORITY_IDLE;
+    }
+
+    /**
+     * Lowers the sub-step counts picked by PhysicsSubstepScheduler until the
+     * estimated cost fits the budget. Ships in the same island are always changed
+     * together.
+     */
+    public void fitToBudget(List<List<PhysicsWrapperEntity>> islands) {
+        int totalSubsteps = 0;
+        for (List<PhysicsWrapperEntity> island : islands) {
+            totalSubsteps += getIslandCost(island);
+        }
+        reducedShips = 0;
+        deferredShips = 0;
+        double budgetNanos = ValkyrienWarfareMod.physicsTickBudgetMs * 1000000D;
+        if (budgetNanos <= 0 || nanosPerSubstep <= 0) {
+            policy = budgetNanos <= 0 ? Policy.UNLIMITED : Policy.FULL;
+            plannedSubsteps = totalSubsteps;
+            resetDeferredTicks(islands);
+            return;
+        }
+        int budgetSubsteps = (int) (budgetNanos / nanosPerSubstep);
+        policy = Policy.FULL;
+        if (totalSubsteps <= budgetSubsteps) {
+            plannedSubsteps = totalSubsteps;
+            resetDeferredTicks(islands);
+            return;
+        }
+
+        List<List<PhysicsWrapperEntity>> byPriority = new ArrayList<List<PhysicsWrapperEntity>>(islands);
+        // Lowest priority first, and the most expensive islands first within a priority
+        Collections.sort(byPriority, new Comparator<List<PhysicsWrapperEntity>>() {
+            @Override
+            public int compare(List<PhysicsWrapperEntity> first, List<PhysicsWrapperEntity> second) {
+                int priorityDif = Integer.compare(getIslandPriority(first), getIslandPriority(second));
+                if (priorityDif != 0) {
+                    return priorityDif;
+                }
+                return Integer.compare(getIslandCost(second), getIslandCost(first));
+            }
+        });
+
+        boolean[] reduced = new boolean[byPriority.size()];
+        for (int i = 0; i < byPriority.size() && totalSubsteps > budgetSubsteps; i++) {
+            List<PhysicsWrapperEntity> island = byPriority.get(i);
+            int cost = getIslandCost(island);
+            setIslandSubsteps(island, REDUCED_SUBSTEPS);
+            totalSubsteps -= cost - getIslandCost(island);
+            reduced[i] = cost != getIslandCost(island);
+        }
+        for (int i = 0; i < byPriority.size() && totalSubsteps > budgetSubsteps; i++) {
+            List<PhysicsWrapperEntity> island = byPriority.get(i);
+            // Piloted ships and ships that have waited long enough always get to move
+            if (getIslandPriority(island) < PRIORITY_PILOTED && getMostDeferredTicks(island) < MAX_DEFERRED_TICKS) {
+                totalSubsteps -= getIslandCost(island);
+                setIslandSubsteps(island, 0);
+            }
+        }
+
+        for (int i = 0; i < byPriority.size(); i++) {
+            List<PhysicsWrapperEntity> island = byPriority.get(i);
+            boolean deferred = getIslandSubsteps(island) == 0;
+            if (deferred) {
+                deferredShips += island.size();
+            } else if (reduced[i]) {
+                reducedShips += island.size();
+            }
+            for (PhysicsWrapperEntity wrapper : island) {
+                PhysicsCalculations physicsProcessor = wrapper.wrapping.physicsProcessor;
+                physicsProcessor.setTicksDeferred(deferred ? physicsProcessor.getTicksDeferred() + 1 : 0);
+            }
+        }
+        if (deferredShips > 0) {
+            policy = Policy.DEFERRING;
+        } else if (reducedShips > 0) {
+            policy = Policy.REDUCED;
+        }
+        plannedSubsteps = totalSubsteps;
+    }
+
+    /**
+     * Called by the physics thread once it has stepped every ship, with the wall
+     * time that took.
+     */
+    public void onPhysicsTickFinished(long nanos) {
+        lastPhysicsMillis = nanos / 1000000D;
+        int substeps = plannedSubsteps;
+        if (substeps > 0) {
+            double measured = (double) nanos / substeps;
+            nanosPerSubstep = nanosPerSubstep <= 0 ? measured
+                    : nanosPerSubstep + (measured - nanosPerSubstep) * COST_SMOOTHING;
+        }
+    }
+
+    private static void resetDeferredTicks(List<List<PhysicsWrapperEntity>> islands) {
+        for (List<PhysicsWrapperEntity> island : islands) {
+            for (PhysicsWrapperEntity wrapper : island) {
+                wrapper.wrapping.physicsProcessor.setTicksDeferred(0);
+            }
+        }
+    }
+
+    private static int getIslandPriority(List<PhysicsWrapperEntity> island) {
+        int priority = PRIORITY_IDLE;
+        for (PhysicsWrapperEntity wrapper : island) {
+            priority = Math.max(priority, wrapper.wrapping.physicsProcessor.getTickPriority());
+        }
+        return priority;
+    }
+
+    private static int getMostDeferredTicks(List<PhysicsWrapperEntity> island) {
+        int ticks = 0;
+        for (PhysicsWrapperEntity wrapper : island) {
+            ticks = Math.max(ticks, wrapper.wrapping.physicsProcessor.getTicksDeferred());
+        }
+        return ticks;
+    }
+
+    // The ships of an island all have the same count
+    private static int getIslandSubsteps(List<PhysicsWrapperEntity> island) {
+        return PhysicsSubstepScheduler.getMostSubsteps(island);
+    }
+
+    private static int getIslandCost(List<PhysicsWrapperEntity> island) {
+        int cost = 0;
+        for (PhysicsWrapperEntity wrapper : island) {
+            cost += wrapper.wrapping.physicsProcessor.getSubstepsThisTick();
+        }
+        return cost;
+    }
+
+    private static void setIslandSubsteps(List<PhysicsWrapperEntity> island, int substeps) {
+        for (PhysicsWrapperEntity wrapper : island) {
+            PhysicsCalculations physicsProcessor = wrapper.wrapping.physicsProcessor;
+            physicsProcessor.setSubstepsThisTick(Math.min(physicsProcessor.getSubstepsThisTick(), substeps));
+        }
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public double getNanosPerSubstep() {
+        return nanosPerSubstep;
+    }
+
+    public double getLastPhysicsMillis() {
+        return lastPhysicsMillis;
+    }
+
+    public int getPlannedSubsteps() {
+        return plannedSubsteps;
+    }
+
+    public int getReducedShips() {
+        return reducedShips;
+    }
+
+    public int getDeferredShips() {
+        return deferredShips;
+    }
+
+}
@@ -22,19 +22,78 @@ import java.util.concurrent.Callable;
 
 import net.minecraft.world.World;
 import valkyrienwarfare.ValkyrienWarfareMod;
-import valkyrienwarfare.api.Vector;
 import valkyrienwarfare.mod.physmanagement.interaction.EntityDraggable;
+import valkyrienwarfare.physics.collision.ShipPhysicsCollider;
 import valkyrienwarfare.physics.collision.optimization.ShipCollisionTask;
+import valkyrienwarfare.physics.collision.optimization.ShipPairCollisionTask;
 
 public class PhysicsTickHandler {
 
+    /**
+     * With decoupled physics the server thread holds the tickLock of every world
+     * for its whole tick, so packet handling, the world ticks and everything else
+     * it does never sees a ship partway through a physics tick. The physics
+     * threads get to run while the server waits for its next tick.
+     */
+    public static void onServerTickStart() {
+        if (!ValkyrienWarfareMod.decoupledPhysics) {
+            return;
+        }
+        for (WorldPhysObjectManager manager : ValkyrienWarfareMod.physicsManager.getManagers()) {
+            DecoupledPhysicsLoop physicsLoop = manager.getPhysicsLoop();
+            if (physicsLoop.isRunning() && !physicsLoop.getTickLock().isHeldByCurrentThread()) {
+                // Only has to wait if the physics thread is halfway through a tick
+                physicsLoop.getTickLock().lock();
+            }
+        }
+    }
+
+    public static void onServerTickEnd() {
+        for (WorldPhysObjectManager manager : ValkyrienWarfareMod.physicsManager.getManagers()) {
+            releaseTickLock(manager.getPhysicsLoop());
+        }
+    }
+
     public static void onWorldTickStart(World world) {
         WorldPhysObjectManager manager = ValkyrienWarfareMod.physicsManager.getManagerForWorld(world);
+        DecoupledPhysicsLoop physicsLoop = manager.getPhysicsLoop();
+
+        if (ValkyrienWarfareMod.decoupledPhysics) {
+            physicsLoop.start();
+            // Already held unless the loop only just started, either way it's held
+            // until onServerTickEnd()
+            if (!physicsLoop.getTickLock().isHeldByCurrentThread()) {
+                physicsLoop.getTickLock().lock();
+            }
+            List<PhysicsWrapperEntity> physicsEntities = prepareTick(manager);
+            int passes = PhysicsSubstepScheduler.assignSubsteps(physicsEntities, ValkyrienWarfareMod.physIter,
+                    manager.getTickBudget());
+            physicsLoop.setTickInput(physicsEntities, passes);
+            return;
+        }
+        releaseTickLock(physicsLoop);
+        physicsLoop.stop();
+
+        List<PhysicsWrapperEntity> physicsEntities = prepareTick(manager);
+        int passes = PhysicsSubstepScheduler.assignSubsteps(physicsEntities, ValkyrienWarfareMod.physIter,
+                manager.getTickBudget());
+
+        PhysicsTickThreadTask physicsThreadTask = new PhysicsTickThreadTask(passes, physicsEntities, manager);
+
+        try {
+            manager.setPhysicsThread(ValkyrienWarfareMod.PHYSICS_THREADS.submit(physicsThreadTask));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
+    // Everything that has to happen on the game thread before the physics tick
+    private static List<PhysicsWrapperEntity> prepareTick(WorldPhysObjectManager manager) {
         List<PhysicsWrapperEntity> toUnload = new ArrayList<PhysicsWrapperEntity>(manager.physicsEntitiesToUnload);
         for (PhysicsWrapperEntity wrapper : toUnload) {
             manager.onUnload(wrapper);
         }
+        manager.updateTickablePhysicsEntities();
 
         List<PhysicsWrapperEntity> physicsEntities = manager.getTickablePhysicsEntities();
 
@@ -42,24 +101,42 @@ public class PhysicsTickHandler {
             wrapper.wrapping.coordTransform.setPrevMatrices();
             wrapper.wrapping.updateChunkCache();
         }
-
-        PhysicsTickThreadTask physicsThreadTask = new PhysicsTickThreadTask(ValkyrienWarfareMod.physIter,
-                physicsEntities, manager);
-
-        try {
-            manager.setPhysicsThread(ValkyrienWarfareMod.PHYSICS_THREADS.submit(physicsThreadTask));
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        manager.wakeShipsNearMovingShips(physicsEntities);
+        return physicsEntities;
     }
 
     public static void onWorldTickEnd(World world) {
         WorldPhysObjectManager manager = ValkyrienWarfareMod.physicsManager.getManagerForWorld(world);
         List<PhysicsWrapperEntity> physicsEntities = manager.getTickablePhysicsEntities();
+        DecoupledPhysicsLoop physicsLoop = manager.getPhysicsLoop();
+
+        if (physicsLoop.getTickLock().isHeldByCurrentThread()) {
+            // The physics thread already published the Euler angles and snapshots
+            finishTick(world, physicsEntities);
+            return;
+        }
+
         manager.awaitPhysics();
+        for (PhysicsWrapperEntity wrapper : physicsEntities) {
+            // Only worked out once per tick, the physics steps themselves never need them
+            wrapper.wrapping.physicsProcessor.updateEulerAngles();
+            wrapper.wrapping.coordTransform.publishSnapshot();
+        }
+        finishTick(world, physicsEntities);
+    }
+
+    // Lets the decoupled physics thread run again
+    private static void releaseTickLock(DecoupledPhysicsLoop physicsLoop) {
+        while (physicsLoop.getTickLock().isHeldByCurrentThread()) {
+            physicsLoop.getTickLock().unlock();
+        }
+    }
 
+    private static void finishTick(World world, List<PhysicsWrapperEntity> physicsEntities) {
         for (PhysicsWrapperEntity wrapper : physicsEntities) {
-            wrapper.wrapping.coordTransform.sendPositionToPlayers();
+            if (wrapper.wrapping.physicsProcessor.shouldSendPositionUpdate()) {
+                wrapper.wrapping.coordTransform.sendPositionToPlayers();
+            }
         }
         EntityDraggable.tickAddedVelocityForWorld(world);
         for (PhysicsWrapperEntity wrapperEnt : physicsEntities) {
@@ -68,33 +145,64 @@ public class PhysicsTickHandler {
     }
 
     public static void runPhysicsIteration(List<PhysicsWrapperEntity> physicsEntities, WorldPhysObjectManager manager) {
-        double newPhysSpeed = ValkyrienWarfareMod.physSpeed;
-        Vector newGravity = ValkyrienWarfareMod.gravity;
-        int iters = ValkyrienWarfareMod.physIter;
-
         List<ShipCollisionTask> collisionTasks = new ArrayList<ShipCollisionTask>(physicsEntities.size() * 2);
+        List<ShipPairCollisionTask> pairCollisionTasks = new ArrayList<ShipPairCollisionTask>();
 
-        for (PhysicsWrapperEntity wrapper : physicsEntities) {
-            if (!wrapper.firstUpdate) {
-                wrapper.wrapping.physicsProcessor.rawPhysTickPreCol(newPhysSpeed, iters);
-                wrapper.wrapping.physicsProcessor.worldCollision.tickUpdatingTheCollisionCache();
-                wrapper.wrapping.physicsProcessor.worldCollision.splitIntoCollisionTasks(collisionTasks);
-            }
-        }
+        runPreCollision(physicsEntities, collisionTasks, pairCollisionTasks);
 
+        List<Callable<Void>> allTasks = new ArrayList<Callable<Void>>(collisionTasks.size() + pairCollisionTasks.size());
+        allTasks.addAll(collisionTasks);
+        allTasks.addAll(pairCollisionTasks);
         try {
             // TODO: Right here!
-            ValkyrienWarfareMod.PHYSICS_THREADS_EXECUTOR.invokeAll(collisionTasks);
+            ValkyrienWarfareMod.PHYSICS_THREADS_EXECUTOR.invokeAll(allTasks);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
 
+        runPostCollision(physicsEntities, collisionTasks, pairCollisionTasks);
+    }
+
+    /**
+     * Calculates the forces for every ship and fills collisionTasks and
+     * pairCollisionTasks with the collision work that has to be done before the
+     * post collision step.
+     */
+    public static void runPreCollision(List<PhysicsWrapperEntity> physicsEntities,
+            List<ShipCollisionTask> collisionTasks, List<ShipPairCollisionTask> pairCollisionTasks) {
+        double newPhysSpeed = ValkyrienWarfareMod.physSpeed;
+
+        for (PhysicsWrapperEntity wrapper : physicsEntities) {
+            if (!wrapper.firstUpdate) {
+                wrapper.wrapping.physicsProcessor.rawPhysTickPreCol(newPhysSpeed,
+                        wrapper.wrapping.physicsProcessor.getSubstepsThisTick());
+                // Sleeping ships aren't moving, so they can't collide into the world
+                if (!wrapper.wrapping.physicsProcessor.isSleeping()) {
+                    wrapper.wrapping.physicsProcessor.worldCollision.tickUpdatingTheCollisionCache();
+                    wrapper.wrapping.physicsProcessor.worldCollision.splitIntoCollisionTasks(collisionTasks);
+                }
+            }
+        }
+        ShipPhysicsCollider.createCollisionTasks(physicsEntities, pairCollisionTasks);
+    }
+
+    /**
+     * Applies the results of the finished collisionTasks, and then moves every
+     * ship forward by one physics sub-step.
+     */
+    public static void runPostCollision(List<PhysicsWrapperEntity> physicsEntities,
+            List<ShipCollisionTask> collisionTasks, List<ShipPairCollisionTask> pairCollisionTasks) {
         for (ShipCollisionTask task : collisionTasks) {
             PhysicsWrapperEntity wrapper = task.getToTask().getParent().wrapper;
             if (!wrapper.firstUpdate) {
                 task.getToTask().processCollisionTask(task);
             }
         }
+        // Impulses between ships touch two ships at once, so these are applied one
+        // pair at a time
+        for (ShipPairCollisionTask task : pairCollisionTasks) {
+            task.getToTask().processCollisionTask(task);
+        }
 
         for (PhysicsWrapperEntity wrapper : physicsEntities) {
             if (!wrapper.firstUpdate) {
@@ -103,16 +211,15 @@ public class PhysicsTickHandler {
                 wrapper.wrapping.coordTransform.updateAllTransforms();
             }
         }
-
     }
 
-    private static class PhysicsTickThreadTask implements Callable<Void> {
+    static class PhysicsTickThreadTask implements Callable<Void> {
 
         private final int iters;
-        private final List physicsEntities;
+        private final List<PhysicsWrapperEntity> physicsEntities;
         private final WorldPhysObjectManager manager;
 
-        public PhysicsTickThreadTask(int iters, List physicsEntities, WorldPhysObjectManager manager) {
+        public PhysicsTickThreadTask(int iters, List<PhysicsWrapperEntity> physicsEntities, WorldPhysObjectManager manager) {
             this.iters = iters;
             this.physicsEntities = physicsEntities;
             this.manager = manager;
@@ -120,10 +227,20 @@ public class PhysicsTickHandler {
 
         @Override
         public Void call() throws Exception {
-            for (int pass = 0; pass < iters; pass++) {
-                // Run PRE-Col
-                runPhysicsIteration(physicsEntities, manager);
+            long startTime = System.nanoTime();
+            if (ValkyrienWarfareMod.parallelShipPhysics && physicsEntities.size() > 1) {
+                // Ships that can't touch each other get stepped on their own threads
+                PhysicsIslandTask.runIslands(physicsEntities);
+            } else {
+                List<PhysicsWrapperEntity> shipsInPass = new ArrayList<PhysicsWrapperEntity>(physicsEntities.size());
+                for (int pass = 0; pass < iters; pass++) {
+                    // Ships that were given fewer sub-steps drop out of the later passes
+                    PhysicsSubstepScheduler.getShipsForPass(physicsEntities, pass, shipsInPass);
+                    // Run PRE-Col
+                    runPhysicsIteration(shipsInPass, manager);
+                }
             }
+            manager.getTickBudget().onPhysicsTickFinished(System.nanoTime() - startTime);
             return null;
         }
 
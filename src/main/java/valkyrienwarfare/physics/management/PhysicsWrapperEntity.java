@@ -113,6 +113,14 @@ public class PhysicsWrapperEntity extends Entity implements IEntityAdditionalSpa
         firstUpdate = false;
     }
 
+    @Override
+    public void setDead() {
+        super.setDead();
+        if (wrapping.tickable) {
+            ValkyrienWarfareMod.physicsManager.getManagerForWorld(world).queueTickableCheck(this);
+        }
+    }
+
     @Override
     public void updatePassenger(Entity passenger) {
         Vector inLocal = wrapping.getLocalPositionForEntity(passenger);
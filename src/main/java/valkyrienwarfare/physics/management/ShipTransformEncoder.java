@@ -0,0 +1,96 @@
+/*
+ * Adapted from the Wizardry License
+ *
+ * Copyright (c) 2015-2018 the Valkyrien Warfare team
+ *
+ * Permission is hereby granted to any persons and/or organizations using this software to copy, modify, merge, publish, and distribute it.
+ * Said persons and/or organizations are not allowed to use the software or any derivatives of the work for commercial use or any other means to generate income unless it is to be used as a part of a larger project (IE: "modpacks"), nor are they allowed to claim this software as their own.
+ *
+ * The persons and/or organizations are also disallowed from sub-licensing and/or trademarking this software without explicit permission from the Valkyrien Warfare team.
+ *
+ * Any persons and/or organizations using this software must disclose their source code and have it publicly available, include this license, provide sufficient credit to the original authors of the project (IE: The Valkyrien Warfare team), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NON INFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package valkyrienwarfare.physics.management;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.minecraft.entity.player.EntityPlayerMP;
+import valkyrienwarfare.api.Vector;
+import valkyrienwarfare.mod.network.PhysWrapperPositionMessage;
+
+/**
+ * The server side of ShipTransformationBuffer; remembers the last keyframe and
+ * center of mass it sent so the position messages only have to send what
+ * changed.
+ */
+public class ShipTransformEncoder {
+
+    // A full position goes out at least this often, which also bounds how long a
+    // client that missed a keyframe has to wait for the next one
+    public static final int KEYFRAME_INTERVAL = 20;
+    // The ship might not be spawned on the client yet when a player starts
+    // watching, so they get keyframes for a few ticks
+    private static final int KEYFRAMES_FOR_NEW_WATCHERS = 3;
+
+    private final Map<EntityPlayerMP, Integer> keyframesOwed = new HashMap<EntityPlayerMP, Integer>();
+    private int keyframeID = -1;
+    private int ticksSinceKeyframe;
+    private double keyframeX, keyframeY, keyframeZ;
+    private double centerX, centerY, centerZ;
+
+    /**
+     * Makes the message for this tick, every player watching gets the same one.
+     */
+    public PhysWrapperPositionMessage encode(int entityID, int relativeTick, double posX, double posY, double posZ,
+            double pitch, double yaw, double roll, Vector centerOfMass, Collection<EntityPlayerMP> watchers) {
+        boolean sendKeyframe = updateWatchers(watchers) || keyframeID == -1
+                || ticksSinceKeyframe >= KEYFRAME_INTERVAL - 1
+                || Math.abs(posX - keyframeX) > PhysWrapperPositionMessage.MAX_POSITION_DELTA
+                || Math.abs(posY - keyframeY) > PhysWrapperPositionMessage.MAX_POSITION_DELTA
+                || Math.abs(posZ - keyframeZ) > PhysWrapperPositionMessage.MAX_POSITION_DELTA;
+
+        boolean centerChanged = centerOfMass.X != centerX || centerOfMass.Y != centerY
+                || centerOfMass.Z != centerZ;
+        centerX = centerOfMass.X;
+        centerY = centerOfMass.Y;
+        centerZ = centerOfMass.Z;
+
+        if (sendKeyframe) {
+            keyframeID = (keyframeID + 1) & 255;
+            ticksSinceKeyframe = 0;
+            keyframeX = posX;
+            keyframeY = posY;
+            keyframeZ = posZ;
+            return PhysWrapperPositionMessage.createKeyframe(entityID, relativeTick, keyframeID, posX, posY, posZ,
+                    pitch, yaw, roll, centerOfMass);
+        }
+
+        ticksSinceKeyframe++;
+        return PhysWrapperPositionMessage.createDelta(entityID, relativeTick, keyframeID, posX - keyframeX,
+                posY - keyframeY, posZ - keyframeZ, pitch, yaw, roll, centerChanged ? centerOfMass : null);
+    }
+
+    // Returns true if someone watching still needs a keyframe
+    private boolean updateWatchers(Collection<EntityPlayerMP> watchers) {
+        keyframesOwed.keySet().retainAll(watchers);
+        boolean keyframeNeeded = false;
+        for (EntityPlayerMP watcher : watchers) {
+            if (!keyframesOwed.containsKey(watcher)) {
+                keyframesOwed.put(watcher, KEYFRAMES_FOR_NEW_WATCHERS);
+            }
+        }
+        for (Map.Entry<EntityPlayerMP, Integer> entry : keyframesOwed.entrySet()) {
+            if (entry.getValue() > 0) {
+                entry.setValue(entry.getValue() - 1);
+                keyframeNeeded = true;
+            }
+        }
+        return keyframeNeeded;
+    }
+}
@@ -16,6 +16,7 @@
 
 package valkyrienwarfare.physics.management;
 
+import valkyrienwarfare.api.Vector;
 import valkyrienwarfare.mod.network.PhysWrapperPositionMessage;
 import valkyrienwarfare.physics.data.ShipTransformData;
 
@@ -25,6 +26,10 @@ import valkyrienwarfare.physics.data.ShipTransformData;
 public class ShipTransformationBuffer {
 
     private final ShipTransformData[] recentTransforms;
+    // The last keyframe from the server, -1 until one arrives
+    private int keyframeID = -1;
+    private double keyframeX, keyframeY, keyframeZ;
+    private Vector lastCenterOfMass;
 
     public ShipTransformationBuffer() {
         recentTransforms = new ShipTransformData[20];
@@ -33,6 +38,26 @@ public class ShipTransformationBuffer {
     // Number of ticks the parent ship has been active for
     // Increases by 1 for every message pushed onto the stack
     public void pushMessage(PhysWrapperPositionMessage toPush) {
+        if (toPush.isKeyframe()) {
+            keyframeID = toPush.getKeyframeID();
+            keyframeX = toPush.posX;
+            keyframeY = toPush.posY;
+            keyframeZ = toPush.posZ;
+        } else if (!toPush.isResolved()) {
+            if (toPush.getKeyframeID() != keyframeID) {
+                // Sent against a keyframe we never got, the next one will fix it
+                return;
+            }
+            toPush.resolve(keyframeX, keyframeY, keyframeZ);
+        }
+        if (toPush.centerOfMass == null) {
+            if (lastCenterOfMass == null) {
+                return;
+            }
+            toPush.centerOfMass = lastCenterOfMass;
+        }
+        lastCenterOfMass = toPush.centerOfMass;
+
         // Shift whole array to the right
         for (int index = recentTransforms.length - 2; index >= 0; index--) {
             recentTransforms[index + 1] = recentTransforms[index];
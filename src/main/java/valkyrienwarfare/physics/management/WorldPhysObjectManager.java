@@ -17,23 +17,33 @@
 package valkyrienwarfare.physics.management;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 
 import net.minecraft.entity.Entity;
 import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
 import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.EmptyChunk;
 import net.minecraftforge.common.ForgeChunkManager;
 import net.minecraftforge.common.ForgeChunkManager.Ticket;
 import net.minecraftforge.common.ForgeChunkManager.Type;
 import valkyrienwarfare.ValkyrienWarfareMod;
+import valkyrienwarfare.mod.physmanagement.chunk.PhysicsChunkManager;
+import valkyrienwarfare.physics.calculations.PhysicsCalculations;
+import valkyrienwarfare.physics.collision.WorldPhysicsCollider;
+import valkyrienwarfare.physics.collision.optimization.DynamicAABBTree;
 
 /**
  * This class essentially handles all the issues with ticking and handling
@@ -44,12 +54,34 @@ import valkyrienwarfare.ValkyrienWarfareMod;
 public class WorldPhysObjectManager {
 
     private final Ticket chunkLoadingTicket;
+    // Ships by the slot of the PhysicsChunkManager grid their chunks are in
+    private volatile PhysicsWrapperEntity[] shipsByChunkSetSlot;
+    // Only for ships whose chunks don't line up with the grid
     private final Map<ChunkPos, PhysicsWrapperEntity> chunkPosToPhysicsEntityMap;
     public final World worldObj;
     public final List<PhysicsWrapperEntity> physicsEntities;
     public final List<PhysicsWrapperEntity> physicsEntitiesToUnload;
     private final List<Callable<Void>> physCollisonCallables;
     private Future<Void> physicsThreadStatus;
+    // Broadphase over the collision bounding boxes of physicsEntities, only kept on
+    // the server
+    private final DynamicAABBTree<PhysicsWrapperEntity> shipAABBTree;
+    // The world regions each ship's collision cache covers, so block changes only
+    // reach the caches they fall inside of
+    private final DynamicAABBTree<PhysicsWrapperEntity> collisionCacheTree;
+    private final PhysicsTickBudget tickBudget;
+    private final DecoupledPhysicsLoop physicsLoop;
+    // Only changed by updateTickablePhysicsEntities(), which runs while the physics
+    // thread is idle
+    private final List<PhysicsWrapperEntity> tickablePhysicsEntities;
+    private final List<PhysicsWrapperEntity> tickablePhysicsEntitiesView;
+    // The loaded ships by the world chunk they were last checked in
+    private final Map<ChunkPos, List<PhysicsWrapperEntity>> shipsByWorldChunk;
+    private final Set<PhysicsWrapperEntity> shipsToRecheck;
+    private final Set<PhysicsWrapperEntity> shipsToDrop;
+    private final Set<ChunkPos> chunksToRecheck;
+    // Handed out for the chunks in ship space that don't have anything in them
+    private final Chunk emptyShipChunk;
 
     public WorldPhysObjectManager(World toManage) {
         this.worldObj = toManage;
@@ -57,64 +89,143 @@ public class WorldPhysObjectManager {
         this.physicsEntities = new ArrayList<PhysicsWrapperEntity>();
         this.physicsEntitiesToUnload = new ArrayList<PhysicsWrapperEntity>();
         this.physCollisonCallables = new ArrayList<Callable<Void>>();
+        this.shipsByChunkSetSlot = new PhysicsWrapperEntity[16];
         this.chunkPosToPhysicsEntityMap = new HashMap<ChunkPos, PhysicsWrapperEntity>();
         this.physicsThreadStatus = null;
+        this.shipAABBTree = new DynamicAABBTree<PhysicsWrapperEntity>();
+        this.collisionCacheTree = new DynamicAABBTree<PhysicsWrapperEntity>();
+        this.tickBudget = new PhysicsTickBudget();
+        this.physicsLoop = new DecoupledPhysicsLoop(this);
+        this.tickablePhysicsEntities = new ArrayList<PhysicsWrapperEntity>();
+        this.tickablePhysicsEntitiesView = Collections.unmodifiableList(tickablePhysicsEntities);
+        this.shipsByWorldChunk = new HashMap<ChunkPos, List<PhysicsWrapperEntity>>();
+        this.shipsToRecheck = new HashSet<PhysicsWrapperEntity>();
+        this.shipsToDrop = new HashSet<PhysicsWrapperEntity>();
+        this.chunksToRecheck = new HashSet<ChunkPos>();
+        this.emptyShipChunk = new EmptyChunk(toManage, 0, 0);
+    }
+
+    /**
+     * A chunk that is always air and ignores blocks being set in it, shared by
+     * every empty chunk of every ship in this world.
+     */
+    public Chunk getEmptyShipChunk() {
+        return emptyShipChunk;
     }
 
     /**
      * Returns the list of PhysicsEntities that aren't too far away from players to
-     * justify being ticked
+     * justify being ticked. This is the live list, it only changes when
+     * updateTickablePhysicsEntities() is called; don't modify it.
      *
      * @return
      */
     public List<PhysicsWrapperEntity> getTickablePhysicsEntities() {
-        List<PhysicsWrapperEntity> list = new ArrayList<PhysicsWrapperEntity>(physicsEntities);
-        List<PhysicsWrapperEntity> frozenShips = new ArrayList<PhysicsWrapperEntity>();
+        return tickablePhysicsEntitiesView;
+    }
 
-        if (worldObj instanceof WorldServer) {
-            WorldServer worldServer = (WorldServer) worldObj;
-            for (PhysicsWrapperEntity wrapper : list) {
-                if (!wrapper.isDead) {
-                    if (wrapper.wrapping.surroundingWorldChunksCache != null) {
-                        int chunkCacheX = MathHelper.floor(wrapper.posX / 16D)
-                                - wrapper.wrapping.surroundingWorldChunksCache.chunkX;
-                        int chunkCacheZ = MathHelper.floor(wrapper.posZ / 16D)
-                                - wrapper.wrapping.surroundingWorldChunksCache.chunkZ;
-
-                        chunkCacheX = Math.max(0, Math.min(chunkCacheX,
-                                wrapper.wrapping.surroundingWorldChunksCache.chunkArray.length - 1));
-                        chunkCacheZ = Math.max(0, Math.min(chunkCacheZ,
-                                wrapper.wrapping.surroundingWorldChunksCache.chunkArray[0].length - 1));
-
-                        Chunk chunk = wrapper.wrapping.surroundingWorldChunksCache.chunkArray[chunkCacheX][chunkCacheZ];
-
-                        // Chunk chunk =
-                        // wrapper.wrapping.surroundingWorldChunksCache.chunkArray[(wrapper.wrapping.surroundingWorldChunksCache.chunkArray.length)/2][(wrapper.wrapping.surroundingWorldChunksCache.chunkArray[0].length)/2];
-
-                        if (chunk != null && !worldServer.playerChunkMap.contains(chunk.x, chunk.z)) {
-                            frozenShips.add(wrapper);
-                            // Then I should freeze any ships in this chunk
-                        }
-                    }
-                } else {
-                    frozenShips.add(wrapper);
-                }
+    /**
+     * Applies everything queued up by the load, unload, death and chunk watch
+     * events since the last call. Only the ships those events touched, and the
+     * ticking ships that moved into a different chunk, get checked again.
+     */
+    public void updateTickablePhysicsEntities() {
+        // Ticking ships are the only ones that move, so they're the only ones that can
+        // drift into a chunk nobody is watching
+        for (PhysicsWrapperEntity wrapper : tickablePhysicsEntities) {
+            if (!isInChunk(wrapper, wrapper.wrapping.tickableCheckChunk)) {
+                shipsToRecheck.add(wrapper);
             }
         }
+        for (ChunkPos chunkPos : chunksToRecheck) {
+            List<PhysicsWrapperEntity> shipsInChunk = shipsByWorldChunk.get(chunkPos);
+            if (shipsInChunk != null) {
+                shipsToRecheck.addAll(shipsInChunk);
+            }
+        }
+        for (PhysicsWrapperEntity wrapper : shipsToDrop) {
+            setTickable(wrapper, false);
+            fileUnderChunk(wrapper, null);
+        }
+        for (PhysicsWrapperEntity wrapper : shipsToRecheck) {
+            if (!isInChunk(wrapper, wrapper.wrapping.tickableCheckChunk)) {
+                fileUnderChunk(wrapper, new ChunkPos(MathHelper.floor(wrapper.posX / 16D),
+                        MathHelper.floor(wrapper.posZ / 16D)));
+            }
+            setTickable(wrapper, shouldTick(wrapper));
+        }
+        shipsToRecheck.clear();
+        shipsToDrop.clear();
+        chunksToRecheck.clear();
+    }
+
+    private boolean shouldTick(PhysicsWrapperEntity wrapper) {
+        if (wrapper.isDead || (wrapper.wrapping.physicsProcessor == null && !wrapper.world.isRemote)) {
+            return false;
+        }
+        if (worldObj instanceof WorldServer) {
+            // Freeze any ships in chunks no player can see
+            ChunkPos chunkPos = wrapper.wrapping.tickableCheckChunk;
+            return ((WorldServer) worldObj).playerChunkMap.contains(chunkPos.x, chunkPos.z);
+        }
+        return true;
+    }
 
-        List<PhysicsWrapperEntity> dumbShips = new ArrayList<PhysicsWrapperEntity>();
+    private void setTickable(PhysicsWrapperEntity wrapper, boolean tickable) {
+        if (wrapper.wrapping.tickable != tickable) {
+            wrapper.wrapping.tickable = tickable;
+            if (tickable) {
+                tickablePhysicsEntities.add(wrapper);
+            } else {
+                tickablePhysicsEntities.remove(wrapper);
+            }
+        }
+    }
 
-        for (PhysicsWrapperEntity wrapper : list) {
-            if (wrapper.isDead || wrapper.wrapping == null
-                    || (wrapper.wrapping.physicsProcessor == null && !wrapper.world.isRemote)) {
-                dumbShips.add(wrapper);
+    private void fileUnderChunk(PhysicsWrapperEntity wrapper, ChunkPos chunkPos) {
+        ChunkPos oldChunkPos = wrapper.wrapping.tickableCheckChunk;
+        if (oldChunkPos != null) {
+            List<PhysicsWrapperEntity> shipsInChunk = shipsByWorldChunk.get(oldChunkPos);
+            shipsInChunk.remove(wrapper);
+            if (shipsInChunk.isEmpty()) {
+                shipsByWorldChunk.remove(oldChunkPos);
+            }
+        }
+        wrapper.wrapping.tickableCheckChunk = chunkPos;
+        if (chunkPos != null) {
+            List<PhysicsWrapperEntity> shipsInChunk = shipsByWorldChunk.get(chunkPos);
+            if (shipsInChunk == null) {
+                shipsInChunk = new ArrayList<PhysicsWrapperEntity>(1);
+                shipsByWorldChunk.put(chunkPos, shipsInChunk);
             }
+            shipsInChunk.add(wrapper);
         }
+    }
 
-        list.removeAll(frozenShips);
-        list.removeAll(dumbShips);
+    private static boolean isInChunk(PhysicsWrapperEntity wrapper, ChunkPos chunkPos) {
+        return chunkPos != null && chunkPos.x == MathHelper.floor(wrapper.posX / 16D)
+                && chunkPos.z == MathHelper.floor(wrapper.posZ / 16D);
+    }
+
+    /**
+     * Called when the ship died, it gets taken out of the tickable list next tick
+     *
+     * @param wrapper
+     */
+    public void queueTickableCheck(PhysicsWrapperEntity wrapper) {
+        shipsToRecheck.add(wrapper);
+    }
 
-        return list;
+    /**
+     * Called when a player starts or stops watching a world chunk, any ships in it
+     * get frozen or woken up next tick
+     *
+     * @param chunkPos
+     */
+    public void onChunkWatchChanged(ChunkPos chunkPos) {
+        if (shipsByWorldChunk.containsKey(chunkPos)) {
+            chunksToRecheck.add(chunkPos);
+        }
     }
 
     public void onLoad(PhysicsWrapperEntity loaded) {
@@ -129,12 +240,19 @@ public class WorldPhysObjectManager {
                 physicsEntities.remove(caught);
                 physCollisonCallables.remove(caught.wrapping.collisionCallable);
                 caught.wrapping.onThisUnload();
+                shipsToRecheck.remove(caught);
+                shipsToDrop.add(caught);
                 // System.out.println("Caught one");
             }
         }
         loaded.isDead = false;
         physicsEntities.add(loaded);
         physCollisonCallables.add(loaded.wrapping.collisionCallable);
+        if (!worldObj.isRemote) {
+            shipAABBTree.insert(loaded, loaded.wrapping.getCollisionBoundingBox());
+        }
+        shipsToDrop.remove(loaded);
+        shipsToRecheck.add(loaded);
     }
 
     /**
@@ -144,6 +262,16 @@ public class WorldPhysObjectManager {
      * @param loaded
      */
     public void preloadPhysicsWrapperEntityMappings(PhysicsWrapperEntity loaded) {
+        int slot = PhysicsChunkManager.getChunkSetSlot(loaded.wrapping.ownedChunks);
+        if (slot != -1) {
+            PhysicsWrapperEntity[] ships = shipsByChunkSetSlot;
+            if (slot >= ships.length) {
+                ships = Arrays.copyOf(ships, Math.max(slot + 1, ships.length * 2));
+            }
+            ships[slot] = loaded;
+            shipsByChunkSetSlot = ships;
+            return;
+        }
         for (int x = loaded.wrapping.ownedChunks.minX; x <= loaded.wrapping.ownedChunks.maxX; x++) {
             for (int z = loaded.wrapping.ownedChunks.minZ; z <= loaded.wrapping.ownedChunks.maxZ; z++) {
                 chunkPosToPhysicsEntityMap.put(new ChunkPos(x, z), loaded);
@@ -155,14 +283,25 @@ public class WorldPhysObjectManager {
         if (!loaded.world.isRemote) {
             physicsEntities.remove(loaded);
             physCollisonCallables.remove(loaded.wrapping.collisionCallable);
+            shipAABBTree.remove(loaded);
+            collisionCacheTree.remove(loaded);
             loaded.wrapping.onThisUnload();
-            for (Chunk[] chunks : loaded.wrapping.claimedChunks) {
-                for (Chunk chunk : chunks) {
-                    chunkPosToPhysicsEntityMap.remove(chunk.getPos());
+            int slot = PhysicsChunkManager.getChunkSetSlot(loaded.wrapping.ownedChunks);
+            if (slot != -1 && slot < shipsByChunkSetSlot.length && shipsByChunkSetSlot[slot] == loaded) {
+                shipsByChunkSetSlot[slot] = null;
+            }
+            // The same range preloadPhysicsWrapperEntityMappings() adds, chunks that
+            // were never claimed are mapped as well
+            for (int x = loaded.wrapping.ownedChunks.minX; x <= loaded.wrapping.ownedChunks.maxX; x++) {
+                for (int z = loaded.wrapping.ownedChunks.minZ; z <= loaded.wrapping.ownedChunks.maxZ; z++) {
+                    chunkPosToPhysicsEntityMap.remove(new ChunkPos(x, z), loaded);
                 }
             }
+            shipsToRecheck.remove(loaded);
+            shipsToDrop.add(loaded);
         } else {
             loaded.isDead = true;
+            shipsToRecheck.add(loaded);
         }
     }
 
@@ -178,7 +317,19 @@ public class WorldPhysObjectManager {
         return getManagingObjectForChunkPosition(chunk.x, chunk.z);
     }
 
+    /**
+     * Called from all over the mixins, so this doesn't allocate anything unless
+     * there are ships off the grid.
+     */
     public PhysicsWrapperEntity getManagingObjectForChunkPosition(int chunkX, int chunkZ) {
+        PhysicsWrapperEntity wrapper = PhysicsChunkManager.getChunkSetSlotOwner(shipsByChunkSetSlot,
+                ship -> ship.wrapping.ownedChunks, chunkX, chunkZ);
+        if (wrapper != null) {
+            return wrapper;
+        }
+        if (chunkPosToPhysicsEntityMap.isEmpty()) {
+            return null;
+        }
         ChunkPos chunkPos = new ChunkPos(chunkX, chunkZ);
         return chunkPosToPhysicsEntityMap.get(chunkPos);
     }
@@ -187,7 +338,9 @@ public class WorldPhysObjectManager {
         ArrayList<PhysicsWrapperEntity> ships = new ArrayList<PhysicsWrapperEntity>();
         AxisAlignedBB expandedCheck = toCheck.expand(6, 6, 6);
 
-        for (PhysicsWrapperEntity wrapper : physicsEntities) {
+        List<PhysicsWrapperEntity> candidates = worldObj.isRemote ? physicsEntities
+                : shipAABBTree.query(expandedCheck);
+        for (PhysicsWrapperEntity wrapper : candidates) {
             if (wrapper.wrapping.getCollisionBoundingBox().intersects(expandedCheck)) {
                 ships.add(wrapper);
             }
@@ -196,6 +349,84 @@ public class WorldPhysObjectManager {
         return ships;
     }
 
+    /**
+     * Called whenever a ship on the server gets a new collision bounding box, can
+     * be called from the physics threads.
+     *
+     * @param wrapper
+     */
+    public void onShipAABBChanged(PhysicsWrapperEntity wrapper) {
+        shipAABBTree.update(wrapper, wrapper.wrapping.getCollisionBoundingBox());
+    }
+
+    /**
+     * Lets the ships near a changed world block know about it. Their collision
+     * caches get updated, and sleeping ships close enough to be affected by it
+     * wake up.
+     *
+     * @param pos
+     */
+    public void onWorldBlockChange(BlockPos pos) {
+        // Runs for every block change in the world, so don't allocate anything while
+        // there aren't any ships
+        if (shipAABBTree.size() == 0) {
+            return;
+        }
+        AxisAlignedBB changedBB = new AxisAlignedBB(pos);
+        for (PhysicsWrapperEntity wrapper : collisionCacheTree.query(changedBB)) {
+            PhysicsCalculations physicsProcessor = wrapper.wrapping.physicsProcessor;
+            if (physicsProcessor != null) {
+                physicsProcessor.worldCollision.onWorldBlockChange(pos);
+            }
+        }
+        changedBB = changedBB.grow(WorldPhysicsCollider.AABB_EXPANSION);
+        for (PhysicsWrapperEntity wrapper : shipAABBTree.query(changedBB)) {
+            PhysicsCalculations physicsProcessor = wrapper.wrapping.physicsProcessor;
+            if (physicsProcessor != null && physicsProcessor.isSleeping()
+                    && wrapper.wrapping.getCollisionBoundingBox().intersects(changedBB)) {
+                physicsProcessor.requestWakeUp();
+            }
+        }
+    }
+
+    /**
+     * Called by a WorldPhysicsCollider on the server whenever it moves its
+     * collision cache, can be called from the physics threads.
+     *
+     * @param wrapper
+     * @param cachedRegion
+     *            the world blocks the cache now covers
+     */
+    public void onCollisionCacheRegionChanged(PhysicsWrapperEntity wrapper, AxisAlignedBB cachedRegion) {
+        if (!wrapper.isDead) {
+            collisionCacheTree.insert(wrapper, cachedRegion);
+        }
+    }
+
+    /**
+     * Anything close enough to a moving ship could get hit by it, so it shouldn't
+     * be left sleeping.
+     *
+     * @param physicsEntities
+     *            the ships being ticked
+     */
+    public void wakeShipsNearMovingShips(List<PhysicsWrapperEntity> physicsEntities) {
+        for (PhysicsWrapperEntity moving : physicsEntities) {
+            if (moving.wrapping.physicsProcessor.isSleeping()) {
+                continue;
+            }
+            AxisAlignedBB movingBB = moving.wrapping.getCollisionBoundingBox()
+                    .grow(WorldPhysicsCollider.AABB_EXPANSION);
+            for (PhysicsWrapperEntity sleeping : shipAABBTree.query(movingBB)) {
+                PhysicsCalculations physicsProcessor = sleeping.wrapping.physicsProcessor;
+                if (physicsProcessor != null && physicsProcessor.isSleeping()
+                        && sleeping.wrapping.getCollisionBoundingBox().intersects(movingBB)) {
+                    physicsProcessor.requestWakeUp();
+                }
+            }
+        }
+    }
+
     public boolean isEntityFixed(Entity entity) {
         return getShipFixedOnto(entity) != null;
     }
@@ -218,6 +449,14 @@ public class WorldPhysObjectManager {
         return null;
     }
 
+    public PhysicsTickBudget getTickBudget() {
+        return tickBudget;
+    }
+
+    public DecoupledPhysicsLoop getPhysicsLoop() {
+        return physicsLoop;
+    }
+
     public void setPhysicsThread(Future<Void> physicsThread) {
         this.physicsThreadStatus = physicsThread;
     }
@@ -23,4 +23,6 @@ public final class PhysicsSettings {
     public static boolean doAirshipRotation = true;
     public static boolean doAirshipMovement = true;
     public static boolean doEtheriumLifting = true;
+    public static boolean doShipCollision = true;
+    public static boolean doAdaptiveSubsteps = true;
 }